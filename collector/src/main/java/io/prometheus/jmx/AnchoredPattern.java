@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles rule patterns anchored to the start of the name, such as {@code ^java.lang<type=(.+)>},
+ * without the {@code ^.*(?:pattern).*$} wrapper, so they are matched with {@link
+ * Matcher#lookingAt()} instead of backtracking over every start position.
+ *
+ * <p>An anchored pattern can only match at the start, so the wrapped pattern matches a name
+ * without line terminators if and only if the pattern matches at its start, with the same groups.
+ * Only group 0 differs, as it is the whole name for the wrapped pattern. A pattern is anchored if
+ * it starts with an unquantified {@code ^} and has no alternation at the top level.
+ */
+class AnchoredPattern {
+
+    private AnchoredPattern() {
+        // Intentionally empty
+    }
+
+    /**
+     * Method to compile an anchored rule pattern without the wrapper
+     *
+     * @param pattern the rule pattern as configured, null for a rule without pattern
+     * @return the compiled pattern, null if the pattern is not anchored
+     */
+    static Pattern compile(String pattern) {
+        if (pattern == null || !pattern.startsWith("^")) {
+            return null;
+        }
+        if (pattern.length() > 1 && "?*+{".indexOf(pattern.charAt(1)) >= 0) {
+            return null;
+        }
+        // Patterns that don't parse as a sequence may alternate with an unanchored branch
+        if (RuleLiteralIndex.trailingLiteral(pattern) == null) {
+            return null;
+        }
+        return Pattern.compile(pattern);
+    }
+}
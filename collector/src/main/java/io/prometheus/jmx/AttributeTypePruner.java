@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenMBeanAttributeInfo;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Decides from the declared type of an attribute whether its value can ever become a sample, so
+ * attributes that can't are not read from the MBean server at all.
+ *
+ * <p>Arrays, ObjectNames and characters are never exported. Strings, including enums, only become
+ * a sample when a rule with a value matches them. Open types are inspected recursively. Attributes
+ * of an unknown type are always read.
+ */
+class AttributeTypePruner {
+
+    private static final String RUNTIME_MBEAN = "java.lang:type=Runtime";
+    private static final String FLIGHT_RECORDER_MBEAN = "jdk.management.jfr:type=FlightRecorder";
+
+    private AttributeTypePruner() {
+        // Intentionally empty
+    }
+
+    /**
+     * Method to check if an attribute is never exported, regardless of its type
+     *
+     * @param mBeanName the mBean objectName
+     * @param attributeName the attribute name
+     * @return true if the attribute should not be read, else false
+     */
+    static boolean isIgnored(ObjectName mBeanName, String attributeName) {
+        String mBeanNameString = mBeanName.toString();
+        if (mBeanNameString.equals(RUNTIME_MBEAN)) {
+            // Getting the values is expensive and the values are ultimately ignored
+            return attributeName.equalsIgnoreCase("SystemProperties")
+                    || attributeName.equalsIgnoreCase("ClassPath")
+                    || attributeName.equalsIgnoreCase("BootClassPath")
+                    || attributeName.equalsIgnoreCase("LibraryPath");
+        }
+        return mBeanNameString.equals(FLIGHT_RECORDER_MBEAN);
+    }
+
+    /**
+     * Method to check if the value of an attribute can become a sample
+     *
+     * @param mBeanAttributeInfo the attribute
+     * @param stringValuesExported whether a rule may export string values
+     * @return true if the attribute should be read, else false
+     */
+    static boolean canProduceSample(MBeanAttributeInfo mBeanAttributeInfo, boolean stringValuesExported) {
+        OpenType<?> openType = getOpenType(mBeanAttributeInfo);
+        if (openType != null) {
+            return canProduceSample(openType, stringValuesExported);
+        }
+
+        String type = mBeanAttributeInfo.getType();
+        if (type == null) {
+            return true;
+        }
+        if (type.startsWith("[")) {
+            return false;
+        }
+        switch (type) {
+            case "java.lang.String":
+                return stringValuesExported;
+            case "char":
+            case "java.lang.Character":
+            case "javax.management.ObjectName":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean canProduceSample(OpenType<?> openType, boolean stringValuesExported) {
+        if (openType instanceof SimpleType) {
+            if (openType.equals(SimpleType.STRING)) {
+                return stringValuesExported;
+            }
+            return !openType.equals(SimpleType.CHARACTER)
+                    && !openType.equals(SimpleType.OBJECTNAME)
+                    && !openType.equals(SimpleType.VOID);
+        }
+        if (openType instanceof ArrayType) {
+            return false;
+        }
+        if (openType instanceof CompositeType) {
+            CompositeType compositeType = (CompositeType) openType;
+            for (String key : compositeType.keySet()) {
+                if (canProduceSample(compositeType.getType(key), stringValuesExported)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (openType instanceof TabularType) {
+            // The index columns become labels, only the other columns can become a sample
+            TabularType tabularType = (TabularType) openType;
+            CompositeType rowType = tabularType.getRowType();
+            for (String key : rowType.keySet()) {
+                if (!tabularType.getIndexNames().contains(key)
+                        && canProduceSample(rowType.getType(key), stringValuesExported)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static OpenType<?> getOpenType(MBeanAttributeInfo mBeanAttributeInfo) {
+        if (mBeanAttributeInfo instanceof OpenMBeanAttributeInfo) {
+            return ((OpenMBeanAttributeInfo) mBeanAttributeInfo).getOpenType();
+        }
+        Descriptor descriptor = mBeanAttributeInfo.getDescriptor();
+        if (descriptor != null) {
+            Object openType = descriptor.getFieldValue("openType");
+            if (openType instanceof OpenType) {
+                return (OpenType<?>) openType;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+/**
+ * A string that throws {@link BudgetExceededException} once more characters are read than
+ * budgeted, to abort a regular expression match that backtracks too much.
+ *
+ * <p>The regular expression engine reads the input through {@link #charAt(int)} as it tries and
+ * backtracks, so the number of characters read bounds the work done by a match. Not thread-safe;
+ * reused for each match.
+ */
+class BudgetedCharSequence implements CharSequence {
+
+    private String string = "";
+    private long remaining = Long.MAX_VALUE;
+
+    /**
+     * Thrown when a match reads more characters than budgeted
+     */
+    static final class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            // Thrown for control flow only, so without message or stack trace
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Method to set the string and the budget for the next match
+     *
+     * @param string the string
+     * @param budget the number of characters the match may read
+     */
+    void reset(String string, long budget) {
+        this.string = string;
+        this.remaining = budget;
+    }
+
+    /**
+     * Method to lift the budget, for reads after the match
+     */
+    void unlimit() {
+        remaining = Long.MAX_VALUE;
+    }
+
+    @Override
+    public int length() {
+        return string.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--remaining < 0) {
+            throw BudgetExceededException.INSTANCE;
+        }
+        return string.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return string.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return string;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps, per MBean domain, the rules that can match an MBean of that domain, in configuration
+ * order.
+ *
+ * <p>A rule whose pattern starts with {@code ^}, a literal domain and {@code <} matches from the
+ * start of the name, see {@link RuleReachability}, so it only applies to the domains the start of
+ * its pattern can match. Any other rule applies to every domain, since without {@code ^} a literal
+ * such as {@code server<} also matches the end of a longer domain like {@code kafka.server}.
+ */
+class DomainRuleIndex {
+
+    private static final int MAX_DOMAINS = 10_000;
+
+    private final List<JmxCollector.Rule> rules;
+
+    // The pattern matching the start of the name per rule, null if the rule applies to every domain
+    private final List<Pattern> domainPatterns;
+
+    private final Map<String, List<JmxCollector.Rule>> rulesPerDomain = new ConcurrentHashMap<>();
+
+    private DomainRuleIndex(List<JmxCollector.Rule> rules, List<Pattern> domainPatterns) {
+        this.rules = rules;
+        this.domainPatterns = domainPatterns;
+    }
+
+    /**
+     * Method to create a DomainRuleIndex for rules
+     *
+     * @param rules the rules, in configuration order
+     * @param patterns the rule patterns as configured, null for a rule without pattern
+     * @return a DomainRuleIndex, or null if every rule applies to every domain
+     */
+    static DomainRuleIndex create(List<JmxCollector.Rule> rules, List<String> patterns) {
+        List<Pattern> domainPatterns = new ArrayList<>(patterns.size());
+        boolean domainAnchored = false;
+        for (String pattern : patterns) {
+            if (pattern != null && RuleReachability.isDomainAnchored(pattern)) {
+                domainPatterns.add(Pattern.compile("^(?:" + pattern + ")"));
+                domainAnchored = true;
+            } else {
+                domainPatterns.add(null);
+            }
+        }
+        return domainAnchored ? new DomainRuleIndex(rules, domainPatterns) : null;
+    }
+
+    /**
+     * Method to get the rules that can match an MBean of a domain
+     *
+     * @param domain the MBean domain
+     * @return the rules, in configuration order
+     */
+    List<JmxCollector.Rule> getRules(String domain) {
+        List<JmxCollector.Rule> domainRules = rulesPerDomain.get(domain);
+        if (domainRules == null) {
+            domainRules = computeRules(domain);
+            if (rulesPerDomain.size() >= MAX_DOMAINS) {
+                rulesPerDomain.clear();
+            }
+            rulesPerDomain.put(domain, domainRules);
+        }
+        return domainRules;
+    }
+
+    private List<JmxCollector.Rule> computeRules(String domain) {
+        String prefix = domain + "<";
+        List<JmxCollector.Rule> domainRules = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            Pattern domainPattern = domainPatterns.get(i);
+            if (domainPattern != null) {
+                Matcher matcher = domainPattern.matcher(prefix);
+                // If the end of the prefix was hit, the rest of the name may still match
+                if (!matcher.lookingAt() && !matcher.hitEnd()) {
+                    continue;
+                }
+            }
+            domainRules.add(rules.get(i));
+        }
+        return Collections.unmodifiableList(domainRules);
+    }
+}
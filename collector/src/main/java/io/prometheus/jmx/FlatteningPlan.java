@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.TabularType;
+
+/**
+ * The items of a CompositeData or TabularData value to flatten into samples, in order, computed
+ * once per CompositeType or TabularType instead of for every value.
+ *
+ * <p>Open types are compared by structure, so values read over a remote connection, which each
+ * come with their own type instance, share the plan of their type.
+ */
+class FlatteningPlan {
+
+    // Types are bounded in practice, only guards against MBeans creating types on the fly
+    private static final int MAX_PLANS = 10_000;
+
+    private static final Map<OpenType<?>, FlatteningPlan> PLANS = new ConcurrentHashMap<>();
+
+    /** The names of the items to flatten, in order. */
+    final String[] itemNames;
+
+    /** The type names of the items to flatten. */
+    final String[] itemTypeNames;
+
+    /** The index names of a TabularType, empty for a CompositeType. */
+    final List<String> indexNames;
+
+    private FlatteningPlan(CompositeType type, List<String> indexNames) {
+        List<String> names = new ArrayList<>(type.keySet());
+        // Index items become labels, not samples
+        names.removeAll(indexNames);
+
+        this.itemNames = names.toArray(new String[0]);
+        this.itemTypeNames = new String[itemNames.length];
+        for (int i = 0; i < itemNames.length; i++) {
+            itemTypeNames[i] = type.getType(itemNames[i]).getTypeName();
+        }
+        this.indexNames = indexNames;
+    }
+
+    /**
+     * Returns the plan for CompositeData values of a type: all items, sorted by name.
+     *
+     * @param type the CompositeType
+     * @return the plan
+     */
+    static FlatteningPlan of(CompositeType type) {
+        FlatteningPlan plan = PLANS.get(type);
+        if (plan == null) {
+            plan = put(type, new FlatteningPlan(type, Collections.emptyList()));
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the plan for the rows of TabularData values of a type: the items of the row type
+     * that are not part of the index, sorted by name.
+     *
+     * @param type the TabularType
+     * @return the plan
+     */
+    static FlatteningPlan of(TabularType type) {
+        FlatteningPlan plan = PLANS.get(type);
+        if (plan == null) {
+            plan = put(type, new FlatteningPlan(type.getRowType(), type.getIndexNames()));
+        }
+        return plan;
+    }
+
+    private static FlatteningPlan put(OpenType<?> type, FlatteningPlan plan) {
+        if (PLANS.size() >= MAX_PLANS) {
+            PLANS.clear();
+        }
+        PLANS.put(type, plan);
+        return plan;
+    }
+}
@@ -24,21 +24,27 @@ import io.prometheus.jmx.logger.LoggerFactory;
 import io.prometheus.jmx.variable.VariableResolver;
 import io.prometheus.metrics.core.metrics.Counter;
 import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.core.metrics.Histogram;
 import io.prometheus.metrics.model.registry.MultiCollector;
 import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.Labels;
 import io.prometheus.metrics.model.snapshots.MetricSnapshots;
 import io.prometheus.metrics.model.snapshots.Unit;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -46,11 +52,16 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -88,6 +99,9 @@ public class JmxCollector implements MultiCollector {
 
     private final Mode mode;
 
+    // Added to all metrics, only set for a target of a MultiTargetCollector
+    private final Labels targetLabels;
+
     /**
      * Represents an extra metric to be exported.
      * <p>
@@ -114,9 +128,20 @@ public class JmxCollector implements MultiCollector {
         String help;
         boolean attrNameSnakeCase;
         boolean cache = false;
+        boolean autoCache;
         String type = "UNKNOWN";
         ArrayList<String> labelNames;
         ArrayList<String> labelValues;
+        int index;
+        int[] literalIds;
+        ReplacementTemplate nameTemplate;
+        ReplacementTemplate valueTemplate;
+        Double constantValue;
+        ReplacementTemplate helpTemplate;
+        List<ReplacementTemplate> labelNameTemplates;
+        List<ReplacementTemplate> labelValueTemplates;
+        // The pattern without the wrapper if anchored to the start and all templates are compiled
+        Pattern anchoredPattern;
     }
 
     static class SslProperties {
@@ -142,6 +167,27 @@ public class JmxCollector implements MultiCollector {
         public Optional<KeyStoreProperties> getTrustStoreProperties() {
             return Optional.ofNullable(trustStoreProperties);
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SslProperties that = (SslProperties) o;
+            return enabled == that.enabled
+                    && Objects.equals(keyStoreProperties, that.keyStoreProperties)
+                    && Objects.equals(trustStoreProperties, that.trustStoreProperties)
+                    && Objects.equals(protocols, that.protocols)
+                    && Objects.equals(ciphers, that.ciphers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(enabled, keyStoreProperties, trustStoreProperties, protocols, ciphers);
+        }
     }
 
     static class KeyStoreProperties {
@@ -149,6 +195,25 @@ public class JmxCollector implements MultiCollector {
         Path path;
         String type;
         char[] password;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            KeyStoreProperties that = (KeyStoreProperties) o;
+            return Objects.equals(path, that.path)
+                    && Objects.equals(type, that.type)
+                    && Arrays.equals(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, type) * 31 + Arrays.hashCode(password);
+        }
     }
 
     /**
@@ -209,6 +274,27 @@ public class JmxCollector implements MultiCollector {
         List<MetricCustomizer> metricCustomizers = new ArrayList<>();
         MatchedRulesCache rulesCache;
         Integer scrapeTimeoutSeconds = null;
+        int scrapeThreads = 1;
+        Integer connectionMaxAgeSeconds = null;
+        Integer mbeanInventoryResyncSeconds = null;
+        MBeanInfoCache mBeanInfoCache;
+        MBeanRefreshCache mBeanRefreshCache;
+        boolean stringValuesExported;
+        RuleReachability ruleReachability;
+        RuleLiteralIndex ruleLiteralIndex;
+        DomainRuleIndex domainRuleIndex;
+        boolean autoCachedRules;
+        LocalAttach localAttach;
+        Integer scrapeIntervalSeconds = null;
+        boolean mbeanDurationHistogram;
+        int slowestMBeansCount;
+        boolean ruleStatistics;
+        List<String> rulePatterns;
+        boolean partialScrapeOnTimeout;
+        Integer ruleMatchBudget = null;
+        int ruleMatchBudgetExceededLimit = 10;
+        // The number of matches aborted per rule index, null unless ruleMatchBudget is configured
+        AtomicIntegerArray ruleMatchBudgetExceeded;
     }
 
     private Config config;
@@ -221,6 +307,16 @@ public class JmxCollector implements MultiCollector {
     private Gauge jmxScrapeError;
     private Gauge jmxScrapeCachedBeans;
     private Counter scrapeTimeoutCounter;
+    private Gauge jmxScrapeStaleBeans;
+    private Gauge jmxScrapePhaseDurationSeconds;
+    private Histogram jmxScrapeMBeanDurationSeconds;
+    private Gauge jmxScrapeSlowestMBeanDurationSeconds;
+    // Guarded by this
+    private List<String> slowestMBeanLabelValues = Collections.emptyList();
+    private Gauge jmxRuleMatchBudgetExceeded;
+    private Gauge jmxRuleMatchBudgetDisabledRules;
+    // Guarded by this
+    private List<List<String>> ruleMatchBudgetExceededLabelValues = Collections.emptyList();
 
     private static final ExecutorService SCRAPE_EXECUTOR;
 
@@ -233,11 +329,30 @@ public class JmxCollector implements MultiCollector {
         Runtime.getRuntime().addShutdownHook(new Thread(SCRAPE_EXECUTOR::shutdownNow));
     }
 
+    private final ExecutorService scrapeExecutor;
     private final AtomicReference<Future<MetricSnapshots>> inFlightScrape = new AtomicReference<>(null);
     private volatile MetricSnapshots lastGoodSnapshots = MetricSnapshots.of();
 
+    private final RuleStatistics ruleStatistics;
+
+    private volatile Receiver inFlightReceiver;
+    private Map<ObjectName, List<MatchedRule>> lastMatchedRulesPerBean = Collections.emptyMap();
+
     private final JmxMBeanPropertyCache jmxMBeanPropertyCache = new JmxMBeanPropertyCache();
 
+    private final JmxConnectionCache jmxConnectionCache = new JmxConnectionCache();
+    private final MBeanInventory mBeanInventory = new MBeanInventory();
+
+    private ExecutorService scrapeWorkers;
+    private int scrapeWorkersThreads;
+    private final Map<ExecutorService, Integer> scrapeWorkersInUse = new IdentityHashMap<>();
+    private final AtomicInteger scrapeWorkerThreadNumber = new AtomicInteger(1);
+
+    private ScheduledExecutorService scrapeScheduler;
+    private ScheduledFuture<?> scheduledScrape;
+    private int scheduledScrapeIntervalSeconds;
+    private final CountDownLatch firstScheduledScrape = new CountDownLatch(1);
+
     /**
      * Constructor
      *
@@ -261,6 +376,9 @@ public class JmxCollector implements MultiCollector {
         Objects.requireNonNull(in, "configuration file must not be null");
         configFile = in;
         this.mode = mode;
+        this.targetLabels = Labels.EMPTY;
+        this.ruleStatistics = new RuleStatistics(targetLabels);
+        this.scrapeExecutor = SCRAPE_EXECUTOR;
         try (FileReader fr = new FileReader(in)) {
             config = loadConfig(new Yaml(new SafeConstructor(new LoaderOptions())).load(fr));
         }
@@ -278,6 +396,9 @@ public class JmxCollector implements MultiCollector {
         Objects.requireNonNull(yamlConfig, "YAML configuration must not be null");
         config = loadConfig(new Yaml(new SafeConstructor(new LoaderOptions())).load(yamlConfig));
         mode = null;
+        targetLabels = Labels.EMPTY;
+        ruleStatistics = new RuleStatistics(targetLabels);
+        scrapeExecutor = SCRAPE_EXECUTOR;
     }
 
     /**
@@ -290,6 +411,30 @@ public class JmxCollector implements MultiCollector {
         Objects.requireNonNull(inputStream, "input stream must not be null");
         config = loadConfig(new Yaml(new SafeConstructor(new LoaderOptions())).load(inputStream));
         mode = null;
+        targetLabels = Labels.EMPTY;
+        ruleStatistics = new RuleStatistics(targetLabels);
+        scrapeExecutor = SCRAPE_EXECUTOR;
+    }
+
+    /**
+     * Constructor for a target of a {@link MultiTargetCollector}
+     *
+     * @param yamlConfig the YAML configuration of the target, must not be null
+     * @param targetLabels the labels to add to all metrics of the target, must not be null
+     * @param scrapeExecutor the executor to run the scrapes of the target on, must not be null
+     * @throws MalformedObjectNameException if the ObjectName is invalid
+     */
+    JmxCollector(Map<String, Object> yamlConfig, Labels targetLabels, ExecutorService scrapeExecutor)
+            throws MalformedObjectNameException {
+        Objects.requireNonNull(yamlConfig, "YAML configuration must not be null");
+        Objects.requireNonNull(targetLabels, "target labels must not be null");
+        Objects.requireNonNull(scrapeExecutor, "scrape executor must not be null");
+        this.mode = Mode.STANDALONE;
+        this.targetLabels = targetLabels;
+        this.ruleStatistics = new RuleStatistics(targetLabels);
+        this.scrapeExecutor = scrapeExecutor;
+        config = loadConfig(yamlConfig);
+        exitOnConfigError();
     }
 
     /**
@@ -312,51 +457,158 @@ public class JmxCollector implements MultiCollector {
         configReloadSuccess = Counter.builder()
                 .name("jmx_config_reload_success_total")
                 .help("Number of times configuration have successfully been reloaded.")
+                .constLabels(targetLabels)
                 .register(prometheusRegistry);
 
         configReloadFailure = Counter.builder()
                 .name("jmx_config_reload_failure_total")
                 .help("Number of times configuration have failed to be reloaded.")
+                .constLabels(targetLabels)
                 .register(prometheusRegistry);
 
         jmxScrapeDurationSeconds = Gauge.builder()
                 .name("jmx_scrape_duration_seconds")
                 .help("Time this JMX scrape took, in seconds.")
                 .unit(Unit.SECONDS)
+                .constLabels(targetLabels)
                 .register(prometheusRegistry);
 
         jmxScrapeError = Gauge.builder()
                 .name("jmx_scrape_error")
                 .help("Non-zero if this scrape failed.")
+                .constLabels(targetLabels)
                 .register(prometheusRegistry);
 
         jmxScrapeCachedBeans = Gauge.builder()
                 .name("jmx_scrape_cached_beans")
                 .help("Number of beans with their matching rule cached")
+                .constLabels(targetLabels)
                 .register(prometheusRegistry);
 
         scrapeTimeoutCounter = Counter.builder()
                 .name("jmx_scrape_timeout_total")
                 .help("Total number of scrape timeouts.")
+                .constLabels(targetLabels)
+                .register(prometheusRegistry);
+
+        jmxScrapeStaleBeans = Gauge.builder()
+                .name("jmx_scrape_stale_beans")
+                .help("Number of beans served from a previous scrape because this JMX scrape timed out.")
+                .constLabels(targetLabels)
+                .register(prometheusRegistry);
+
+        jmxScrapePhaseDurationSeconds = Gauge.builder()
+                .name("jmx_scrape_phase_duration_seconds")
+                .help("Time the phases of this JMX scrape took, in seconds.")
+                .unit(Unit.SECONDS)
+                .labelNames("phase")
+                .constLabels(targetLabels)
+                .register(prometheusRegistry);
+
+        jmxScrapeMBeanDurationSeconds = Histogram.builder()
+                .name("jmx_scrape_mbean_duration_seconds")
+                .help("Time fetching and processing an MBean took, in seconds, by MBean domain.")
+                .unit(Unit.SECONDS)
+                .labelNames("domain")
+                .classicOnly()
+                .classicUpperBounds(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10)
+                .constLabels(targetLabels)
+                .register(prometheusRegistry);
+
+        jmxScrapeSlowestMBeanDurationSeconds = Gauge.builder()
+                .name("jmx_scrape_slowest_mbean_duration_seconds")
+                .help("Time fetching and processing the slowest MBeans of this JMX scrape took, in seconds.")
+                .unit(Unit.SECONDS)
+                .labelNames("object_name")
+                .constLabels(targetLabels)
                 .register(prometheusRegistry);
 
+        jmxRuleMatchBudgetExceeded = Gauge.builder()
+                .name("jmx_rule_match_budget_exceeded")
+                .help("Number of matches of a rule aborted for reading more than ruleMatchBudget characters"
+                        + " since the configuration was loaded.")
+                .labelNames("rule", "pattern_hash")
+                .constLabels(targetLabels)
+                .register(prometheusRegistry);
+
+        jmxRuleMatchBudgetDisabledRules = Gauge.builder()
+                .name("jmx_rule_match_budget_disabled_rules")
+                .help("Number of rules disabled for exceeding ruleMatchBudget ruleMatchBudgetExceededLimit times.")
+                .constLabels(targetLabels)
+                .register(prometheusRegistry);
+
+        prometheusRegistry.register(ruleStatistics);
+
         prometheusRegistry.register(this);
 
         return this;
     }
 
+    /**
+     * Returns the per rule statistics, only counted if {@code ruleStatistics} is configured.
+     *
+     * @return the rule statistics
+     */
+    public RuleStatistics getRuleStatistics() {
+        return ruleStatistics;
+    }
+
+    /**
+     * Returns if {@code ruleStatistics} is configured.
+     *
+     * @return true if the rule statistics are counted, else false
+     */
+    public synchronized boolean isRuleStatisticsEnabled() {
+        return config.ruleStatistics;
+    }
+
+    /**
+     * Method to scrape once and write the values to a dump, which {@link #replay(MBeanDump,
+     * boolean)} can run rules on again without a JMX target. The dump has the values of every
+     * included MBean and attribute, also the ones the rules of this configuration can't match or
+     * export. The collector must be registered.
+     *
+     * @param outputStream the output stream to write the dump to, not closed
+     * @throws IOException if the scrape or writing the dump failed
+     */
+    public void dump(OutputStream outputStream) throws IOException {
+        MBeanDump.Writer dumpWriter = new MBeanDump.Writer(outputStream);
+        scrape(getLatestConfig(), dumpWriter);
+        dumpWriter.finish();
+    }
+
+    /**
+     * Method to run the rules of the configuration on the values of a dump, as a scrape would. The
+     * rules cache is used and updated as for a scrape.
+     *
+     * @param mBeanDump the dump
+     * @param countRules true to count the rule statistics, even if not configured
+     * @return the metric snapshots
+     */
+    public MetricSnapshots replay(MBeanDump mBeanDump, boolean countRules) {
+        Config config = getLatestConfig();
+        MatchedRulesCache.StalenessTracker stalenessTracker = new MatchedRulesCache.StalenessTracker();
+        Receiver receiver = new Receiver(config, stalenessTracker, targetLabels, config.ruleStatistics || countRules);
+        mBeanDump.replay(receiver);
+        if (config.rulesCache != null) {
+            config.rulesCache.evictStaleEntries(stalenessTracker);
+        }
+        ruleStatistics.add(config.rulePatterns, receiver.ruleCounts);
+        return receiver.getMetricSnapshots();
+    }
+
     private void exitOnConfigError() {
-        if (mode == Mode.AGENT && !config.jmxUrl.isEmpty()) {
+        if (mode == Mode.AGENT && (!config.jmxUrl.isEmpty() || config.localAttach != null)) {
             throw new IllegalArgumentException(
                     "Configuration error: When running jmx_exporter as a Java agent, you must not"
-                            + " configure 'jmxUrl' or 'hostPort' because you don't want to monitor a"
-                            + " remote JVM.");
+                            + " configure 'jmxUrl', 'hostPort', 'pid' or 'attachMainClass' because you"
+                            + " don't want to monitor another JVM.");
         }
-        if (mode == Mode.STANDALONE && config.jmxUrl.isEmpty()) {
+        if (mode == Mode.STANDALONE && config.jmxUrl.isEmpty() && config.localAttach == null) {
             throw new IllegalArgumentException(
                     "Configuration error: When running jmx_exporter in standalone mode (using"
-                            + " jmx_prometheus_standalone-*.jar) you must configure 'jmxUrl' or"
-                            + " 'hostPort'.");
+                            + " jmx_prometheus_standalone-*.jar) you must configure 'jmxUrl', 'hostPort',"
+                            + " 'pid' or 'attachMainClass'.");
         }
     }
 
@@ -414,6 +666,127 @@ public class JmxCollector implements MultiCollector {
             }
         }
 
+        if (yamlConfig.containsKey("scrapeThreads")) {
+            try {
+                cfg.scrapeThreads = (Integer) yamlConfig.get("scrapeThreads");
+                if (cfg.scrapeThreads <= 0) {
+                    throw new IllegalArgumentException("scrapeThreads must be at least 1");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for scrapeThreads", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("connectionMaxAgeSeconds")) {
+            try {
+                cfg.connectionMaxAgeSeconds = (Integer) yamlConfig.get("connectionMaxAgeSeconds");
+                if (cfg.connectionMaxAgeSeconds < 0) {
+                    throw new IllegalArgumentException("connectionMaxAgeSeconds must be non-negative");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for connectionMaxAgeSeconds", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("mbeanInventoryResyncSeconds")) {
+            try {
+                cfg.mbeanInventoryResyncSeconds = (Integer) yamlConfig.get("mbeanInventoryResyncSeconds");
+                if (cfg.mbeanInventoryResyncSeconds <= 0) {
+                    throw new IllegalArgumentException("mbeanInventoryResyncSeconds must be at least 1");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for mbeanInventoryResyncSeconds", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("scrapeIntervalSeconds")) {
+            try {
+                cfg.scrapeIntervalSeconds = (Integer) yamlConfig.get("scrapeIntervalSeconds");
+                if (cfg.scrapeIntervalSeconds <= 0) {
+                    throw new IllegalArgumentException("scrapeIntervalSeconds must be at least 1");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for scrapeIntervalSeconds", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("mbeanDurationHistogram")) {
+            Boolean mbeanDurationHistogram = (Boolean) yamlConfig.get("mbeanDurationHistogram");
+            cfg.mbeanDurationHistogram = mbeanDurationHistogram != null && mbeanDurationHistogram;
+        }
+
+        if (yamlConfig.containsKey("slowestMBeansCount")) {
+            try {
+                cfg.slowestMBeansCount = (Integer) yamlConfig.get("slowestMBeansCount");
+                if (cfg.slowestMBeansCount < 0) {
+                    throw new IllegalArgumentException("slowestMBeansCount must be non-negative");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for slowestMBeansCount", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("ruleStatistics")) {
+            Boolean ruleStatistics = (Boolean) yamlConfig.get("ruleStatistics");
+            cfg.ruleStatistics = ruleStatistics != null && ruleStatistics;
+        }
+
+        if (yamlConfig.containsKey("ruleMatchBudget")) {
+            try {
+                cfg.ruleMatchBudget = (Integer) yamlConfig.get("ruleMatchBudget");
+                if (cfg.ruleMatchBudget != null && cfg.ruleMatchBudget <= 0) {
+                    throw new IllegalArgumentException("ruleMatchBudget must be positive");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for ruleMatchBudget", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("ruleMatchBudgetExceededLimit")) {
+            try {
+                cfg.ruleMatchBudgetExceededLimit = (Integer) yamlConfig.get("ruleMatchBudgetExceededLimit");
+                if (cfg.ruleMatchBudgetExceededLimit <= 0) {
+                    throw new IllegalArgumentException("ruleMatchBudgetExceededLimit must be positive");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for ruleMatchBudgetExceededLimit", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("partialScrapeOnTimeout")) {
+            Boolean partialScrapeOnTimeout = (Boolean) yamlConfig.get("partialScrapeOnTimeout");
+            cfg.partialScrapeOnTimeout = partialScrapeOnTimeout != null && partialScrapeOnTimeout;
+        }
+
+        if (yamlConfig.containsKey("mbeanInfoCache")) {
+            Boolean mbeanInfoCache = (Boolean) yamlConfig.get("mbeanInfoCache");
+            if (mbeanInfoCache != null && mbeanInfoCache) {
+                if (cfg.mbeanInventoryResyncSeconds == null) {
+                    // Without registration notifications a replaced MBean would keep a stale entry
+                    throw new IllegalArgumentException("mbeanInfoCache requires mbeanInventoryResyncSeconds");
+                }
+                cfg.mBeanInfoCache = new MBeanInfoCache();
+            }
+        }
+
+        if (yamlConfig.containsKey("objectNameRefreshSeconds")) {
+            Map<Object, Object> refreshSecondsPerName =
+                    (Map<Object, Object>) yamlConfig.get("objectNameRefreshSeconds");
+            Map<ObjectName, Integer> refreshSecondsPerPattern = new LinkedHashMap<>();
+            for (Map.Entry<Object, Object> entry : refreshSecondsPerName.entrySet()) {
+                try {
+                    Integer refreshSeconds = (Integer) entry.getValue();
+                    if (refreshSeconds == null || refreshSeconds <= 0) {
+                        throw new IllegalArgumentException("objectNameRefreshSeconds must be at least 1");
+                    }
+                    refreshSecondsPerPattern.put(new ObjectName((String) entry.getKey()), refreshSeconds);
+                } catch (ClassCastException e) {
+                    throw new IllegalArgumentException("Invalid number provided for objectNameRefreshSeconds", e);
+                }
+            }
+            cfg.mBeanRefreshCache = new MBeanRefreshCache(refreshSecondsPerPattern);
+        }
+
         if (yamlConfig.containsKey("hostPort")) {
             if (yamlConfig.containsKey("jmxUrl")) {
                 throw new IllegalArgumentException("At most one of hostPort and jmxUrl must be provided");
@@ -423,6 +796,30 @@ public class JmxCollector implements MultiCollector {
             cfg.jmxUrl = (String) yamlConfig.get("jmxUrl");
         }
 
+        if (yamlConfig.containsKey("pid") || yamlConfig.containsKey("attachMainClass")) {
+            if ((yamlConfig.containsKey("pid") && yamlConfig.containsKey("attachMainClass")) || !cfg.jmxUrl.isEmpty()) {
+                throw new IllegalArgumentException(
+                        "At most one of hostPort, jmxUrl, pid and attachMainClass must be provided");
+            }
+            if (yamlConfig.containsKey("pid")) {
+                try {
+                    int pid = (Integer) yamlConfig.get("pid");
+                    if (pid <= 0) {
+                        throw new IllegalArgumentException("pid must be at least 1");
+                    }
+                    cfg.localAttach = LocalAttach.forPid(pid);
+                } catch (ClassCastException e) {
+                    throw new IllegalArgumentException("Invalid number provided for pid", e);
+                }
+            } else {
+                String attachMainClass = (String) yamlConfig.get("attachMainClass");
+                if (attachMainClass == null || attachMainClass.trim().isEmpty()) {
+                    throw new IllegalArgumentException("attachMainClass must not be blank");
+                }
+                cfg.localAttach = LocalAttach.forMainClass(attachMainClass.trim());
+            }
+        }
+
         if (yamlConfig.containsKey("username")) {
             String username = (String) yamlConfig.get("username");
             cfg.username = VariableResolver.resolveVariable(username);
@@ -583,11 +980,15 @@ public class JmxCollector implements MultiCollector {
             }
         }
 
+        List<String> rulePatterns = new ArrayList<>();
+        boolean precedingRulesCacheable = true;
         if (yamlConfig.containsKey("rules")) {
             List<Map<String, Object>> configRules = (List<Map<String, Object>>) yamlConfig.get("rules");
             for (Map<String, Object> yamlRule : configRules) {
                 Rule rule = new Rule();
+                rule.index = cfg.rules.size();
                 cfg.rules.add(rule);
+                rulePatterns.add(yamlRule.containsKey("pattern") ? String.valueOf(yamlRule.get("pattern")) : null);
                 if (yamlRule.containsKey("pattern")) {
                     rule.pattern = Pattern.compile("^.*(?:" + yamlRule.get("pattern") + ").*$");
                 }
@@ -639,15 +1040,50 @@ public class JmxCollector implements MultiCollector {
                 if (rule.name != null && rule.pattern == null) {
                     throw new IllegalArgumentException("Must provide pattern, if name is given: " + yamlRule);
                 }
+
+                // Without cache configured, a rule is cached if neither its result nor the results
+                // of the rules before it depend on the value
+                if (!yamlRule.containsKey("cache")) {
+                    rule.autoCache = precedingRulesCacheable
+                            && RuleCacheability.isValueIndependent(rule, rulePatterns.get(rulePatterns.size() - 1));
+                }
+                precedingRulesCacheable &= rule.cache || rule.autoCache;
+
+                compileTemplates(rule);
+                if (templatesCompiled(rule)) {
+                    rule.anchoredPattern = AnchoredPattern.compile(rulePatterns.get(rule.index));
+                }
             }
         } else {
             // Default to a single default rule.
-            cfg.rules.add(new Rule());
+            Rule rule = new Rule();
+            rule.autoCache = true;
+            cfg.rules.add(rule);
+            rulePatterns.add(null);
+        }
+
+        cfg.rulePatterns = rulePatterns;
+        if (cfg.ruleMatchBudget != null) {
+            cfg.ruleMatchBudgetExceeded = new AtomicIntegerArray(cfg.rules.size());
+        }
+        cfg.ruleReachability = RuleReachability.create(rulePatterns);
+        cfg.domainRuleIndex = DomainRuleIndex.create(cfg.rules, rulePatterns);
+        cfg.ruleLiteralIndex = RuleLiteralIndex.create(rulePatterns);
+        if (cfg.ruleLiteralIndex != null) {
+            for (int i = 0; i < cfg.rules.size(); i++) {
+                cfg.rules.get(i).literalIds = cfg.ruleLiteralIndex.getLiteralIds(i);
+            }
+        }
+
+        // String values only become a sample through a rule with a value
+        for (Rule rule : cfg.rules) {
+            cfg.stringValuesExported |= rule.value != null && !rule.value.isEmpty();
         }
 
         boolean hasCachedRules = false;
         for (Rule rule : cfg.rules) {
-            hasCachedRules |= rule.cache;
+            hasCachedRules |= rule.cache || rule.autoCache;
+            cfg.autoCachedRules |= rule.autoCache;
         }
 
         // Avoid all costs related to maintaining the cache if there are no cached rules
@@ -659,6 +1095,63 @@ public class JmxCollector implements MultiCollector {
         return cfg;
     }
 
+    /**
+     * Method to compile the templates of a rule, so they are not parsed again for every match
+     *
+     * @param rule the rule
+     */
+    private static void compileTemplates(Rule rule) {
+        if (rule.name != null) {
+            rule.nameTemplate = ReplacementTemplate.compile(rule.name, rule.pattern);
+        }
+        if (rule.value != null && !rule.value.isEmpty()) {
+            rule.valueTemplate = ReplacementTemplate.compile(rule.value, rule.pattern);
+            // A value that is not a number is still logged for every match
+            if (rule.pattern != null && rule.valueTemplate.isLiteral()) {
+                try {
+                    rule.constantValue = Double.valueOf(rule.valueTemplate.getLiteral());
+                } catch (NumberFormatException e) {
+                    // Intentionally empty
+                }
+            }
+        }
+        if (rule.help != null) {
+            rule.helpTemplate = ReplacementTemplate.compile(rule.help, rule.pattern);
+        }
+        if (rule.labelNames != null) {
+            rule.labelNameTemplates = new ArrayList<>(rule.labelNames.size());
+            rule.labelValueTemplates = new ArrayList<>(rule.labelValues.size());
+            for (int i = 0; i < rule.labelNames.size(); i++) {
+                rule.labelNameTemplates.add(ReplacementTemplate.compile(rule.labelNames.get(i), rule.pattern));
+                rule.labelValueTemplates.add(ReplacementTemplate.compile(rule.labelValues.get(i), rule.pattern));
+            }
+        }
+    }
+
+    /**
+     * Method to check if all templates of a rule are compiled, so none is expanded with {@code
+     * replaceAll}, which needs the match of the wrapped pattern
+     *
+     * @param rule the rule
+     * @return true if all templates are compiled, else false
+     */
+    private static boolean templatesCompiled(Rule rule) {
+        List<ReplacementTemplate> templates = new ArrayList<>();
+        templates.add(rule.nameTemplate);
+        templates.add(rule.valueTemplate);
+        templates.add(rule.helpTemplate);
+        if (rule.labelNameTemplates != null) {
+            templates.addAll(rule.labelNameTemplates);
+            templates.addAll(rule.labelValueTemplates);
+        }
+        for (ReplacementTemplate template : templates) {
+            if (template != null && !template.isCompiled()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private KeyStoreProperties getKeyStoreProperties(Map<String, Object> configKeyStore) {
         KeyStoreProperties keyStoreProperties = new KeyStoreProperties();
         if (configKeyStore.containsKey("filename")) {
@@ -750,18 +1243,124 @@ public class JmxCollector implements MultiCollector {
                 || (input >= '0' && input <= '9'));
     }
 
-    static class Receiver implements JmxScraper.MBeanReceiver {
+    /**
+     * The metric snapshots of a scrape, which may be empty or partial if the scrape failed.
+     */
+    private static class ScrapeResult {
 
-        final List<MatchedRule> matchedRules = new ArrayList<>();
+        final MetricSnapshots metricSnapshots;
+        final boolean failed;
+
+        ScrapeResult(MetricSnapshots metricSnapshots, boolean failed) {
+            this.metricSnapshots = metricSnapshots;
+            this.failed = failed;
+        }
+    }
+
+    static class Receiver implements JmxScraper.MBeanReceiver {
 
         final Config config;
         final MatchedRulesCache.StalenessTracker stalenessTracker;
+        final Labels targetLabels;
+
+        // The samples are streamed into the snapshots builder unless partial scrapes need them per bean
+        private final MatchedRuleToMetricSnapshotsConverter.Builder snapshotsBuilder;
+
+        // The matched rules per scraped bean, only tracked to serve partial scrapes
+        private final Map<ObjectName, List<MatchedRule>> matchedRulesPerBean;
+        private final List<MatchedRule> matchedRules;
+        private int beanStartIndex;
+
+        // The literals of the rule patterns found in the last matchName checked
+        private final BitSet foundLiterals = new BitSet();
+        private String foundLiteralsMatchName;
+
+        // The matchName variants of the attribute being matched, by attrNameSnakeCase and cache
+        private final String[] matchNames = new String[4];
+
+        // A matcher per rule, reset for each matchName
+        private final Map<Rule, Matcher> matchers = new IdentityHashMap<>();
+
+        // A matcher of the pattern without the wrapper per anchored rule
+        private final Map<Rule, Matcher> anchoredMatchers = new IdentityHashMap<>();
+
+        // If the matchName variants have line terminators, where only the wrapped patterns match alike
+        private final boolean[] matchNameHasLineTerminator = new boolean[4];
+
+        // Reused to expand the rule templates
+        private final StringBuilder templateBuilder = new StringBuilder();
+
+        // The help per metric name, shared by the samples of a metric in this scrape
+        private final Map<String, String> helpPerName = new HashMap<>();
+
+        // The rule statistics of this scrape, null unless configured
+        final RuleStatistics.Counts ruleCounts;
+
+        // The matchName as read by a budgeted match, null unless ruleMatchBudget is configured
+        private final BudgetedCharSequence budgetedMatchName;
 
         private static final char SEP = '_';
 
-        Receiver(Config config, MatchedRulesCache.StalenessTracker stalenessTracker) {
+        Receiver(Config config, MatchedRulesCache.StalenessTracker stalenessTracker, Labels targetLabels) {
+            this(config, stalenessTracker, targetLabels, config.ruleStatistics);
+        }
+
+        Receiver(
+                Config config,
+                MatchedRulesCache.StalenessTracker stalenessTracker,
+                Labels targetLabels,
+                boolean ruleStatistics) {
             this.config = config;
             this.stalenessTracker = stalenessTracker;
+            this.targetLabels = targetLabels;
+            this.ruleCounts = ruleStatistics ? new RuleStatistics.Counts(config.rules.size()) : null;
+            this.budgetedMatchName = config.ruleMatchBudget != null ? new BudgetedCharSequence() : null;
+            if (config.partialScrapeOnTimeout) {
+                this.snapshotsBuilder = null;
+                this.matchedRulesPerBean = new LinkedHashMap<>();
+                this.matchedRules = new ArrayList<>();
+            } else {
+                this.snapshotsBuilder = new MatchedRuleToMetricSnapshotsConverter.Builder();
+                this.matchedRulesPerBean = null;
+                this.matchedRules = null;
+            }
+        }
+
+        /**
+         * Returns the snapshots of the samples recorded so far. Must not be called while the scrape is
+         * running.
+         *
+         * @return the collected metric snapshots
+         */
+        MetricSnapshots getMetricSnapshots() {
+            if (snapshotsBuilder != null) {
+                return snapshotsBuilder.build();
+            }
+            return MatchedRuleToMetricSnapshotsConverter.convert(matchedRules);
+        }
+
+        @Override
+        public void scrapedBean(ObjectName mBeanName) {
+            if (matchedRulesPerBean != null) {
+                List<MatchedRule> beanMatchedRules =
+                        new ArrayList<>(matchedRules.subList(beanStartIndex, matchedRules.size()));
+                synchronized (matchedRulesPerBean) {
+                    matchedRulesPerBean.put(mBeanName, beanMatchedRules);
+                }
+                beanStartIndex = matchedRules.size();
+            }
+        }
+
+        /**
+         * Returns the matched rules of the beans scraped so far. Safe to call while the scrape is
+         * running.
+         *
+         * @return the matched rules per bean, in scrape order
+         */
+        Map<ObjectName, List<MatchedRule>> getMatchedRulesPerBean() {
+            synchronized (matchedRulesPerBean) {
+                return new LinkedHashMap<>(matchedRulesPerBean);
+            }
         }
 
         // [] and () are special in regexes, so switch to <>.
@@ -780,6 +1379,33 @@ public class JmxCollector implements MultiCollector {
                     .toString();
         }
 
+        /**
+         * Returns if a rule is disabled for exceeding the match budget too often.
+         *
+         * @param rule the rule
+         * @return true if the rule is disabled, else false
+         */
+        private boolean isDisabled(Rule rule) {
+            return config.ruleMatchBudgetExceeded.get(rule.index) >= config.ruleMatchBudgetExceededLimit;
+        }
+
+        /**
+         * Counts a match aborted for exceeding the match budget, disabling the rule at the limit.
+         *
+         * @param rule the rule
+         * @param matchName the matchName the rule was matched against
+         */
+        private void matchBudgetExceeded(Rule rule, String matchName) {
+            int exceeded = config.ruleMatchBudgetExceeded.incrementAndGet(rule.index);
+            LOGGER.trace("Rule [%d] exceeded ruleMatchBudget on [%s]", rule.index, matchName);
+            if (exceeded == config.ruleMatchBudgetExceededLimit) {
+                LOGGER.warn(
+                        "Rule [%d] with pattern [%s] disabled after exceeding ruleMatchBudget [%d] times, last on"
+                                + " [%s]",
+                        rule.index, config.rulePatterns.get(rule.index), exceeded, matchName);
+            }
+        }
+
         // Add the matched rule to the cached rules and tag it as not stale
         private void addToCache(final CacheKey cacheKey, final MatchedRule matchedRule) {
             if (config.rulesCache != null && cacheKey != null) {
@@ -793,12 +1419,14 @@ public class JmxCollector implements MultiCollector {
                 String domain,
                 LinkedHashMap<String, String> beanProperties,
                 List<String> attrKeys,
+                String attributeName,
                 String attrName,
-                String help,
+                String attrDescription,
                 Double value,
                 double valueFactor,
                 String type,
-                Map<String, String> attributesAsLabelsWithValues) {
+                Map<String, String> attributesAsLabelsWithValues,
+                int ruleIndex) {
             StringBuilder name = new StringBuilder();
             name.append(domain);
             if (!beanProperties.isEmpty()) {
@@ -810,7 +1438,7 @@ public class JmxCollector implements MultiCollector {
                 name.append(k);
             }
             name.append(SEP);
-            name.append(attrName);
+            name.append(attributeName);
             String fullname = toSafeName(name.toString());
 
             if (config.lowercaseOutputName) {
@@ -839,8 +1467,76 @@ public class JmxCollector implements MultiCollector {
                 }
             }
             addAttributesAsLabelsWithValuesToLabels(config, attributesAsLabelsWithValues, labelNames, labelValues);
+            addTargetLabels(targetLabels, labelNames, labelValues);
+
+            String help = getSharedHelp(fullname);
+            if (help == null) {
+                help = shareHelp(fullname, defaultHelp(domain, beanProperties, attrName, attrDescription));
+            }
+
+            return new MatchedRule(
+                    fullname, matchName, type, help, labelNames, labelValues, value, valueFactor, ruleIndex);
+        }
 
-            return new MatchedRule(fullname, matchName, type, help, labelNames, labelValues, value, valueFactor);
+        /**
+         * Method to get the help shared by the samples of a metric
+         *
+         * @param name the metric name
+         * @return the help, or null if no sample of the metric was exported yet in this scrape
+         */
+        private String getSharedHelp(String name) {
+            return helpPerName.get(name);
+        }
+
+        /**
+         * Method to share the help of a metric with its other samples
+         *
+         * @param name the metric name
+         * @param help the help
+         * @return the help shared by the samples of the metric
+         */
+        private String shareHelp(String name, String help) {
+            String sharedHelp = helpPerName.putIfAbsent(name, help);
+            return sharedHelp != null ? sharedHelp : help;
+        }
+
+        /**
+         * Method to build the help of a sample from the MBean metadata
+         *
+         * @param domain the MBean domain
+         * @param beanProperties the MBean properties
+         * @param attrName the attribute name
+         * @param attrDescription the attribute description
+         * @return the help
+         */
+        private static String defaultHelp(
+                String domain, Map<String, String> beanProperties, String attrName, String attrDescription) {
+            String beanNameProp = beanProperties.get("name");
+            String beanTypeProp = beanProperties.get("type");
+            String help = new StringBuilder(domain.length()
+                            + 6
+                            + (beanNameProp != null ? beanNameProp.length() : 4)
+                            + 6
+                            + (beanTypeProp != null ? beanTypeProp.length() : 4)
+                            + 11
+                            + attrName.length())
+                    .append(domain)
+                    .append(":name=")
+                    .append(beanNameProp)
+                    .append(",type=")
+                    .append(beanTypeProp)
+                    .append(",attribute=")
+                    .append(attrName)
+                    .toString();
+            // Add the attrDescription to the HELP if it exists and is useful.
+            if (attrDescription != null && !attrDescription.equals(attrName)) {
+                help = new StringBuilder(attrDescription.length() + 1 + help.length())
+                        .append(attrDescription)
+                        .append(' ')
+                        .append(help)
+                        .toString();
+            }
+            return help;
         }
 
         public void recordBean(
@@ -858,18 +1554,28 @@ public class JmxCollector implements MultiCollector {
             CacheKey cacheKey = null;
             MatchedRule cachedRule = null;
 
-            if (config.rulesCache != null) {
+            // Rules cached automatically only ignore numeric and boolean values, and the cache key
+            // does not cover attribute values used as labels
+            boolean cacheableValue = RuleCacheability.isCacheableValue(beanValue)
+                    && (attributesAsLabelsWithValues == null || attributesAsLabelsWithValues.isEmpty());
+            if (config.rulesCache != null && (cacheableValue || !config.autoCachedRules)) {
                 cacheKey = new CacheKey(domain, beanProperties, attrKeys, attrName);
                 cachedRule = config.rulesCache.get(cacheKey);
                 if (cachedRule != null) {
                     stalenessTracker.markAsFresh(cacheKey);
                     matchedRule = cachedRule;
+                    if (ruleCounts != null && cachedRule.ruleIndex >= 0) {
+                        ruleCounts.cacheHits[cachedRule.ruleIndex]++;
+                    }
                 }
             }
 
             String beanPropertiesStr = beanProperties.toString();
             String attrKeysStr = attrKeys.toString();
 
+            // Nothing is cached if a match was aborted, as the aborted rule might have matched
+            boolean matchAborted = false;
+
             if (matchedRule.isUnmatched()) {
                 String beanPropertiesBrackets = angleBrackets(beanPropertiesStr);
                 String attrKeysBrackets = angleBrackets(attrKeysStr);
@@ -880,37 +1586,18 @@ public class JmxCollector implements MultiCollector {
                         .append(attrKeysBrackets)
                         .toString();
 
-                // Build the HELP string from the bean metadata.
-                String beanNameProp = beanProperties.get("name");
-                String beanTypeProp = beanProperties.get("type");
-                String help = new StringBuilder(domain.length()
-                                + 6
-                                + (beanNameProp != null ? beanNameProp.length() : 4)
-                                + 6
-                                + (beanTypeProp != null ? beanTypeProp.length() : 4)
-                                + 11
-                                + attrName.length())
-                        .append(domain)
-                        .append(":name=")
-                        .append(beanNameProp)
-                        .append(",type=")
-                        .append(beanTypeProp)
-                        .append(",attribute=")
-                        .append(attrName)
-                        .toString();
-                // Add the attrDescription to the HELP if it exists and is useful.
-                if (attrDescription != null && !attrDescription.equals(attrName)) {
-                    help = new StringBuilder(attrDescription.length() + 1 + help.length())
-                            .append(attrDescription)
-                            .append(' ')
-                            .append(help)
-                            .toString();
-                }
+                // The matchName variants only depend on attrNameSnakeCase and cache, so they are
+                // built at most once per attribute
+                Arrays.fill(matchNames, null);
+                String snakeCaseAttrName = null;
 
-                for (Rule rule : config.rules) {
+                List<Rule> rules =
+                        config.domainRuleIndex != null ? config.domainRuleIndex.getRules(domain) : config.rules;
+                for (Rule rule : rules) {
                     // If we cache that rule, and we found a cache entry for this bean/attribute,
                     // then what's left to do is to check all uncached rules
-                    if (rule.cache && cachedRule != null) {
+                    boolean cache = rule.cache || (rule.autoCache && cacheableValue);
+                    if (cache && cachedRule != null) {
                         continue;
                     }
 
@@ -919,33 +1606,103 @@ public class JmxCollector implements MultiCollector {
                     // scrape will be cached).
                     // If caching for the rule is enabled, replace the value with a dummy <cache> to
                     // avoid caching different values at different times.
-                    Object matchBeanValue = rule.cache ? "<cache>" : beanValue;
+                    Object matchBeanValue = cache ? "<cache>" : beanValue;
 
                     String attributeName;
                     if (rule.attrNameSnakeCase) {
-                        attributeName = toSnakeAndLowerCase(attrName);
+                        if (snakeCaseAttrName == null) {
+                            snakeCaseAttrName = toSnakeAndLowerCase(attrName);
+                        }
+                        attributeName = snakeCaseAttrName;
                     } else {
                         attributeName = attrName;
                     }
 
-                    String matchName = new StringBuilder(beanName.length() + attributeName.length() + 2 + 16)
-                            .append(beanName)
-                            .append(attributeName)
-                            .append(": ")
-                            .append(matchBeanValue)
-                            .toString();
+                    int matchNameVariant = (rule.attrNameSnakeCase ? 2 : 0) + (cache ? 1 : 0);
+                    String matchName = matchNames[matchNameVariant];
+                    if (matchName == null) {
+                        matchName = new StringBuilder(beanName.length() + attributeName.length() + 2 + 16)
+                                .append(beanName)
+                                .append(attributeName)
+                                .append(": ")
+                                .append(matchBeanValue)
+                                .toString();
+                        matchNames[matchNameVariant] = matchName;
+                        matchNameHasLineTerminator[matchNameVariant] = ReplacementTemplate.hasLineTerminator(matchName);
+                    }
+
+                    // Skip the regex if the matchName lacks a literal the pattern requires
+                    if (rule.literalIds != null) {
+                        // The matchName variants are reused across rules, so comparing identity is enough
+                        if (matchName != foundLiteralsMatchName) {
+                            config.ruleLiteralIndex.find(matchName, foundLiterals);
+                            foundLiteralsMatchName = matchName;
+                        }
+                        if (!RuleLiteralIndex.foundAll(foundLiterals, rule.literalIds)) {
+                            continue;
+                        }
+                    }
 
                     Matcher matcher = null;
                     if (rule.pattern != null) {
-                        matcher = rule.pattern.matcher(matchName);
-                        if (!matcher.matches()) {
+                        CharSequence input = matchName;
+                        if (budgetedMatchName != null) {
+                            if (isDisabled(rule)) {
+                                continue;
+                            }
+                            budgetedMatchName.reset(matchName, config.ruleMatchBudget);
+                            input = budgetedMatchName;
+                        }
+                        // An anchored pattern can only match at the start, so skip the leading .*
+                        boolean anchored =
+                                rule.anchoredPattern != null && !matchNameHasLineTerminator[matchNameVariant];
+                        Map<Rule, Matcher> ruleMatchers = anchored ? anchoredMatchers : matchers;
+                        matcher = ruleMatchers.get(rule);
+                        if (matcher == null) {
+                            matcher = (anchored ? rule.anchoredPattern : rule.pattern).matcher(input);
+                            ruleMatchers.put(rule, matcher);
+                        } else {
+                            matcher.reset(input);
+                        }
+                        boolean matches;
+                        try {
+                            if (ruleCounts != null) {
+                                long start = System.nanoTime();
+                                try {
+                                    matches = anchored ? matcher.lookingAt() : matcher.matches();
+                                } finally {
+                                    ruleCounts.nanos[rule.index] += System.nanoTime() - start;
+                                    ruleCounts.evaluations[rule.index]++;
+                                }
+                            } else {
+                                matches = anchored ? matcher.lookingAt() : matcher.matches();
+                            }
+                        } catch (BudgetedCharSequence.BudgetExceededException e) {
+                            matchBudgetExceeded(rule, matchName);
+                            matchAborted = true;
                             continue;
                         }
+                        if (!matches) {
+                            continue;
+                        }
+                        if (budgetedMatchName != null) {
+                            // Templates may match the input again
+                            budgetedMatchName.unlimit();
+                        }
+                    }
+
+                    if (ruleCounts != null) {
+                        if (rule.pattern == null) {
+                            ruleCounts.evaluations[rule.index]++;
+                        }
+                        ruleCounts.matches[rule.index]++;
                     }
 
                     Double value = null;
-                    if (rule.value != null && !rule.value.isEmpty()) {
-                        String val = matcher.replaceAll(rule.value);
+                    if (rule.constantValue != null) {
+                        value = rule.constantValue;
+                    } else if (rule.valueTemplate != null) {
+                        String val = rule.valueTemplate.expand(matcher, matchName, templateBuilder);
                         try {
                             value = Double.valueOf(val);
                         } catch (NumberFormatException e) {
@@ -964,19 +1721,21 @@ public class JmxCollector implements MultiCollector {
                                 beanProperties,
                                 attrKeys,
                                 attributeName,
-                                help,
+                                attrName,
+                                attrDescription,
                                 value,
                                 rule.valueFactor,
                                 rule.type,
-                                attributesAsLabelsWithValues);
-                        if (rule.cache) {
+                                attributesAsLabelsWithValues,
+                                rule.index);
+                        if (cache && !matchAborted) {
                             addToCache(cacheKey, matchedRule);
                         }
                         break;
                     }
 
                     // Matcher is set below here due to validation in the constructor.
-                    String name = toSafeName(matcher.replaceAll(rule.name));
+                    String name = toSafeName(rule.nameTemplate.expand(matcher, matchName, templateBuilder));
                     if (name.isEmpty()) {
                         return;
                     }
@@ -989,9 +1748,14 @@ public class JmxCollector implements MultiCollector {
                         type = "COUNTER";
                     }
 
-                    // Set the help.
-                    if (rule.help != null) {
-                        help = matcher.replaceAll(rule.help);
+                    // Set the help, built once per metric as only the first sample's help is exported
+                    String help = getSharedHelp(name);
+                    if (help == null) {
+                        help = shareHelp(
+                                name,
+                                rule.help != null
+                                        ? rule.helpTemplate.expand(matcher, matchName, templateBuilder)
+                                        : defaultHelp(domain, beanProperties, attrName, attrDescription));
                     }
 
                     // Set the labels.
@@ -1004,8 +1768,10 @@ public class JmxCollector implements MultiCollector {
                             final String unsafeLabelName = rule.labelNames.get(i);
                             final String labelValReplacement = rule.labelValues.get(i);
                             try {
-                                String labelName = toSafeName(matcher.replaceAll(unsafeLabelName));
-                                String labelValue = matcher.replaceAll(labelValReplacement);
+                                String labelName = toSafeName(
+                                        rule.labelNameTemplates.get(i).expand(matcher, matchName, templateBuilder));
+                                String labelValue =
+                                        rule.labelValueTemplates.get(i).expand(matcher, matchName, templateBuilder);
                                 if (config.lowercaseOutputLabelNames) {
                                     labelName = labelName.toLowerCase();
                                 }
@@ -1023,9 +1789,11 @@ public class JmxCollector implements MultiCollector {
                         }
                     }
 
+                    addTargetLabels(targetLabels, labelNames, labelValues);
+
                     matchedRule = new MatchedRule(
-                            name, matchName, type, help, labelNames, labelValues, value, rule.valueFactor);
-                    if (rule.cache) {
+                            name, matchName, type, help, labelNames, labelValues, value, rule.valueFactor, rule.index);
+                    if (cache && !matchAborted) {
                         addToCache(cacheKey, matchedRule);
                     }
                     break;
@@ -1033,7 +1801,9 @@ public class JmxCollector implements MultiCollector {
             }
 
             if (matchedRule.isUnmatched()) {
-                addToCache(cacheKey, matchedRule);
+                if (!matchAborted) {
+                    addToCache(cacheKey, matchedRule);
+                }
                 return;
             }
 
@@ -1056,7 +1826,11 @@ public class JmxCollector implements MultiCollector {
             // Add to samples.
             LOGGER.trace("add metric sample: %s %s %s", matchedRule.name, matchedRule.labels, value.doubleValue());
 
-            matchedRules.add(matchedRule.withValue(value.doubleValue()));
+            if (snapshotsBuilder != null) {
+                snapshotsBuilder.add(matchedRule, value.doubleValue());
+            } else {
+                matchedRules.add(matchedRule.withValue(value.doubleValue()));
+            }
         }
     }
 
@@ -1075,6 +1849,19 @@ public class JmxCollector implements MultiCollector {
         });
     }
 
+    private static void addTargetLabels(Labels targetLabels, List<String> labelNames, List<String> labelValues) {
+        for (int i = 0; i < targetLabels.size(); i++) {
+            // The target labels take precedence, so the metrics of different targets stay distinct
+            int index = labelNames.indexOf(targetLabels.getName(i));
+            if (index >= 0) {
+                labelValues.set(index, targetLabels.getValue(i));
+            } else {
+                labelNames.add(targetLabels.getName(i));
+                labelValues.add(targetLabels.getValue(i));
+            }
+        }
+    }
+
     @Override
     public MetricSnapshots collect() {
         // Take a reference to the current config and collect with this one
@@ -1082,6 +1869,11 @@ public class JmxCollector implements MultiCollector {
         Config config = getLatestConfig();
         Integer timeout = config.scrapeTimeoutSeconds;
 
+        if (config.scrapeIntervalSeconds != null) {
+            return collectScheduled(config);
+        }
+        stopScheduledScrapes();
+
         // Single-flight: check for in-flight scrape
         if (timeout != null) {
             Future<MetricSnapshots> existing = inFlightScrape.get();
@@ -1089,8 +1881,7 @@ public class JmxCollector implements MultiCollector {
                 try {
                     return existing.get(timeout, TimeUnit.SECONDS);
                 } catch (TimeoutException e) {
-                    scrapeTimeoutCounter.inc();
-                    return lastGoodSnapshots;
+                    return getSnapshotsOnTimeout();
                 } catch (Exception e) {
                     jmxScrapeError.set(1);
                     return lastGoodSnapshots;
@@ -1099,7 +1890,7 @@ public class JmxCollector implements MultiCollector {
         }
 
         // No in-flight scrape — run one
-        Future<MetricSnapshots> future = SCRAPE_EXECUTOR.submit(() -> doCollect(config));
+        Future<MetricSnapshots> future = scrapeExecutor.submit(() -> doCollect(config));
 
         if (timeout != null) {
             if (!inFlightScrape.compareAndSet(null, future)) {
@@ -1108,8 +1899,7 @@ public class JmxCollector implements MultiCollector {
                 try {
                     return existing.get(timeout, TimeUnit.SECONDS);
                 } catch (TimeoutException e) {
-                    scrapeTimeoutCounter.inc();
-                    return lastGoodSnapshots;
+                    return getSnapshotsOnTimeout();
                 } catch (Exception e) {
                     jmxScrapeError.set(1);
                     return lastGoodSnapshots;
@@ -1127,8 +1917,7 @@ public class JmxCollector implements MultiCollector {
             lastGoodSnapshots = result;
             return result;
         } catch (TimeoutException e) {
-            scrapeTimeoutCounter.inc();
-            return lastGoodSnapshots;
+            return getSnapshotsOnTimeout();
         } catch (java.util.concurrent.ExecutionException e) {
             Throwable cause = e.getCause();
             if (cause instanceof RuntimeException) {
@@ -1144,6 +1933,130 @@ public class JmxCollector implements MultiCollector {
         }
     }
 
+    /**
+     * Returns the snapshots to serve when the in-flight scrape did not complete in time: the last
+     * good snapshots or, with partialScrapeOnTimeout, the beans scraped so far merged with the
+     * beans of previous scrapes not reached yet.
+     *
+     * @return the collected metric snapshots
+     */
+    private MetricSnapshots getSnapshotsOnTimeout() {
+        scrapeTimeoutCounter.inc();
+
+        Receiver receiver = inFlightReceiver;
+        if (receiver == null || receiver.matchedRulesPerBean == null) {
+            return lastGoodSnapshots;
+        }
+
+        Map<ObjectName, List<MatchedRule>> matchedRulesPerBean;
+        int staleBeans = 0;
+        synchronized (this) {
+            matchedRulesPerBean = new LinkedHashMap<>(lastMatchedRulesPerBean);
+            Map<ObjectName, List<MatchedRule>> freshMatchedRulesPerBean = receiver.getMatchedRulesPerBean();
+            for (ObjectName mBeanName : matchedRulesPerBean.keySet()) {
+                if (!freshMatchedRulesPerBean.containsKey(mBeanName)) {
+                    staleBeans++;
+                }
+            }
+            matchedRulesPerBean.putAll(freshMatchedRulesPerBean);
+            lastMatchedRulesPerBean = matchedRulesPerBean;
+        }
+
+        LOGGER.trace("serving partial scrape with [%d] stale beans", staleBeans);
+        jmxScrapeStaleBeans.set(staleBeans);
+
+        List<MatchedRule> matchedRules = new ArrayList<>();
+        for (List<MatchedRule> beanMatchedRules : matchedRulesPerBean.values()) {
+            matchedRules.addAll(beanMatchedRules);
+        }
+        return MatchedRuleToMetricSnapshotsConverter.convert(matchedRules);
+    }
+
+    /**
+     * Returns the snapshots of the latest scheduled scrape, starting the scheduled scrapes if
+     * needed. Only waits for a scrape if none has completed yet.
+     *
+     * @param config the configuration to use
+     * @return the collected metric snapshots
+     */
+    private MetricSnapshots collectScheduled(Config config) {
+        scheduleScrapes(config.scrapeIntervalSeconds);
+
+        try {
+            if (config.scrapeTimeoutSeconds != null) {
+                if (!firstScheduledScrape.await(config.scrapeTimeoutSeconds, TimeUnit.SECONDS)) {
+                    return getSnapshotsOnTimeout();
+                }
+            } else {
+                firstScheduledScrape.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return lastGoodSnapshots;
+    }
+
+    /**
+     * Starts scraping on a fixed schedule, or changes the interval of the running schedule.
+     *
+     * @param intervalSeconds the interval between scrapes
+     */
+    private synchronized void scheduleScrapes(int intervalSeconds) {
+        if (scheduledScrape != null && scheduledScrapeIntervalSeconds == intervalSeconds) {
+            return;
+        }
+
+        if (scrapeScheduler == null) {
+            scrapeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "jmx-scrape-scheduler");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        long initialDelaySeconds = 0;
+        if (scheduledScrape != null) {
+            scheduledScrape.cancel(false);
+            initialDelaySeconds = intervalSeconds;
+        }
+
+        scheduledScrape = scrapeScheduler.scheduleWithFixedDelay(
+                this::scheduledScrape, initialDelaySeconds, intervalSeconds, TimeUnit.SECONDS);
+        scheduledScrapeIntervalSeconds = intervalSeconds;
+    }
+
+    /** Stops the scheduled scrapes, if running. */
+    private synchronized void stopScheduledScrapes() {
+        if (scrapeScheduler != null) {
+            scrapeScheduler.shutdownNow();
+            scrapeScheduler = null;
+            scheduledScrape = null;
+        }
+    }
+
+    private void scheduledScrape() {
+        try {
+            Config config = getLatestConfig();
+            if (config.scrapeIntervalSeconds == null) {
+                // Scraping moves back into collect()
+                return;
+            }
+            // Picks up interval changes from a reloaded configuration
+            scheduleScrapes(config.scrapeIntervalSeconds);
+            ScrapeResult scrapeResult = scrape(config, null);
+            if (!scrapeResult.failed) {
+                lastGoodSnapshots = scrapeResult.metricSnapshots;
+            }
+        } catch (Throwable t) {
+            // Keep the schedule running, serve the previous snapshots
+            LOGGER.error("Scheduled JMX scrape failed: %s", t);
+            jmxScrapeError.set(1);
+        } finally {
+            firstScheduledScrape.countDown();
+        }
+    }
+
     /**
      * Performs the actual JMX scrape.
      *
@@ -1151,10 +2064,29 @@ public class JmxCollector implements MultiCollector {
      * @return the collected metric snapshots
      */
     private MetricSnapshots doCollect(Config config) {
+        return scrape(config, null).metricSnapshots;
+    }
+
+    /**
+     * Performs a single JMX scrape, optionally writing the values scraped to a dump.
+     *
+     * @param config the configuration to use for this scrape
+     * @param dumpWriter the writer of the dump, null to not write a dump
+     * @return the collected metric snapshots, and whether the scrape failed
+     */
+    private ScrapeResult scrape(Config config, MBeanDump.Writer dumpWriter) {
         MatchedRulesCache.StalenessTracker stalenessTracker = new MatchedRulesCache.StalenessTracker();
 
-        Receiver receiver = new Receiver(config, stalenessTracker);
+        Receiver receiver = new Receiver(config, stalenessTracker, targetLabels);
+
+        ScrapeStatistics scrapeStatistics = new ScrapeStatistics(
+                config.mbeanDurationHistogram ? jmxScrapeMBeanDurationSeconds : null, config.slowestMBeansCount);
 
+        // A dump is replayed against other rules, so it gets every MBean and string attribute,
+        // not only the ones the rules of this configuration can match
+        boolean dump = dumpWriter != null;
+
+        ExecutorService scrapeWorkers = acquireScrapeWorkers(config.scrapeThreads);
         JmxScraper scraper = new JmxScraper(
                 config.jmxUrl,
                 config.username,
@@ -1165,8 +2097,23 @@ public class JmxCollector implements MultiCollector {
                 config.excludeJvmMetrics,
                 config.objectNameAttributeFilter,
                 config.metricCustomizers,
-                receiver,
-                jmxMBeanPropertyCache);
+                dump ? dumpWriter.tee(receiver) : receiver,
+                jmxMBeanPropertyCache,
+                scrapeWorkers,
+                config.scrapeThreads,
+                // Connections are only reused if a maximum age is configured
+                config.connectionMaxAgeSeconds != null && config.connectionMaxAgeSeconds > 0
+                        ? jmxConnectionCache
+                        : null,
+                config.connectionMaxAgeSeconds,
+                getMBeanInventory(config.mbeanInventoryResyncSeconds),
+                config.mbeanInventoryResyncSeconds != null ? config.mbeanInventoryResyncSeconds : 0,
+                dump ? null : config.mBeanInfoCache,
+                scrapeStatistics,
+                dump ? null : config.mBeanRefreshCache,
+                dump || config.stringValuesExported,
+                dump ? null : config.ruleReachability,
+                config.localAttach);
 
         long start = System.currentTimeMillis();
         double error = 1;
@@ -1175,8 +2122,10 @@ public class JmxCollector implements MultiCollector {
         if (mode != Mode.AGENT
                 && (config.startDelaySeconds > 0)
                 && ((start - createTimeMillis) / 1000L < config.startDelaySeconds)) {
+            releaseScrapeWorkers(scrapeWorkers);
             throw new IllegalStateException("JMXCollector waiting for startDelaySeconds");
         }
+        inFlightReceiver = receiver;
         try {
             scraper.doScrape();
             error = 0;
@@ -1186,20 +2135,187 @@ public class JmxCollector implements MultiCollector {
             StringWriter sw = new StringWriter();
             e.printStackTrace(new PrintWriter(sw));
             errorMsg = sw.toString();
+        } finally {
+            releaseScrapeWorkers(scrapeWorkers);
         }
 
         if (error == 1) {
             LOGGER.error("JMX scrape failed: %s", errorMsg);
         }
 
+        if (error == 1 && dump) {
+            dumpWriter.fail("JMX scrape failed: " + errorMsg);
+        }
+
         if (config.rulesCache != null) {
             config.rulesCache.evictStaleEntries(stalenessTracker);
         }
 
+        inFlightReceiver = null;
+        if (receiver.matchedRulesPerBean != null && error == 0) {
+            synchronized (this) {
+                lastMatchedRulesPerBean = receiver.getMatchedRulesPerBean();
+            }
+            jmxScrapeStaleBeans.set(0);
+        }
+
         jmxScrapeDurationSeconds.set((System.currentTimeMillis() - start) / 1000.0);
         jmxScrapeError.set(error);
         jmxScrapeCachedBeans.set(stalenessTracker.freshCount());
 
-        return MatchedRuleToMetricSnapshotsConverter.convert(receiver.matchedRules);
+        ruleStatistics.add(config.rulePatterns, receiver.ruleCounts);
+        updateRuleMatchBudgetMetrics(config);
+
+        long convertStart = System.nanoTime();
+        MetricSnapshots metricSnapshots = receiver.getMetricSnapshots();
+        scrapeStatistics.convertNanos = System.nanoTime() - convertStart;
+
+        updateScrapeStatistics(scrapeStatistics);
+
+        return new ScrapeResult(metricSnapshots, error == 1);
+    }
+
+    /**
+     * Updates the phase durations and slowest MBeans metrics from the statistics of a scrape.
+     *
+     * @param scrapeStatistics the statistics of the scrape
+     */
+    private void updateScrapeStatistics(ScrapeStatistics scrapeStatistics) {
+        jmxScrapePhaseDurationSeconds.labelValues("discovery").set(scrapeStatistics.discoveryNanos / 1e9);
+        jmxScrapePhaseDurationSeconds.labelValues("fetch").set(scrapeStatistics.fetchNanos / 1e9);
+        jmxScrapePhaseDurationSeconds.labelValues("match").set(scrapeStatistics.matchNanos / 1e9);
+        jmxScrapePhaseDurationSeconds.labelValues("convert").set(scrapeStatistics.convertNanos / 1e9);
+
+        // Scrapes may run concurrently, each replaces the slowest MBeans of the previous one
+        synchronized (this) {
+            List<String> labelValues = new ArrayList<>();
+            for (ScrapeStatistics.MBeanDuration mBeanDuration : scrapeStatistics.getSlowestMBeans()) {
+                String objectName = mBeanDuration.objectName.toString();
+                jmxScrapeSlowestMBeanDurationSeconds.labelValues(objectName).set(mBeanDuration.nanos / 1e9);
+                labelValues.add(objectName);
+            }
+            for (String objectName : slowestMBeanLabelValues) {
+                if (!labelValues.contains(objectName)) {
+                    jmxScrapeSlowestMBeanDurationSeconds.remove(objectName);
+                }
+            }
+            slowestMBeanLabelValues = labelValues;
+        }
+    }
+
+    /**
+     * Updates the aborted matches per rule and the number of disabled rules, for the rule match
+     * budget of a configuration.
+     *
+     * @param config the configuration
+     */
+    private synchronized void updateRuleMatchBudgetMetrics(Config config) {
+        List<List<String>> labelValues = new ArrayList<>();
+        int disabledRules = 0;
+        if (config.ruleMatchBudgetExceeded != null) {
+            for (int i = 0; i < config.ruleMatchBudgetExceeded.length(); i++) {
+                int exceeded = config.ruleMatchBudgetExceeded.get(i);
+                if (exceeded > 0) {
+                    List<String> ruleLabelValues =
+                            Arrays.asList(String.valueOf(i), RuleStatistics.patternHash(config.rulePatterns.get(i)));
+                    jmxRuleMatchBudgetExceeded
+                            .labelValues(ruleLabelValues.toArray(new String[0]))
+                            .set(exceeded);
+                    labelValues.add(ruleLabelValues);
+                    if (exceeded >= config.ruleMatchBudgetExceededLimit) {
+                        disabledRules++;
+                    }
+                }
+            }
+        }
+        for (List<String> ruleLabelValues : ruleMatchBudgetExceededLabelValues) {
+            if (!labelValues.contains(ruleLabelValues)) {
+                jmxRuleMatchBudgetExceeded.remove(ruleLabelValues.toArray(new String[0]));
+            }
+        }
+        ruleMatchBudgetExceededLabelValues = labelValues;
+        jmxRuleMatchBudgetDisabledRules.set(disabledRules);
+    }
+
+    /**
+     * Returns the worker pool used to fetch MBeans concurrently for a scrape, (re)creating it if the
+     * configured number of threads changed. The pool must be released with {@link
+     * #releaseScrapeWorkers(ExecutorService)} when the scrape is done.
+     *
+     * @param threads the configured number of scrape threads
+     * @return the worker pool, or null if MBeans should be fetched serially
+     */
+    private synchronized ExecutorService acquireScrapeWorkers(int threads) {
+        if (scrapeWorkers != null && scrapeWorkersThreads != threads) {
+            retireScrapeWorkers();
+        }
+        if (threads > 1 && scrapeWorkers == null) {
+            scrapeWorkers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "jmx-scrape-worker-" + scrapeWorkerThreadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        scrapeWorkersThreads = threads;
+        if (scrapeWorkers != null) {
+            scrapeWorkersInUse.merge(scrapeWorkers, 1, Integer::sum);
+        }
+        return scrapeWorkers;
+    }
+
+    /**
+     * Releases the worker pool of a scrape, shutting it down if it was replaced or closed while in
+     * use.
+     *
+     * @param workers the worker pool returned by {@link #acquireScrapeWorkers(int)}, may be null
+     */
+    private synchronized void releaseScrapeWorkers(ExecutorService workers) {
+        if (workers == null) {
+            return;
+        }
+        Integer inUse = scrapeWorkersInUse.merge(workers, -1, Integer::sum);
+        if (inUse == 0) {
+            scrapeWorkersInUse.remove(workers);
+            if (workers != scrapeWorkers) {
+                workers.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Stops using the current worker pool, shutting it down now if no scrape is using it, else
+     * when the last scrape using it releases it.
+     */
+    private synchronized void retireScrapeWorkers() {
+        if (scrapeWorkers != null && !scrapeWorkersInUse.containsKey(scrapeWorkers)) {
+            scrapeWorkers.shutdown();
+        }
+        scrapeWorkers = null;
+    }
+
+    /**
+     * Stops the scheduled scrapes and closes the connection, MBean inventory and scrape workers.
+     * Used when a target of a {@link MultiTargetCollector} is removed.
+     */
+    synchronized void close() {
+        stopScheduledScrapes();
+        retireScrapeWorkers();
+        mBeanInventory.close();
+        jmxConnectionCache.close();
+    }
+
+    /**
+     * Returns the MBean inventory, or null if it is disabled, in which case it stops listening for
+     * MBean registrations.
+     *
+     * @param resyncSeconds the configured MBean inventory resync interval
+     * @return the MBean inventory, or null if MBeans should be queried on every scrape
+     */
+    private MBeanInventory getMBeanInventory(Integer resyncSeconds) {
+        if (resyncSeconds == null) {
+            mBeanInventory.close();
+            return null;
+        }
+        return mBeanInventory;
     }
 }
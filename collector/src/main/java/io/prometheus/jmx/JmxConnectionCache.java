@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.jmx.logger.Logger;
+import io.prometheus.jmx.logger.LoggerFactory;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+/**
+ * Keeps a remote JMXConnector open between scrapes, so a scrape does not pay the RMI registry
+ * lookup, TLS handshake and authentication every time.
+ *
+ * <p>A cached connection is discarded and re-established when the connection target changes, when
+ * it is older than the configured maximum age, when the connector reports that the connection
+ * failed or was closed, or when a scrape using it failed. A connection that silently went away is
+ * not probed for before it is reused, the scrape using it fails instead.
+ *
+ * <p>Concurrent scrapes share the cached connection. A discarded connection is no longer handed
+ * out, but only closed when the last scrape using it released it.
+ */
+class JmxConnectionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxConnectionCache.class);
+
+    /** Creates and tears down connections for the cache. */
+    interface ConnectionFactory {
+
+        /**
+         * Opens a new connection.
+         *
+         * @return the connected JMXConnector
+         * @throws IOException if the connection cannot be established
+         */
+        JMXConnector connect() throws IOException;
+
+        /** Releases resources tied to a connection opened by this factory, after it was closed. */
+        void closed();
+    }
+
+    /** An open connection, and the scrapes using it. */
+    private static class Connection implements NotificationListener {
+
+        final JMXConnector jmxConnector;
+        final ConnectionFactory connectionFactory;
+        final Object key;
+        final long connectedNanos = System.nanoTime();
+        volatile boolean broken;
+
+        // Guarded by the JmxConnectionCache
+        int users;
+        boolean discarded;
+
+        Connection(JMXConnector jmxConnector, ConnectionFactory connectionFactory, Object key) {
+            this.jmxConnector = jmxConnector;
+            this.connectionFactory = connectionFactory;
+            this.key = key;
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type)) {
+                broken = true;
+            }
+        }
+    }
+
+    // The connection handed out to scrapes, null if there is none
+    private Connection connection;
+
+    // Discarded connections still used by a scrape
+    private final Map<JMXConnector, Connection> discardedConnections = new IdentityHashMap<>();
+
+    /**
+     * Returns an open connection for the given target, reusing the cached connection if possible.
+     * The connection must be handed back with {@link #release(JMXConnector, boolean, Integer)}.
+     *
+     * @param key identifies the connection target and credentials, compared with equals
+     * @param maxAgeSeconds maximum age of a connection before it is re-established, or null for no
+     *     limit
+     * @param connectionFactory used to open a new connection if needed
+     * @return an open JMXConnector
+     * @throws IOException if a new connection cannot be established
+     */
+    synchronized JMXConnector acquire(Object key, Integer maxAgeSeconds, ConnectionFactory connectionFactory)
+            throws IOException {
+        if (connection != null && !isReusable(key, maxAgeSeconds)) {
+            discard(connection);
+        }
+
+        if (connection == null) {
+            JMXConnector connector = connectionFactory.connect();
+            Connection newConnection = new Connection(connector, connectionFactory, key);
+            connector.addConnectionNotificationListener(newConnection, null, null);
+            connection = newConnection;
+            LOGGER.trace("opened JMX connection");
+        }
+
+        connection.users++;
+        return connection.jmxConnector;
+    }
+
+    /**
+     * Hands a connection back after a scrape.
+     *
+     * @param jmxConnector the connection returned by {@link #acquire(Object, Integer,
+     *     ConnectionFactory)}
+     * @param failed whether the scrape using the connection failed
+     * @param maxAgeSeconds maximum age of a connection, 0 to close the connection after every scrape
+     */
+    synchronized void release(JMXConnector jmxConnector, boolean failed, Integer maxAgeSeconds) {
+        Connection released = connection != null && connection.jmxConnector == jmxConnector
+                ? connection
+                : discardedConnections.get(jmxConnector);
+        if (released == null) {
+            return;
+        }
+
+        released.users--;
+        if (failed || released.broken || (maxAgeSeconds != null && maxAgeSeconds == 0)) {
+            discard(released);
+        } else if (released.discarded && released.users == 0) {
+            discardedConnections.remove(jmxConnector);
+            close(released);
+        }
+    }
+
+    /** Closes the cached connection, if any, or else when the scrapes using it released it. */
+    synchronized void close() {
+        if (connection != null) {
+            discard(connection);
+        }
+    }
+
+    /**
+     * Stops handing out a connection, closing it now if no scrape uses it, else when the last
+     * scrape using it released it.
+     */
+    private void discard(Connection discarded) {
+        if (discarded == connection) {
+            connection = null;
+        }
+        discarded.discarded = true;
+        if (discarded.users == 0) {
+            discardedConnections.remove(discarded.jmxConnector);
+            close(discarded);
+        } else {
+            discardedConnections.put(discarded.jmxConnector, discarded);
+        }
+    }
+
+    private static void close(Connection closed) {
+        try {
+            closed.jmxConnector.removeConnectionNotificationListener(closed);
+        } catch (Exception e) {
+            // INFO: Ignore, the connection is being closed
+        }
+
+        try {
+            closed.jmxConnector.close();
+            LOGGER.trace("closed JMX connection");
+        } catch (IOException e) {
+            LOGGER.trace("closing JMX connection failed: %s", e.getMessage());
+        } finally {
+            closed.connectionFactory.closed();
+        }
+    }
+
+    private boolean isReusable(Object key, Integer maxAgeSeconds) {
+        if (connection.broken || !connection.key.equals(key)) {
+            return false;
+        }
+
+        if (maxAgeSeconds != null
+                && System.nanoTime() - connection.connectedNanos >= TimeUnit.SECONDS.toNanos(maxAgeSeconds)) {
+            LOGGER.trace("JMX connection reached maximum age of %d seconds", maxAgeSeconds);
+            return false;
+        }
+
+        return true;
+    }
+}
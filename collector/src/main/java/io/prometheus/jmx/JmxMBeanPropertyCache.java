@@ -98,4 +98,8 @@ class JmxMBeanPropertyCache {
             keyPropertiesPerBean.remove(name);
         }
     }
+
+    public void remove(ObjectName mbeanName) {
+        keyPropertiesPerBean.remove(mbeanName);
+    }
 }
@@ -21,9 +21,12 @@ import io.prometheus.jmx.logger.Logger;
 import io.prometheus.jmx.logger.LoggerFactory;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -32,8 +35,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -66,6 +71,12 @@ class JmxScraper {
 
     private static final List<ObjectName> JVM_EXCLUDE_OBJECT_NAMES;
 
+    /**
+     * Number of MBean fetches queued per worker thread when scraping concurrently. Keeps the
+     * workers busy while bounding the number of fetched, but not yet processed, MBeans.
+     */
+    private static final int IN_FLIGHT_MBEANS_PER_THREAD = 4;
+
     static {
         List<ObjectName> names = new ArrayList<>();
         try {
@@ -92,7 +103,8 @@ class JmxScraper {
     public interface MBeanReceiver {
 
         /**
-         * Method to create a bean
+         * Method to create a bean. The beanProperties and attrKeys are reused for other values
+         * after the call, so must be copied to keep them.
          *
          * @param domain domain
          * @param beanProperties beanProperties
@@ -111,6 +123,15 @@ class JmxScraper {
                 String attrType,
                 String attrDescription,
                 Object value);
+
+        /**
+         * Method called after all values of a bean were passed to the receiver
+         *
+         * @param mBeanName mBeanName
+         */
+        default void scrapedBean(ObjectName mBeanName) {
+            // Intentionally empty
+        }
     }
 
     private final MBeanReceiver receiver;
@@ -123,6 +144,21 @@ class JmxScraper {
     private final List<JmxCollector.MetricCustomizer> metricCustomizers;
     private final ObjectNameAttributeFilter objectNameAttributeFilter;
     private final JmxMBeanPropertyCache jmxMBeanPropertyCache;
+    private final ExecutorService scrapeWorkers;
+    private final int scrapeThreads;
+    private final JmxConnectionCache jmxConnectionCache;
+    private final Integer connectionMaxAgeSeconds;
+    private final MBeanInventory mBeanInventory;
+    private final int mBeanInventoryResyncSeconds;
+    private final MBeanInfoCache mBeanInfoCache;
+    private final ScrapeStatistics scrapeStatistics;
+    private final MBeanRefreshCache mBeanRefreshCache;
+    private final boolean stringValuesExported;
+    private final RuleReachability ruleReachability;
+    private final LocalAttach localAttach;
+
+    // The values passed to the receiver for the MBean being processed, only used on the scraping thread
+    private List<MBeanRefreshCache.RecordedValue> recordedValues;
 
     /**
      * Constructor
@@ -151,6 +187,90 @@ class JmxScraper {
             List<JmxCollector.MetricCustomizer> metricCustomizers,
             MBeanReceiver receiver,
             JmxMBeanPropertyCache jmxMBeanPropertyCache) {
+        this(
+                jmxUrl,
+                username,
+                password,
+                sslProperties,
+                includeObjectNames,
+                excludeObjectNames,
+                excludeJvmMetrics,
+                objectNameAttributeFilter,
+                metricCustomizers,
+                receiver,
+                jmxMBeanPropertyCache,
+                null,
+                1,
+                null,
+                null,
+                null,
+                0,
+                null,
+                null,
+                null,
+                true,
+                null,
+                null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param jmxUrl jmxUrl
+     * @param username username
+     * @param password password
+     * @param sslProperties sslProperties
+     * @param includeObjectNames includeObjectNames
+     * @param excludeObjectNames excludeObjectNames
+     * @param excludeJvmMetrics excludeJvmMetrics
+     * @param objectNameAttributeFilter objectNameAttributeFilter
+     * @param metricCustomizers metricCustomizers
+     * @param receiver receiver
+     * @param jmxMBeanPropertyCache jmxMBeanPropertyCache
+     * @param scrapeWorkers executor used to fetch MBeans concurrently, or null to fetch them
+     *     serially
+     * @param scrapeThreads number of threads of scrapeWorkers
+     * @param jmxConnectionCache cache used to reuse the remote connection between scrapes, or null to
+     *     connect on every scrape
+     * @param connectionMaxAgeSeconds maximum age of a cached connection, or null for no limit
+     * @param mBeanInventory inventory used to track the MBeans to scrape, or null to query them on
+     *     every scrape
+     * @param mBeanInventoryResyncSeconds interval between full queries of the MBean inventory
+     * @param mBeanInfoCache cache of the attributes to scrape per MBean, or null to get the
+     *     MBeanInfo on every scrape. Only used with an MBean inventory, whose unregistration
+     *     notifications invalidate the entries
+     * @param scrapeStatistics statistics to record the scrape timings in, or null
+     * @param mBeanRefreshCache cache of the values of MBeans with their own refresh interval, or
+     *     null to read every MBean on every scrape
+     * @param stringValuesExported whether string values can become a sample, if false attributes
+     *     of type String are not read
+     * @param ruleReachability the MBeans rules can match, or null if any MBean may be matched
+     * @param localAttach the local JVM to attach to instead of connecting to jmxUrl, or null
+     */
+    public JmxScraper(
+            String jmxUrl,
+            String username,
+            String password,
+            SslProperties sslProperties,
+            List<ObjectName> includeObjectNames,
+            List<ObjectName> excludeObjectNames,
+            boolean excludeJvmMetrics,
+            ObjectNameAttributeFilter objectNameAttributeFilter,
+            List<JmxCollector.MetricCustomizer> metricCustomizers,
+            MBeanReceiver receiver,
+            JmxMBeanPropertyCache jmxMBeanPropertyCache,
+            ExecutorService scrapeWorkers,
+            int scrapeThreads,
+            JmxConnectionCache jmxConnectionCache,
+            Integer connectionMaxAgeSeconds,
+            MBeanInventory mBeanInventory,
+            int mBeanInventoryResyncSeconds,
+            MBeanInfoCache mBeanInfoCache,
+            ScrapeStatistics scrapeStatistics,
+            MBeanRefreshCache mBeanRefreshCache,
+            boolean stringValuesExported,
+            RuleReachability ruleReachability,
+            LocalAttach localAttach) {
         this.jmxUrl = jmxUrl;
         this.receiver = receiver;
         this.username = username;
@@ -162,102 +282,282 @@ class JmxScraper {
         this.metricCustomizers = metricCustomizers;
         this.objectNameAttributeFilter = objectNameAttributeFilter;
         this.jmxMBeanPropertyCache = jmxMBeanPropertyCache;
+        this.scrapeWorkers = scrapeWorkers;
+        this.scrapeThreads = scrapeThreads;
+        this.jmxConnectionCache = jmxConnectionCache;
+        this.connectionMaxAgeSeconds = connectionMaxAgeSeconds;
+        this.mBeanInventory = mBeanInventory;
+        this.mBeanInventoryResyncSeconds = mBeanInventoryResyncSeconds;
+        this.mBeanInfoCache = mBeanInventory != null ? mBeanInfoCache : null;
+        this.scrapeStatistics = scrapeStatistics;
+        this.mBeanRefreshCache = mBeanRefreshCache;
+        this.stringValuesExported = stringValuesExported;
+        this.ruleReachability = ruleReachability;
+        this.localAttach = localAttach;
     }
 
     /**
      * Get a list of mbeans on host_port and scrape their values.
      *
-     * <p>Values are passed to the receiver in a single thread.
+     * <p>Values are passed to the receiver in a single thread. When scrape workers are
+     * configured, MBeanInfo and attribute values are fetched concurrently, but the fetched MBeans
+     * are still processed in query order on the calling thread, so the receiver sees the same
+     * sequence of values as with a serial scrape.
      */
     public void doScrape() throws Exception {
         MBeanServerConnection beanConn;
         JMXConnector jmxc = null;
-        if (jmxUrl.isEmpty()) {
+        if (jmxUrl.isEmpty() && localAttach == null) {
             beanConn = ManagementFactory.getPlatformMBeanServer();
-        } else {
-            Map<String, Object> environment = new HashMap<>();
-            if (username != null && !username.isEmpty() && password != null && !password.isEmpty()) {
-                String[] credentials = new String[] {username, password};
-                environment.put(JMXConnector.CREDENTIALS, credentials);
-            }
-            if (sslProperties.enabled) {
-                environment.put(Context.SECURITY_PROTOCOL, "ssl");
-
-                SSLFactory sslFactory = createSslFactory();
-                ProviderUtils.configure(sslFactory);
+        } else if (jmxConnectionCache != null) {
+            jmxc = jmxConnectionCache.acquire(
+                    Arrays.asList(jmxUrl, localAttach, username, password, sslProperties),
+                    connectionMaxAgeSeconds,
+                    new JmxConnectionCache.ConnectionFactory() {
+                        @Override
+                        public JMXConnector connect() throws IOException {
+                            try {
+                                return JmxScraper.this.connect();
+                            } catch (IOException | RuntimeException e) {
+                                if (sslProperties.enabled) {
+                                    ProviderUtils.remove();
+                                }
+                                throw e;
+                            }
+                        }
 
-                SslRMIClientSocketFactory clientSocketFactory = new SslRMIClientSocketFactory();
-                environment.put(RMIConnectorServer.RMI_CLIENT_SOCKET_FACTORY_ATTRIBUTE, clientSocketFactory);
-                if (!"true".equalsIgnoreCase(System.getenv("RMI_REGISTRY_SSL_DISABLED"))) {
-                    environment.put("com.sun.jndi.rmi.factory.socket", clientSocketFactory);
+                        @Override
+                        public void closed() {
+                            if (sslProperties.enabled) {
+                                ProviderUtils.remove();
+                            }
+                        }
+                    });
+            beanConn = jmxc.getMBeanServerConnection();
+        } else {
+            try {
+                jmxc = connect();
+            } catch (IOException | RuntimeException e) {
+                if (sslProperties.enabled) {
+                    ProviderUtils.remove();
                 }
+                throw e;
             }
-
-            jmxc = JMXConnectorFactory.connect(new JMXServiceURL(jmxUrl), environment);
             beanConn = jmxc.getMBeanServerConnection();
         }
+        boolean failed = true;
         try {
-            // Query MBean names, see #89 for reasons queryMBeans() is used instead of queryNames()
-            Set<ObjectName> mBeanNames = new HashSet<>();
-            // Track beans from explicit (non-null) include patterns so they can be
-            // re-added after JVM exclusion without additional JMX queries.
-            Set<ObjectName> explicitIncludeBeans = new HashSet<>();
-            for (ObjectName name : includeObjectNames) {
-                for (ObjectInstance instance : beanConn.queryMBeans(name, null)) {
-                    ObjectName objectName = instance.getObjectName();
-                    mBeanNames.add(objectName);
-                    if (name != null) {
-                        explicitIncludeBeans.add(objectName);
+            long discoveryStart = System.nanoTime();
+            Set<ObjectName> mBeanNames;
+            if (mBeanInventory != null) {
+                final MBeanServerConnection connection = beanConn;
+                MBeanInventory.Update update = mBeanInventory.update(
+                        beanConn,
+                        jmxc,
+                        Arrays.asList(includeObjectNames, excludeObjectNames, excludeJvmMetrics),
+                        () -> queryMBeanNames(connection),
+                        this::isIncluded,
+                        mBeanInventoryResyncSeconds);
+                mBeanNames = update.mBeanNames;
+                if (update.resynced) {
+                    jmxMBeanPropertyCache.onlyKeepMBeans(mBeanNames);
+                    objectNameAttributeFilter.onlyKeepMBeans(mBeanNames);
+                    if (mBeanInfoCache != null) {
+                        // MBeans may have been replaced while no notifications were received
+                        mBeanInfoCache.clear();
+                    }
+                    if (mBeanRefreshCache != null) {
+                        mBeanRefreshCache.onlyKeepMBeans(mBeanNames);
+                    }
+                    if (ruleReachability != null) {
+                        ruleReachability.onlyKeepMBeans(mBeanNames);
                     }
+                } else {
+                    for (ObjectName objectName : update.unregistered) {
+                        jmxMBeanPropertyCache.remove(objectName);
+                        objectNameAttributeFilter.remove(objectName);
+                        if (mBeanInfoCache != null) {
+                            mBeanInfoCache.remove(objectName);
+                        }
+                        if (mBeanRefreshCache != null) {
+                            mBeanRefreshCache.remove(objectName);
+                        }
+                        if (ruleReachability != null) {
+                            ruleReachability.remove(objectName);
+                        }
+                    }
+                }
+            } else {
+                mBeanNames = queryMBeanNames(beanConn);
+
+                // Now that we have *only* the whitelisted mBeans, remove any old ones from the cache
+                // and dynamic attribute filter:
+                jmxMBeanPropertyCache.onlyKeepMBeans(mBeanNames);
+                objectNameAttributeFilter.onlyKeepMBeans(mBeanNames);
+                if (mBeanRefreshCache != null) {
+                    mBeanRefreshCache.onlyKeepMBeans(mBeanNames);
                 }
+                if (ruleReachability != null) {
+                    ruleReachability.onlyKeepMBeans(mBeanNames);
+                }
+            }
+
+            long scrapeStart = System.nanoTime();
+            if (scrapeStatistics != null) {
+                scrapeStatistics.discoveryNanos = scrapeStart - discoveryStart;
             }
 
-            for (ObjectName name : excludeObjectNames) {
-                for (ObjectInstance instance : beanConn.queryMBeans(name, null)) {
-                    ObjectName objectName = instance.getObjectName();
-                    explicitIncludeBeans.remove(objectName);
-                    mBeanNames.remove(objectName);
+            if (scrapeWorkers == null) {
+                for (ObjectName objectName : mBeanNames) {
+                    scrapeBean(fetchBean(beanConn, objectName));
                 }
+            } else {
+                scrapeBeansConcurrently(beanConn, mBeanNames);
             }
 
-            if (excludeJvmMetrics) {
-                // Remove JVM beans in-memory (no extra JMX queries).
-                Iterator<ObjectName> iterator = mBeanNames.iterator();
-                while (iterator.hasNext()) {
-                    ObjectName bean = iterator.next();
-                    for (ObjectName jvmPattern : JVM_EXCLUDE_OBJECT_NAMES) {
-                        if (jvmPattern.apply(bean)) {
-                            iterator.remove();
-                            break;
+            if (scrapeStatistics != null) {
+                // Time not spent passing values to the receiver was spent fetching them
+                scrapeStatistics.fetchNanos = System.nanoTime() - scrapeStart - scrapeStatistics.matchNanos;
+            }
+            failed = false;
+        } finally {
+            if (jmxc != null) {
+                if (jmxConnectionCache != null) {
+                    jmxConnectionCache.release(jmxc, failed, connectionMaxAgeSeconds);
+                } else {
+                    try {
+                        jmxc.close();
+                    } finally {
+                        if (sslProperties.enabled) {
+                            ProviderUtils.remove();
                         }
                     }
                 }
+            }
+        }
+    }
 
-                // Re-add beans from explicit include patterns that were removed
-                // by JVM exclusion but not by user-specified excludes (those were
-                // already removed from explicitIncludeBeans above).
-                mBeanNames.addAll(explicitIncludeBeans);
+    /**
+     * Queries the MBean server for the MBeans to scrape.
+     */
+    private Set<ObjectName> queryMBeanNames(MBeanServerConnection beanConn) throws IOException {
+        // Query MBean names, see #89 for reasons queryMBeans() is used instead of queryNames()
+        Set<ObjectName> mBeanNames = new HashSet<>();
+        // Track beans from explicit (non-null) include patterns so they can be
+        // re-added after JVM exclusion without additional JMX queries.
+        Set<ObjectName> explicitIncludeBeans = new HashSet<>();
+        for (ObjectName name : includeObjectNames) {
+            for (ObjectInstance instance : beanConn.queryMBeans(name, null)) {
+                ObjectName objectName = instance.getObjectName();
+                mBeanNames.add(objectName);
+                if (name != null) {
+                    explicitIncludeBeans.add(objectName);
+                }
             }
+        }
 
-            // Now that we have *only* the whitelisted mBeans, remove any old ones from the cache
-            // and dynamic attribute filter:
-            jmxMBeanPropertyCache.onlyKeepMBeans(mBeanNames);
-            objectNameAttributeFilter.onlyKeepMBeans(mBeanNames);
+        for (ObjectName name : excludeObjectNames) {
+            for (ObjectInstance instance : beanConn.queryMBeans(name, null)) {
+                ObjectName objectName = instance.getObjectName();
+                explicitIncludeBeans.remove(objectName);
+                mBeanNames.remove(objectName);
+            }
+        }
 
-            for (ObjectName objectName : mBeanNames) {
-                long start = System.nanoTime();
-                scrapeBean(beanConn, objectName);
-                LOGGER.trace("TIME: %d ns for %s", System.nanoTime() - start, objectName);
+        if (excludeJvmMetrics) {
+            // Remove JVM beans in-memory (no extra JMX queries).
+            Iterator<ObjectName> iterator = mBeanNames.iterator();
+            while (iterator.hasNext()) {
+                ObjectName bean = iterator.next();
+                for (ObjectName jvmPattern : JVM_EXCLUDE_OBJECT_NAMES) {
+                    if (jvmPattern.apply(bean)) {
+                        iterator.remove();
+                        break;
+                    }
+                }
             }
-        } finally {
-            if (jmxc != null) {
-                jmxc.close();
+
+            // Re-add beans from explicit include patterns that were removed
+            // by JVM exclusion but not by user-specified excludes (those were
+            // already removed from explicitIncludeBeans above).
+            mBeanNames.addAll(explicitIncludeBeans);
+        }
+
+        return mBeanNames;
+    }
+
+    /**
+     * Returns whether an MBean would be returned by {@link #queryMBeanNames}, without querying the
+     * MBean server.
+     */
+    private boolean isIncluded(ObjectName objectName) {
+        boolean included = false;
+        boolean explicitlyIncluded = false;
+        for (ObjectName name : includeObjectNames) {
+            if (name == null) {
+                included = true;
+            } else if (name.apply(objectName)) {
+                included = true;
+                explicitlyIncluded = true;
             }
+        }
 
-            if (sslProperties.enabled) {
-                ProviderUtils.remove();
+        if (!included) {
+            return false;
+        }
+
+        for (ObjectName name : excludeObjectNames) {
+            if (name == null || name.apply(objectName)) {
+                return false;
             }
         }
+
+        if (excludeJvmMetrics && !explicitlyIncluded) {
+            for (ObjectName jvmPattern : JVM_EXCLUDE_OBJECT_NAMES) {
+                if (jvmPattern.apply(objectName)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Opens a connection to the remote MBean server. If SSL is enabled, the SSL provider stays
+     * configured until the connection is closed.
+     */
+    private JMXConnector connect() throws IOException {
+        if (localAttach != null) {
+            // The local connector only accepts connections from the same host, without credentials or SSL
+            try {
+                return JMXConnectorFactory.connect(new JMXServiceURL(localAttach.getLocalConnectorAddress()));
+            } catch (IOException e) {
+                // The JVM may have restarted with the same pid, attach again on the next connect
+                localAttach.reset();
+                throw e;
+            }
+        }
+
+        Map<String, Object> environment = new HashMap<>();
+        if (username != null && !username.isEmpty() && password != null && !password.isEmpty()) {
+            String[] credentials = new String[] {username, password};
+            environment.put(JMXConnector.CREDENTIALS, credentials);
+        }
+        if (sslProperties.enabled) {
+            environment.put(Context.SECURITY_PROTOCOL, "ssl");
+
+            SSLFactory sslFactory = createSslFactory();
+            ProviderUtils.configure(sslFactory);
+
+            SslRMIClientSocketFactory clientSocketFactory = new SslRMIClientSocketFactory();
+            environment.put(RMIConnectorServer.RMI_CLIENT_SOCKET_FACTORY_ATTRIBUTE, clientSocketFactory);
+            if (!"true".equalsIgnoreCase(System.getenv("RMI_REGISTRY_SSL_DISABLED"))) {
+                environment.put("com.sun.jndi.rmi.factory.socket", clientSocketFactory);
+            }
+        }
+
+        return JMXConnectorFactory.connect(new JMXServiceURL(jmxUrl), environment);
     }
 
     /**
@@ -314,21 +614,209 @@ class JmxScraper {
         }
     }
 
-    private void scrapeBean(MBeanServerConnection beanConn, ObjectName mBeanName) {
+    /**
+     * Fetches the MBeans on the scrape workers, keeping a bounded number of fetches in flight, and
+     * processes each fetched MBean on the calling thread in iteration order.
+     */
+    private void scrapeBeansConcurrently(MBeanServerConnection beanConn, Set<ObjectName> mBeanNames) throws Exception {
+        int maxInFlight = scrapeThreads * IN_FLIGHT_MBEANS_PER_THREAD;
+        Deque<Future<FetchedBean>> inFlight = new ArrayDeque<>(maxInFlight);
+        Iterator<ObjectName> iterator = mBeanNames.iterator();
+        try {
+            while (iterator.hasNext() || !inFlight.isEmpty()) {
+                while (iterator.hasNext() && inFlight.size() < maxInFlight) {
+                    ObjectName objectName = iterator.next();
+                    inFlight.add(scrapeWorkers.submit(() -> fetchBean(beanConn, objectName)));
+                }
+
+                scrapeBean(getFetchedBean(inFlight.poll()));
+            }
+        } finally {
+            for (Future<FetchedBean> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static FetchedBean getFetchedBean(Future<FetchedBean> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void scrapeBean(FetchedBean fetchedBean) {
+        long start = System.nanoTime();
+        if (fetchedBean.recordedValues != null) {
+            replayBean(fetchedBean.recordedValues);
+        } else if (fetchedBean.attributes != null) {
+            if (mBeanRefreshCache != null && mBeanRefreshCache.isCached(fetchedBean.mBeanName)) {
+                recordedValues = new ArrayList<>();
+                try {
+                    processBean(fetchedBean);
+                    mBeanRefreshCache.put(fetchedBean.mBeanName, recordedValues);
+                } finally {
+                    recordedValues = null;
+                }
+            } else {
+                processBean(fetchedBean);
+            }
+        }
+        receiver.scrapedBean(fetchedBean.mBeanName);
+        long processNanos = System.nanoTime() - start;
+
+        LOGGER.trace("TIME: %d ns for %s", fetchedBean.fetchNanos + processNanos, fetchedBean.mBeanName);
+        if (scrapeStatistics != null) {
+            scrapeStatistics.recordMBean(fetchedBean.mBeanName, fetchedBean.fetchNanos, processNanos);
+        }
+    }
+
+    /**
+     * Passes the values cached for an MBean to the receiver again.
+     */
+    private void replayBean(List<MBeanRefreshCache.RecordedValue> recordedValues) {
+        for (MBeanRefreshCache.RecordedValue recordedValue : recordedValues) {
+            receiver.recordBean(
+                    recordedValue.domain,
+                    recordedValue.beanProperties,
+                    recordedValue.attributesAsLabelsWithValues,
+                    recordedValue.attrKeys,
+                    recordedValue.attrName,
+                    recordedValue.attrType,
+                    recordedValue.attrDescription,
+                    recordedValue.value);
+        }
+    }
+
+    /**
+     * Fetches the MBeanInfo and the attribute values of an MBean. Only performs reads against the
+     * MBean server and the (thread-safe) attribute filter, so it can run on a scrape worker.
+     *
+     * @return the fetched MBean, without attributes if there is nothing to process
+     */
+    private FetchedBean fetchBean(MBeanServerConnection beanConn, ObjectName mBeanName) {
+        long start = System.nanoTime();
+
+        if (ruleReachability != null
+                && !ruleReachability.isReachable(mBeanName, jmxMBeanPropertyCache.getKeyPropertyList(mBeanName))) {
+            LOGGER.trace("%s no rule can match, skipping", mBeanName);
+            return new FetchedBean(mBeanName, null, null, false, System.nanoTime() - start);
+        }
+
+        if (mBeanRefreshCache != null) {
+            List<MBeanRefreshCache.RecordedValue> recordedValues = mBeanRefreshCache.get(mBeanName);
+            if (recordedValues != null) {
+                return new FetchedBean(mBeanName, recordedValues, System.nanoTime() - start);
+            }
+        }
+
+        MBeanInfoCache.Entry mBeanInfoEntry = mBeanInfoCache != null ? mBeanInfoCache.get(mBeanName) : null;
+        if (mBeanInfoEntry == null) {
+            mBeanInfoEntry = getAttributesToScrape(beanConn, mBeanName);
+            if (mBeanInfoEntry == null) {
+                return new FetchedBean(mBeanName, null, null, false, System.nanoTime() - start);
+            }
+        }
+
+        Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo = mBeanInfoEntry.name2MBeanAttributeInfo;
+        if (name2MBeanAttributeInfo.isEmpty()) {
+            return withoutAttributes(mBeanName, name2MBeanAttributeInfo, start);
+        }
+
+        String[] attributeNames = mBeanInfoEntry.attributeNames;
+        if (objectNameAttributeFilter.slowAttributeBudgetIsEnabled()) {
+            if (objectNameAttributeFilter.hasSlowAttributes(mBeanName)) {
+                attributeNames = Arrays.stream(attributeNames)
+                        .filter(attributeName -> !objectNameAttributeFilter.excludeSlow(mBeanName, attributeName))
+                        .toArray(String[]::new);
+                if (attributeNames.length == 0) {
+                    return withoutAttributes(mBeanName, name2MBeanAttributeInfo, start);
+                }
+            }
+
+            if (objectNameAttributeFilter.isSlow(mBeanName)) {
+                AttributeList attributes = getAttributesTimed(beanConn, mBeanName, attributeNames);
+                return new FetchedBean(
+                        mBeanName, name2MBeanAttributeInfo, attributes, false, System.nanoTime() - start);
+            }
+        }
+
+        AttributeList attributes;
+        boolean oneByOne = false;
+
+        try {
+            // bulk load all attributes
+            long readStart = System.nanoTime();
+            attributes = beanConn.getAttributes(mBeanName, attributeNames);
+            objectNameAttributeFilter.recordRead(mBeanName, System.nanoTime() - readStart);
+            if (attributes == null) {
+                LOGGER.trace("%s getMBeanInfo Fail: attributes are null", mBeanName);
+                return new FetchedBean(mBeanName, null, null, false, System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("%s getAttributes Fail: processing one by one: %s", mBeanName, e.getMessage());
+
+            // the mBean may have been replaced, fetch its MBeanInfo again on the next scrape
+            if (mBeanInfoCache != null) {
+                mBeanInfoCache.remove(mBeanName);
+            }
+
+            // couldn't get them all in one go, try them 1 by 1
+            attributes = getAttributesOneByOne(beanConn, mBeanName, attributeNames);
+            oneByOne = true;
+        }
+
+        return new FetchedBean(mBeanName, name2MBeanAttributeInfo, attributes, oneByOne, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns a fetched MBean without attribute values, for an MBean with no attributes to read. The
+     * MBean is still processed if a metric customizer adds extra metrics to it.
+     */
+    private FetchedBean withoutAttributes(
+            ObjectName mBeanName, Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo, long start) {
+        JmxCollector.MetricCustomizer metricCustomizer = getMetricCustomizer(mBeanName);
+        if (metricCustomizer != null && !getExtraMetrics(metricCustomizer).isEmpty()) {
+            return new FetchedBean(
+                    mBeanName, name2MBeanAttributeInfo, new AttributeList(), false, System.nanoTime() - start);
+        }
+        return new FetchedBean(mBeanName, null, null, false, System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the MBeanInfo of an MBean and selects the readable attributes that pass the attribute
+     * filter, caching the result if the MBeanInfo cache is enabled.
+     *
+     * @return the attributes to scrape, or null if the MBeanInfo could not be fetched
+     */
+    private MBeanInfoCache.Entry getAttributesToScrape(MBeanServerConnection beanConn, ObjectName mBeanName) {
         MBeanInfo mBeanInfo;
 
         try {
             mBeanInfo = beanConn.getMBeanInfo(mBeanName);
         } catch (IOException e) {
             LOGGER.trace("%s getMBeanInfo Fail: %s", mBeanName, e);
-            return;
+            return null;
         } catch (JMException e) {
             LOGGER.trace("%s getMBeanInfo Fail: %s", mBeanName, e.getMessage());
-            return;
+            return null;
         }
 
         MBeanAttributeInfo[] mBeanAttributeInfos = mBeanInfo.getAttributes();
 
+        JmxCollector.MetricCustomizer metricCustomizer = getMetricCustomizer(mBeanName);
+        List<String> attributesAsLabels = metricCustomizer != null && metricCustomizer.attributesAsLabels != null
+                ? metricCustomizer.attributesAsLabels
+                : Collections.emptyList();
+
         Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo = new LinkedHashMap<>();
         for (MBeanAttributeInfo mBeanAttributeInfo : mBeanAttributeInfos) {
             String attributeName = mBeanAttributeInfo.getName();
@@ -341,6 +829,14 @@ class JmxScraper {
                 continue;
             }
 
+            // Don't read attributes that can never become a sample, unless used as a label
+            if (!attributesAsLabels.contains(attributeName)
+                    && (AttributeTypePruner.isIgnored(mBeanName, attributeName)
+                            || !AttributeTypePruner.canProduceSample(mBeanAttributeInfo, stringValuesExported))) {
+                LOGGER.trace("%s_%s of type %s pruned", mBeanName, attributeName, mBeanAttributeInfo.getType());
+                continue;
+            }
+
             if (objectNameAttributeFilter.includeObjectNameAttributesIsEmpty()) {
                 name2MBeanAttributeInfo.put(attributeName, mBeanAttributeInfo);
                 continue;
@@ -351,29 +847,25 @@ class JmxScraper {
             }
         }
 
-        if (name2MBeanAttributeInfo.isEmpty()) {
-            return;
+        if (mBeanInfoCache != null) {
+            return mBeanInfoCache.put(mBeanName, mBeanInfo, name2MBeanAttributeInfo);
         }
+        return new MBeanInfoCache.Entry(name2MBeanAttributeInfo);
+    }
 
-        AttributeList attributes;
-
-        try {
-            // bulk load all attributes
-            attributes = beanConn.getAttributes(
-                    mBeanName, name2MBeanAttributeInfo.keySet().toArray(new String[0]));
-            if (attributes == null) {
-                LOGGER.trace("%s getMBeanInfo Fail: attributes are null", mBeanName);
-                return;
-            }
-        } catch (Exception e) {
-            LOGGER.warn("%s getAttributes Fail: processing one by one: %s", mBeanName, e.getMessage());
+    /**
+     * Passes the values of a fetched MBean to the receiver. Must run on the scraping thread.
+     */
+    private void processBean(FetchedBean fetchedBean) {
+        final ObjectName mBeanName = fetchedBean.mBeanName;
+        final Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo = fetchedBean.name2MBeanAttributeInfo;
+        final AttributeList attributes = fetchedBean.attributes;
 
-            // couldn't get them all in one go, try them 1 by 1
-            processAttributesOneByOne(beanConn, mBeanName, name2MBeanAttributeInfo);
+        if (fetchedBean.oneByOne) {
+            processAttributesOneByOne(mBeanName, name2MBeanAttributeInfo, attributes);
             return;
         }
 
-        final String mBeanNameString = mBeanName.toString();
         final String mBeanDomain = mBeanName.getDomain();
         JmxCollector.MetricCustomizer metricCustomizer = getMetricCustomizer(mBeanName);
         Map<String, String> attributesAsLabelsWithValues = Collections.emptyMap();
@@ -401,19 +893,6 @@ class JmxScraper {
             if (object instanceof Attribute) {
                 Attribute attribute = (Attribute) object;
                 String attributeName = attribute.getName();
-                if (mBeanNameString.equals("java.lang:type=Runtime")
-                        && (attributeName.equalsIgnoreCase("SystemProperties")
-                                || attributeName.equalsIgnoreCase("ClassPath")
-                                || attributeName.equalsIgnoreCase("BootClassPath")
-                                || attributeName.equalsIgnoreCase("LibraryPath"))) {
-                    // Skip this attributes for the "java.lang:type=Runtime" MBean because
-                    // getting the values is expensive and the values are ultimately ignored
-                    continue;
-                } else if (mBeanNameString.equals("jdk.management.jfr:type=FlightRecorder")) {
-                    // Skip the FlightRecorderMXBean
-                    continue;
-                }
-
                 MBeanAttributeInfo mBeanAttributeInfo = name2MBeanAttributeInfo.get(attributeName);
                 if (mBeanAttributeInfo == null) {
                     LOGGER.trace(
@@ -480,17 +959,47 @@ class JmxScraper {
                         .containsAll(metricCustomizer.mbeanFilter.properties.entrySet());
     }
 
-    private void processAttributesOneByOne(
-            MBeanServerConnection beanConn, ObjectName mbeanName, Map<String, MBeanAttributeInfo> name2AttrInfo) {
-        Object value;
-        for (MBeanAttributeInfo attr : name2AttrInfo.values()) {
-            String attributeName = attr.getName();
+    private AttributeList getAttributesOneByOne(
+            MBeanServerConnection beanConn, ObjectName mbeanName, String[] attributeNames) {
+        AttributeList attributes = new AttributeList();
+        for (String attributeName : attributeNames) {
             try {
-                value = beanConn.getAttribute(mbeanName, attributeName);
+                attributes.add(new Attribute(attributeName, beanConn.getAttribute(mbeanName, attributeName)));
+            } catch (Exception e) {
+                LOGGER.trace("%s_%s Fail: %s", mbeanName, attributeName, e.getMessage());
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Reads the attributes of a slow MBean one by one, timing each read so attributes that keep
+     * exceeding the read time budget get excluded.
+     */
+    private AttributeList getAttributesTimed(
+            MBeanServerConnection beanConn, ObjectName mbeanName, String[] attributeNames) {
+        AttributeList attributes = new AttributeList();
+        boolean slow = false;
+        for (String attributeName : attributeNames) {
+            long start = System.nanoTime();
+            try {
+                attributes.add(new Attribute(attributeName, beanConn.getAttribute(mbeanName, attributeName)));
             } catch (Exception e) {
                 LOGGER.trace("%s_%s Fail: %s", mbeanName, attributeName, e.getMessage());
-                continue;
             }
+            slow |= objectNameAttributeFilter.recordRead(mbeanName, attributeName, System.nanoTime() - start);
+        }
+        if (!slow) {
+            objectNameAttributeFilter.recordWithinBudget(mbeanName);
+        }
+        return attributes;
+    }
+
+    private void processAttributesOneByOne(
+            ObjectName mbeanName, Map<String, MBeanAttributeInfo> name2AttrInfo, AttributeList attributes) {
+        for (Attribute attribute : attributes.asList()) {
+            MBeanAttributeInfo attr = name2AttrInfo.get(attribute.getName());
+            String attributeName = attr.getName();
 
             LOGGER.trace("%s_%s process", mbeanName, attributeName);
             processBeanValue(
@@ -502,10 +1011,31 @@ class JmxScraper {
                     attributeName,
                     attr.getType(),
                     attr.getDescription(),
-                    value);
+                    attribute.getValue());
         }
     }
 
+    private static void putRowLabel(
+            LinkedHashMap<String, String> l2s, List<String> rowLabels, String label, String labelValue) {
+        l2s.put(label, labelValue);
+        rowLabels.add(label);
+    }
+
+    /** Restores the bean properties a TabularData row started with. */
+    private static void removeRowLabels(
+            LinkedHashMap<String, String> l2s, List<String> rowLabels, Map<String, String> beanProperties) {
+        for (String label : rowLabels) {
+            String beanProperty = beanProperties.get(label);
+            if (beanProperty != null) {
+                // The row label replaced a bean property, which keeps its position
+                l2s.put(label, beanProperty);
+            } else {
+                l2s.remove(label);
+            }
+        }
+        rowLabels.clear();
+    }
+
     /**
      * Recursive function for exporting the values of an mBean. JMX is a very open technology,
      * without any prescribed way of declaring mBeans so this function tries to do a best-effort
@@ -541,25 +1071,40 @@ class JmxScraper {
                     attrType,
                     attrDescription,
                     value);
+            if (recordedValues != null) {
+                recordedValues.add(new MBeanRefreshCache.RecordedValue(
+                        domain,
+                        beanProperties,
+                        attributesAsLabelsWithValues,
+                        attrKeys,
+                        attrName,
+                        attrType,
+                        attrDescription,
+                        value));
+            }
         } else if (value instanceof CompositeData) {
             LOGGER.trace("%s%s%s scrape: compositedata", domain, beanProperties, attrName);
             CompositeData composite = (CompositeData) value;
             CompositeType type = composite.getCompositeType();
-            attrKeys = new ArrayList<>(attrKeys);
+            FlatteningPlan plan = FlatteningPlan.of(type);
+            // Receivers don't keep attrKeys, so it is extended for the items and restored afterwards
             attrKeys.add(attrName);
-            for (String key : type.keySet()) {
-                String typeName = type.getType(key).getTypeName();
-                Object compositeValue = composite.get(key);
-                processBeanValue(
-                        objectName,
-                        domain,
-                        beanProperties,
-                        attributesAsLabelsWithValues,
-                        attrKeys,
-                        key,
-                        typeName,
-                        type.getDescription(),
-                        compositeValue);
+            try {
+                for (int i = 0; i < plan.itemNames.length; i++) {
+                    String key = plan.itemNames[i];
+                    processBeanValue(
+                            objectName,
+                            domain,
+                            beanProperties,
+                            attributesAsLabelsWithValues,
+                            attrKeys,
+                            key,
+                            plan.itemTypeNames[i],
+                            type.getDescription(),
+                            composite.get(key));
+                }
+            } finally {
+                attrKeys.remove(attrKeys.size() - 1);
             }
         } else if (value instanceof TabularData) {
             // I don't pretend to have a good understanding of TabularData.
@@ -570,19 +1115,22 @@ class JmxScraper {
             LOGGER.trace("%s%s%s scrape: tabulardata", domain, beanProperties, attrName);
             TabularData tds = (TabularData) value;
             TabularType tt = tds.getTabularType();
+            FlatteningPlan plan = FlatteningPlan.of(tt);
 
-            List<String> rowKeys = tt.getIndexNames();
+            List<String> rowKeys = plan.indexNames;
+            String description = tt.getRowType().getDescription();
 
-            CompositeType type = tt.getRowType();
-            Set<String> valueKeys = new TreeSet<>(type.keySet());
-            rowKeys.forEach(valueKeys::remove);
-
-            List<String> extendedAttrKeys = new ArrayList<>(attrKeys);
+            List<String> extendedAttrKeys = new ArrayList<>(attrKeys.size() + 1);
+            extendedAttrKeys.addAll(attrKeys);
             extendedAttrKeys.add(attrName);
+
+            // Receivers don't keep the bean properties, so the index labels of each row are added
+            // to a single map and removed again after the row
+            LinkedHashMap<String, String> l2s = new LinkedHashMap<>(beanProperties);
+            List<String> rowLabels = new ArrayList<>();
             for (Object compositeDataValue : tds.values()) {
                 if (compositeDataValue instanceof CompositeData) {
                     CompositeData composite = (CompositeData) compositeDataValue;
-                    LinkedHashMap<String, String> l2s = new LinkedHashMap<>(beanProperties);
                     for (String idx : rowKeys) {
                         Object obj = composite.get(idx);
                         if (obj != null) {
@@ -606,39 +1154,46 @@ class JmxScraper {
                                 CompositeData compositeKey = (CompositeData) obj;
                                 CompositeType ct = compositeKey.getCompositeType();
                                 for (final String compositeKeyIdx : ct.keySet()) {
-                                    l2s.put(
-                                            new StringBuilder(idx.length() + 1 + compositeKeyIdx.length())
-                                                    .append(idx)
-                                                    .append('_')
-                                                    .append(compositeKeyIdx)
-                                                    .toString(),
+                                    String label = new StringBuilder(idx.length() + 1 + compositeKeyIdx.length())
+                                            .append(idx)
+                                            .append('_')
+                                            .append(compositeKeyIdx)
+                                            .toString();
+                                    putRowLabel(
+                                            l2s,
+                                            rowLabels,
+                                            label,
                                             compositeKey.get(compositeKeyIdx).toString());
                                 }
                             } else {
                                 // TabularData key is an Open type key
-                                l2s.put(idx, obj.toString());
+                                putRowLabel(l2s, rowLabels, idx, obj.toString());
                             }
                         }
                     }
-                    for (String valueIdx : valueKeys) {
-                        List<String> attrNames = extendedAttrKeys;
-                        String typeName = type.getType(valueIdx).getTypeName();
-                        String name = valueIdx;
-                        if (valueIdx.equalsIgnoreCase("value")) {
-                            // Skip appending 'value' to the name
-                            attrNames = attrKeys;
-                            name = attrName;
+                    try {
+                        for (int i = 0; i < plan.itemNames.length; i++) {
+                            String valueIdx = plan.itemNames[i];
+                            List<String> attrNames = extendedAttrKeys;
+                            String name = valueIdx;
+                            if (valueIdx.equalsIgnoreCase("value")) {
+                                // Skip appending 'value' to the name
+                                attrNames = attrKeys;
+                                name = attrName;
+                            }
+                            processBeanValue(
+                                    objectName,
+                                    domain,
+                                    l2s,
+                                    attributesAsLabelsWithValues,
+                                    attrNames,
+                                    name,
+                                    plan.itemTypeNames[i],
+                                    description,
+                                    composite.get(valueIdx));
                         }
-                        processBeanValue(
-                                objectName,
-                                domain,
-                                l2s,
-                                attributesAsLabelsWithValues,
-                                attrNames,
-                                name,
-                                typeName,
-                                type.getDescription(),
-                                composite.get(valueIdx));
+                    } finally {
+                        removeRowLabels(l2s, rowLabels, beanProperties);
                     }
                 } else {
                     LOGGER.trace("%s scrape: not a correct tabulardata format", domain);
@@ -675,10 +1230,54 @@ class JmxScraper {
                     value.toString());
         } else {
             objectNameAttributeFilter.add(objectName, attrName);
+            if (mBeanInfoCache != null) {
+                // The cached attributes were filtered before the attribute was excluded
+                mBeanInfoCache.remove(objectName);
+            }
             LOGGER.trace("%s%s scrape: %s not exported", domain, beanProperties, attrType);
         }
     }
 
+    /**
+     * The MBeanInfo derived attribute metadata and the attribute values of a single MBean, as
+     * fetched from the MBean server.
+     */
+    private static class FetchedBean {
+
+        final ObjectName mBeanName;
+        final Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo;
+        /** The attribute values, null if there is nothing to process */
+        final AttributeList attributes;
+
+        final boolean oneByOne;
+        final long fetchNanos;
+        /** The cached values to pass to the receiver instead, null if the mBean was read */
+        final List<MBeanRefreshCache.RecordedValue> recordedValues;
+
+        FetchedBean(
+                ObjectName mBeanName,
+                Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo,
+                AttributeList attributes,
+                boolean oneByOne,
+                long fetchNanos) {
+            this.mBeanName = mBeanName;
+            this.name2MBeanAttributeInfo = name2MBeanAttributeInfo;
+            this.attributes = attributes;
+            this.oneByOne = oneByOne;
+            this.fetchNanos = fetchNanos;
+            this.recordedValues = null;
+        }
+
+        FetchedBean(ObjectName mBeanName, List<MBeanRefreshCache.RecordedValue> recordedValues, long fetchNanos) {
+            this.mBeanName = mBeanName;
+            this.name2MBeanAttributeInfo = null;
+            this.attributes = null;
+            this.oneByOne = false;
+            this.fetchNanos = fetchNanos;
+            this.recordedValues = recordedValues;
+        }
+    }
+
     private static class StdoutWriter implements MBeanReceiver {
         public void recordBean(
                 String domain,
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.jmx.logger.Logger;
+import io.prometheus.jmx.logger.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Finds the local connector address of a JVM running on the same host with the Attach API, so
+ * the standalone exporter can scrape it without the target exposing a remote JMX port.
+ *
+ * <p>The JVM is identified either by its pid or by its main class. The address is reused while
+ * the JVM keeps the same pid. When identified by main class, the pid is looked up on every
+ * connect, so a restarted JVM is found again.
+ *
+ * <p>The Attach API is accessed with reflection, as on Java 8 it is only available in the
+ * tools.jar of a JDK.
+ */
+class LocalAttach {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalAttach.class);
+
+    private static final String VIRTUAL_MACHINE_CLASS = "com.sun.tools.attach.VirtualMachine";
+
+    private final Integer pid;
+    private final String mainClass;
+
+    private String attachedPid;
+    private String localConnectorAddress;
+
+    private LocalAttach(Integer pid, String mainClass) {
+        this.pid = pid;
+        this.mainClass = mainClass;
+    }
+
+    /**
+     * Method to create a LocalAttach for a pid
+     *
+     * @param pid the pid of the JVM
+     * @return a LocalAttach
+     */
+    static LocalAttach forPid(int pid) {
+        return new LocalAttach(pid, null);
+    }
+
+    /**
+     * Method to create a LocalAttach for a main class
+     *
+     * @param mainClass the main class of the JVM, or the jar it was started with
+     * @return a LocalAttach
+     */
+    static LocalAttach forMainClass(String mainClass) {
+        return new LocalAttach(null, mainClass);
+    }
+
+    /**
+     * Returns the local connector address of the JVM, starting its local management agent if
+     * needed.
+     *
+     * @return the JMX service URL of the local connector
+     * @throws IOException if the JVM can't be found or attached to
+     */
+    synchronized String getLocalConnectorAddress() throws IOException {
+        Class<?> virtualMachineClass = loadVirtualMachineClass();
+        String targetPid = pid != null ? String.valueOf(pid) : findPid(virtualMachineClass);
+
+        if (localConnectorAddress == null || !targetPid.equals(attachedPid)) {
+            LOGGER.trace("attaching to JVM with pid %s", targetPid);
+            localConnectorAddress = startLocalManagementAgent(virtualMachineClass, targetPid);
+            attachedPid = targetPid;
+        }
+
+        return localConnectorAddress;
+    }
+
+    /** Forgets the local connector address, the JVM is attached to again on the next connect. */
+    synchronized void reset() {
+        attachedPid = null;
+        localConnectorAddress = null;
+    }
+
+    private String findPid(Class<?> virtualMachineClass) throws IOException {
+        try {
+            List<?> descriptors =
+                    (List<?>) virtualMachineClass.getMethod("list").invoke(null);
+            for (Object descriptor : descriptors) {
+                Class<?> descriptorClass = descriptor.getClass();
+                String displayName =
+                        (String) descriptorClass.getMethod("displayName").invoke(descriptor);
+                // The display name is the main class or jar, followed by the arguments
+                String name = displayName.split(" ", 2)[0];
+                if (name.equals(mainClass)) {
+                    return (String) descriptorClass.getMethod("id").invoke(descriptor);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to list JVMs: " + cause(e), cause(e));
+        }
+
+        throw new IOException("No JVM running main class " + mainClass + " found");
+    }
+
+    private static String startLocalManagementAgent(Class<?> virtualMachineClass, String targetPid) throws IOException {
+        Object virtualMachine;
+        try {
+            virtualMachine =
+                    virtualMachineClass.getMethod("attach", String.class).invoke(null, targetPid);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to attach to JVM with pid " + targetPid + ": " + cause(e), cause(e));
+        }
+
+        try {
+            Method startLocalManagementAgent = virtualMachineClass.getMethod("startLocalManagementAgent");
+            return (String) startLocalManagementAgent.invoke(virtualMachine);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(
+                    "Unable to start the local management agent of JVM with pid " + targetPid + ": " + cause(e),
+                    cause(e));
+        } finally {
+            try {
+                virtualMachineClass.getMethod("detach").invoke(virtualMachine);
+            } catch (ReflectiveOperationException e) {
+                // INFO: Ignore, the JVM may already be gone
+            }
+        }
+    }
+
+    private static Class<?> loadVirtualMachineClass() throws IOException {
+        try {
+            return Class.forName(VIRTUAL_MACHINE_CLASS);
+        } catch (ClassNotFoundException e) {
+            // Java 8 JDK, the Attach API is in lib/tools.jar next to the jre directory
+            File toolsJar = new File(
+                    System.getProperty("java.home"), ".." + File.separator + "lib" + File.separator + "tools.jar");
+            if (toolsJar.isFile()) {
+                try {
+                    URLClassLoader classLoader = new URLClassLoader(
+                            new URL[] {toolsJar.toURI().toURL()}, LocalAttach.class.getClassLoader());
+                    return Class.forName(VIRTUAL_MACHINE_CLASS, true, classLoader);
+                } catch (ClassNotFoundException ex) {
+                    // INFO: Fall through, report the Attach API as unavailable
+                }
+            }
+            throw new IOException("The Attach API is not available, a JDK is required to attach to a local JVM");
+        }
+    }
+
+    private static Throwable cause(ReflectiveOperationException e) {
+        return e instanceof InvocationTargetException ? e.getCause() : e;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LocalAttach that = (LocalAttach) o;
+        return Objects.equals(pid, that.pid) && Objects.equals(mainClass, that.mainClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pid, mainClass);
+    }
+
+    @Override
+    public String toString() {
+        return pid != null ? "pid " + pid : "main class " + mainClass;
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * The values a scrape passed to the receiver, per MBean, so the rules can be run on them again
+ * without a JMX target.
+ *
+ * <p>A dump is written by {@link JmxCollector#dump(OutputStream)} as a gzipped stream in which each
+ * distinct string is written once. Numbers keep their type, except for uncommon {@link Number}
+ * types, which are read back as a {@link BigDecimal} or, if not decimal, a {@link Double}.
+ */
+public final class MBeanDump {
+
+    private static final int MAGIC = 0x4a4d5844; // JMXD
+    private static final int VERSION = 1;
+
+    private static final int END = 0;
+    private static final int VALUE = 1;
+    private static final int BEAN = 2;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int BOOLEAN = 2;
+    private static final int BYTE = 3;
+    private static final int SHORT = 4;
+    private static final int INTEGER = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+    private static final int BIG_INTEGER = 9;
+    private static final int BIG_DECIMAL = 10;
+
+    private final List<Bean> beans;
+    private final int valueCount;
+
+    /**
+     * The values of one MBean, in the order they were received
+     */
+    static class Bean {
+
+        final ObjectName objectName;
+        final List<MBeanRefreshCache.RecordedValue> values;
+
+        Bean(ObjectName objectName, List<MBeanRefreshCache.RecordedValue> values) {
+            this.objectName = objectName;
+            this.values = values;
+        }
+    }
+
+    private MBeanDump(List<Bean> beans) {
+        this.beans = beans;
+        int valueCount = 0;
+        for (Bean bean : beans) {
+            valueCount += bean.values.size();
+        }
+        this.valueCount = valueCount;
+    }
+
+    /**
+     * Method to read a dump into memory
+     *
+     * @param inputStream the dump, not closed
+     * @return the dump
+     * @throws IOException if the dump can't be read or is not a dump
+     */
+    public static MBeanDump read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an MBean dump");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported MBean dump version [%d]", version));
+        }
+
+        List<String> strings = new ArrayList<>();
+        List<Bean> beans = new ArrayList<>();
+        List<MBeanRefreshCache.RecordedValue> values = new ArrayList<>();
+        try {
+            for (int record = in.readUnsignedByte(); record != END; record = in.readUnsignedByte()) {
+                if (record == VALUE) {
+                    values.add(readValue(in, strings));
+                } else if (record == BEAN) {
+                    beans.add(new Bean(new ObjectName(readString(in, strings)), values));
+                    values = new ArrayList<>();
+                } else {
+                    throw new IOException(String.format("Invalid MBean dump record [%d]", record));
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated MBean dump", e);
+        } catch (MalformedObjectNameException e) {
+            throw new IOException("Invalid ObjectName in MBean dump", e);
+        }
+        return new MBeanDump(beans);
+    }
+
+    /**
+     * Method to get the number of MBeans in the dump
+     *
+     * @return the number of MBeans
+     */
+    public int getBeanCount() {
+        return beans.size();
+    }
+
+    /**
+     * Method to get the number of values in the dump
+     *
+     * @return the number of values
+     */
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Method to pass the values to a receiver, as a scrape would
+     *
+     * @param receiver the receiver
+     */
+    void replay(JmxScraper.MBeanReceiver receiver) {
+        for (Bean bean : beans) {
+            for (MBeanRefreshCache.RecordedValue value : bean.values) {
+                receiver.recordBean(
+                        value.domain,
+                        value.beanProperties,
+                        value.attributesAsLabelsWithValues,
+                        value.attrKeys,
+                        value.attrName,
+                        value.attrType,
+                        value.attrDescription,
+                        value.value);
+            }
+            receiver.scrapedBean(bean.objectName);
+        }
+    }
+
+    private static MBeanRefreshCache.RecordedValue readValue(DataInputStream in, List<String> strings)
+            throws IOException {
+        String domain = readString(in, strings);
+        LinkedHashMap<String, String> beanProperties = new LinkedHashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            beanProperties.put(readString(in, strings), readString(in, strings));
+        }
+        Map<String, String> attributesAsLabelsWithValues = null;
+        int attributesAsLabels = in.readInt();
+        if (attributesAsLabels == 0) {
+            attributesAsLabelsWithValues = Collections.emptyMap();
+        } else if (attributesAsLabels > 0) {
+            attributesAsLabelsWithValues = new LinkedHashMap<>();
+            for (int i = attributesAsLabels; i > 0; i--) {
+                attributesAsLabelsWithValues.put(readString(in, strings), readString(in, strings));
+            }
+        }
+        List<String> attrKeys = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            attrKeys.add(readString(in, strings));
+        }
+        String attrName = readString(in, strings);
+        String attrType = readString(in, strings);
+        String attrDescription = readString(in, strings);
+        Object value;
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case NULL:
+                value = null;
+                break;
+            case STRING:
+                value = readString(in, strings);
+                break;
+            case BOOLEAN:
+                value = in.readBoolean();
+                break;
+            case BYTE:
+                value = in.readByte();
+                break;
+            case SHORT:
+                value = in.readShort();
+                break;
+            case INTEGER:
+                value = in.readInt();
+                break;
+            case LONG:
+                value = in.readLong();
+                break;
+            case FLOAT:
+                value = in.readFloat();
+                break;
+            case DOUBLE:
+                value = in.readDouble();
+                break;
+            case BIG_INTEGER:
+                value = new BigInteger(readString(in, strings));
+                break;
+            case BIG_DECIMAL:
+                value = new BigDecimal(readString(in, strings));
+                break;
+            default:
+                throw new IOException(String.format("Invalid MBean dump value type [%d]", type));
+        }
+        return new MBeanRefreshCache.RecordedValue(
+                domain,
+                beanProperties,
+                attributesAsLabelsWithValues,
+                attrKeys,
+                attrName,
+                attrType,
+                attrDescription,
+                value);
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        // 0 is null, 1 a new string, else the index of a previous string plus 2
+        int index = in.readInt();
+        if (index == 0) {
+            return null;
+        }
+        if (index == 1) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+        if (index - 2 >= strings.size()) {
+            throw new IOException(String.format("Invalid MBean dump string reference [%d]", index));
+        }
+        return strings.get(index - 2);
+    }
+
+    /**
+     * Writes the values passed to a receiver to a dump
+     */
+    static class Writer {
+
+        private final GZIPOutputStream gzipOutputStream;
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private IOException exception;
+
+        /**
+         * Constructor
+         *
+         * @param outputStream the output stream to write the dump to, not closed
+         * @throws IOException if the dump header can't be written
+         */
+        Writer(OutputStream outputStream) throws IOException {
+            this.gzipOutputStream = new GZIPOutputStream(outputStream);
+            this.out = new DataOutputStream(new BufferedOutputStream(gzipOutputStream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        /**
+         * Method to get a receiver writing the values to the dump before passing them on
+         *
+         * @param receiver the receiver to pass the values on to
+         * @return the receiver
+         */
+        JmxScraper.MBeanReceiver tee(JmxScraper.MBeanReceiver receiver) {
+            return new JmxScraper.MBeanReceiver() {
+
+                @Override
+                public void recordBean(
+                        String domain,
+                        LinkedHashMap<String, String> beanProperties,
+                        Map<String, String> attributesAsLabelsWithValues,
+                        List<String> attrKeys,
+                        String attrName,
+                        String attrType,
+                        String attrDescription,
+                        Object value) {
+                    if (exception == null) {
+                        try {
+                            writeValue(
+                                    domain,
+                                    beanProperties,
+                                    attributesAsLabelsWithValues,
+                                    attrKeys,
+                                    attrName,
+                                    attrType,
+                                    attrDescription,
+                                    value);
+                        } catch (IOException e) {
+                            exception = e;
+                        }
+                    }
+                    receiver.recordBean(
+                            domain,
+                            beanProperties,
+                            attributesAsLabelsWithValues,
+                            attrKeys,
+                            attrName,
+                            attrType,
+                            attrDescription,
+                            value);
+                }
+
+                @Override
+                public void scrapedBean(ObjectName mBeanName) {
+                    if (exception == null) {
+                        try {
+                            out.writeByte(BEAN);
+                            writeString(mBeanName.toString());
+                        } catch (IOException e) {
+                            exception = e;
+                        }
+                    }
+                    receiver.scrapedBean(mBeanName);
+                }
+            };
+        }
+
+        /**
+         * Method to mark the dump as failed, as it misses values
+         *
+         * @param message the reason
+         */
+        void fail(String message) {
+            if (exception == null) {
+                exception = new IOException(message);
+            }
+        }
+
+        /**
+         * Method to end the dump
+         *
+         * @throws IOException if the dump failed
+         */
+        void finish() throws IOException {
+            if (exception != null) {
+                throw exception;
+            }
+            out.writeByte(END);
+            out.flush();
+            gzipOutputStream.finish();
+        }
+
+        private void writeValue(
+                String domain,
+                Map<String, String> beanProperties,
+                Map<String, String> attributesAsLabelsWithValues,
+                List<String> attrKeys,
+                String attrName,
+                String attrType,
+                String attrDescription,
+                Object value)
+                throws IOException {
+            out.writeByte(VALUE);
+            writeString(domain);
+            writeMap(beanProperties);
+            if (attributesAsLabelsWithValues == null) {
+                out.writeInt(-1);
+            } else {
+                writeMap(attributesAsLabelsWithValues);
+            }
+            out.writeInt(attrKeys.size());
+            for (String attrKey : attrKeys) {
+                writeString(attrKey);
+            }
+            writeString(attrName);
+            writeString(attrType);
+            writeString(attrDescription);
+
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Byte) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Short) {
+                out.writeByte(SHORT);
+                out.writeShort((Short) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof BigInteger) {
+                out.writeByte(BIG_INTEGER);
+                writeString(value.toString());
+            } else if (value instanceof Number) {
+                Number number = (Number) value;
+                try {
+                    String decimal = new BigDecimal(number.toString()).toString();
+                    out.writeByte(BIG_DECIMAL);
+                    writeString(decimal);
+                } catch (NumberFormatException e) {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(number.doubleValue());
+                }
+            } else {
+                out.writeByte(STRING);
+                writeString(value.toString());
+            }
+        }
+
+        private void writeMap(Map<String, String> map) throws IOException {
+            out.writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            if (string == null) {
+                out.writeInt(0);
+                return;
+            }
+            Integer index = strings.get(string);
+            if (index != null) {
+                out.writeInt(index + 2);
+                return;
+            }
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(1);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
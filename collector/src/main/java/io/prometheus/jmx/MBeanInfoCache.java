@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/**
+ * This object stores, per mBean objectName, the readable attributes to scrape as derived from the
+ * MBeanInfo, so getMBeanInfo is not called for every mBean on every scrape.
+ *
+ * <p>MBeanInfo is immutable for the lifetime of a registration for almost all mBeans. mBeans that
+ * declare {@code immutableInfo=false} in their descriptor are never cached. Entries are removed
+ * when the MBean inventory reports the mBean as unregistered, and all entries are removed when the
+ * inventory is rebuilt, as an mBean may have been replaced under the same name in the meantime.
+ */
+class MBeanInfoCache {
+
+    /** The attributes to scrape of a single mBean. */
+    static class Entry {
+
+        /** The attributes to scrape, by name, in MBeanInfo order. */
+        final Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo;
+
+        /** The names of the attributes to scrape, to pass to getAttributes. */
+        final String[] attributeNames;
+
+        Entry(Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo) {
+            this.name2MBeanAttributeInfo = Collections.unmodifiableMap(name2MBeanAttributeInfo);
+            this.attributeNames = name2MBeanAttributeInfo.keySet().toArray(new String[0]);
+        }
+    }
+
+    private final Map<ObjectName, Entry> entriesPerBean = new ConcurrentHashMap<>();
+
+    Map<ObjectName, Entry> getEntriesPerBean() {
+        return entriesPerBean;
+    }
+
+    public Entry get(ObjectName mbeanName) {
+        return entriesPerBean.get(mbeanName);
+    }
+
+    /**
+     * Creates the entry for an mBean, caching it unless the MBeanInfo is declared mutable.
+     *
+     * @param mbeanName the mBean objectName
+     * @param mBeanInfo the MBeanInfo of the mBean
+     * @param name2MBeanAttributeInfo the attributes to scrape, by name
+     * @return the entry
+     */
+    public Entry put(
+            ObjectName mbeanName, MBeanInfo mBeanInfo, Map<String, MBeanAttributeInfo> name2MBeanAttributeInfo) {
+        Entry entry = new Entry(name2MBeanAttributeInfo);
+        if (isImmutable(mBeanInfo)) {
+            entriesPerBean.put(mbeanName, entry);
+        }
+        return entry;
+    }
+
+    public void remove(ObjectName mbeanName) {
+        entriesPerBean.remove(mbeanName);
+    }
+
+    public void clear() {
+        entriesPerBean.clear();
+    }
+
+    public void onlyKeepMBeans(Set<ObjectName> latestBeans) {
+        List<ObjectName> toRemove = new ArrayList<>();
+        for (ObjectName prevName : entriesPerBean.keySet()) {
+            if (!latestBeans.contains(prevName)) {
+                toRemove.add(prevName);
+            }
+        }
+        for (ObjectName name : toRemove) {
+            entriesPerBean.remove(name);
+        }
+    }
+
+    private static boolean isImmutable(MBeanInfo mBeanInfo) {
+        Descriptor descriptor = mBeanInfo.getDescriptor();
+        if (descriptor == null) {
+            return true;
+        }
+        Object immutableInfo = descriptor.getFieldValue("immutableInfo");
+        return immutableInfo == null || !"false".equalsIgnoreCase(immutableInfo.toString());
+    }
+}
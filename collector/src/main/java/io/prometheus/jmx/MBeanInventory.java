@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.jmx.logger.Logger;
+import io.prometheus.jmx.logger.LoggerFactory;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+/**
+ * Keeps the set of MBeans to scrape up to date using the registration and unregistration
+ * notifications of the MBeanServerDelegate, so a scrape does not have to query the MBean server
+ * for every include and exclude pattern.
+ *
+ * <p>The inventory is rebuilt with a full query when it is first used, when the connection or the
+ * query changes, when the connector reports lost notifications, and periodically as a safety net.
+ */
+class MBeanInventory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MBeanInventory.class);
+
+    /** The MBean names to scrape, as returned by {@link #update}. */
+    static class Update {
+
+        /** The MBean names to scrape. */
+        final Set<ObjectName> mBeanNames;
+
+        /** Whether the names were rebuilt with a full query. */
+        final boolean resynced;
+
+        /**
+         * The MBean names unregistered since the previous update, some of which may have been
+         * registered again. Empty if resynced.
+         */
+        final Set<ObjectName> unregistered;
+
+        Update(Set<ObjectName> mBeanNames, boolean resynced, Set<ObjectName> unregistered) {
+            this.mBeanNames = mBeanNames;
+            this.resynced = resynced;
+            this.unregistered = unregistered;
+        }
+    }
+
+    private final Queue<MBeanServerNotification> pendingNotifications = new ConcurrentLinkedQueue<>();
+    private final NotificationListener mBeanServerListener = this::handleMBeanServerNotification;
+    private final NotificationListener connectionListener = this::handleConnectionNotification;
+
+    private MBeanServerConnection mBeanServerConnection;
+    private JMXConnector jmxConnector;
+    private Object queryKey;
+    private long lastResyncNanos;
+    private volatile boolean resyncRequired;
+    private boolean attachFailureLogged;
+    private Set<ObjectName> mBeanNames = Collections.emptySet();
+
+    /**
+     * Returns the MBean names to scrape, applying the notifications received since the previous
+     * update, or running a full query if required.
+     *
+     * @param beanConn the connection to the MBean server
+     * @param jmxc the remote connector, or null when scraping the platform MBean server
+     * @param queryKey identifies the query, a different key forces a full query
+     * @param query runs a full query for the MBean names to scrape
+     * @param filter whether a newly registered MBean should be scraped
+     * @param resyncSeconds interval between full queries
+     * @return the MBean names to scrape
+     * @throws Exception if the full query fails
+     */
+    synchronized Update update(
+            MBeanServerConnection beanConn,
+            JMXConnector jmxc,
+            Object queryKey,
+            Callable<Set<ObjectName>> query,
+            Predicate<ObjectName> filter,
+            int resyncSeconds)
+            throws Exception {
+        if (resyncRequired
+                || beanConn != mBeanServerConnection
+                || jmxc != jmxConnector
+                || !queryKey.equals(this.queryKey)
+                || System.nanoTime() - lastResyncNanos >= TimeUnit.SECONDS.toNanos(resyncSeconds)) {
+            resync(beanConn, jmxc, queryKey, query, filter);
+            return new Update(new HashSet<>(mBeanNames), true, Collections.emptySet());
+        }
+
+        Set<ObjectName> unregistered = new HashSet<>();
+        applyPendingNotifications(filter, unregistered);
+        return new Update(new HashSet<>(mBeanNames), false, unregistered);
+    }
+
+    /** Stops listening for notifications and forgets the MBean names. */
+    synchronized void close() {
+        detach();
+        mBeanNames = Collections.emptySet();
+    }
+
+    private void resync(
+            MBeanServerConnection beanConn,
+            JMXConnector jmxc,
+            Object queryKey,
+            Callable<Set<ObjectName>> query,
+            Predicate<ObjectName> filter)
+            throws Exception {
+        LOGGER.trace("resyncing MBean inventory");
+
+        detach();
+        resyncRequired = false;
+        pendingNotifications.clear();
+
+        // Listen before querying, notifications received during the query are applied afterwards
+        boolean attached = attach(beanConn, jmxc);
+
+        Set<ObjectName> names;
+        try {
+            names = query.call();
+        } catch (Exception e) {
+            detach();
+            throw e;
+        }
+
+        mBeanNames = new HashSet<>(names);
+        applyPendingNotifications(filter, new HashSet<>());
+
+        if (attached) {
+            this.queryKey = queryKey;
+            this.lastResyncNanos = System.nanoTime();
+        } else {
+            // Without notifications the inventory can't be kept up to date, query on every scrape
+            detach();
+        }
+    }
+
+    private boolean attach(MBeanServerConnection beanConn, JMXConnector jmxc) {
+        try {
+            MBeanServerNotificationFilter notificationFilter = new MBeanServerNotificationFilter();
+            notificationFilter.enableAllObjectNames();
+            beanConn.addNotificationListener(
+                    MBeanServerDelegate.DELEGATE_NAME, mBeanServerListener, notificationFilter, null);
+            mBeanServerConnection = beanConn;
+        } catch (Exception e) {
+            if (!attachFailureLogged) {
+                LOGGER.warn("Unable to listen for MBean registrations, querying MBeans on every scrape: %s", e);
+                attachFailureLogged = true;
+            }
+            return false;
+        }
+
+        if (jmxc != null) {
+            jmxc.addConnectionNotificationListener(connectionListener, null, null);
+            jmxConnector = jmxc;
+        }
+
+        return true;
+    }
+
+    private void detach() {
+        if (mBeanServerConnection != null) {
+            try {
+                mBeanServerConnection.removeNotificationListener(
+                        MBeanServerDelegate.DELEGATE_NAME, mBeanServerListener);
+            } catch (Exception e) {
+                // INFO: Ignore, the connection may already be closed
+            }
+            mBeanServerConnection = null;
+        }
+
+        if (jmxConnector != null) {
+            try {
+                jmxConnector.removeConnectionNotificationListener(connectionListener);
+            } catch (Exception e) {
+                // INFO: Ignore, the connection may already be closed
+            }
+            jmxConnector = null;
+        }
+
+        queryKey = null;
+    }
+
+    private void applyPendingNotifications(Predicate<ObjectName> filter, Set<ObjectName> unregistered) {
+        MBeanServerNotification notification;
+        while ((notification = pendingNotifications.poll()) != null) {
+            ObjectName objectName = notification.getMBeanName();
+            if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+                if (filter.test(objectName)) {
+                    mBeanNames.add(objectName);
+                }
+            } else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+                if (mBeanNames.remove(objectName)) {
+                    unregistered.add(objectName);
+                }
+            }
+        }
+    }
+
+    private void handleMBeanServerNotification(Notification notification, Object handback) {
+        if (notification instanceof MBeanServerNotification) {
+            pendingNotifications.add((MBeanServerNotification) notification);
+        }
+    }
+
+    private void handleConnectionNotification(Notification notification, Object handback) {
+        if (!JMXConnectionNotification.OPENED.equals(notification.getType())) {
+            // Lost notifications, or a failed or closed connection
+            resyncRequired = true;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+
+/**
+ * This object stores, per mBean objectName, the values passed to the receiver for mBeans that
+ * match a pattern with its own refresh interval. Between refreshes the stored values are passed to
+ * the receiver again instead of reading the mBean.
+ */
+class MBeanRefreshCache {
+
+    /** The arguments of a single {@link JmxScraper.MBeanReceiver#recordBean} call. */
+    static class RecordedValue {
+
+        final String domain;
+        final LinkedHashMap<String, String> beanProperties;
+        final Map<String, String> attributesAsLabelsWithValues;
+        final List<String> attrKeys;
+        final String attrName;
+        final String attrType;
+        final String attrDescription;
+        final Object value;
+
+        RecordedValue(
+                String domain,
+                LinkedHashMap<String, String> beanProperties,
+                Map<String, String> attributesAsLabelsWithValues,
+                List<String> attrKeys,
+                String attrName,
+                String attrType,
+                String attrDescription,
+                Object value) {
+            this.domain = domain;
+            // Copied, as the scraper reuses them for other values
+            this.beanProperties = new LinkedHashMap<>(beanProperties);
+            this.attributesAsLabelsWithValues = attributesAsLabelsWithValues;
+            this.attrKeys = new ArrayList<>(attrKeys);
+            this.attrName = attrName;
+            this.attrType = attrType;
+            this.attrDescription = attrDescription;
+            this.value = value;
+        }
+    }
+
+    static class Entry {
+
+        final long refreshedNanos;
+        final List<RecordedValue> recordedValues;
+
+        Entry(long refreshedNanos, List<RecordedValue> recordedValues) {
+            this.refreshedNanos = refreshedNanos;
+            this.recordedValues = Collections.unmodifiableList(recordedValues);
+        }
+    }
+
+    private final List<ObjectName> patterns = new ArrayList<>();
+    private final List<Long> refreshNanos = new ArrayList<>();
+    private final Map<ObjectName, Entry> entriesPerBean = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param refreshSecondsPerPattern the refresh interval per objectName pattern, the first
+     *     matching pattern applies
+     */
+    MBeanRefreshCache(Map<ObjectName, Integer> refreshSecondsPerPattern) {
+        for (Map.Entry<ObjectName, Integer> entry : refreshSecondsPerPattern.entrySet()) {
+            patterns.add(entry.getKey());
+            refreshNanos.add(TimeUnit.SECONDS.toNanos(entry.getValue()));
+        }
+    }
+
+    Map<ObjectName, Entry> getEntriesPerBean() {
+        return entriesPerBean;
+    }
+
+    /**
+     * Returns whether an mBean has its own refresh interval, in which case its values should be
+     * recorded and put in this cache.
+     *
+     * @param mbeanName the mBean objectName
+     * @return true if the values of the mBean should be cached, else false
+     */
+    public boolean isCached(ObjectName mbeanName) {
+        return getRefreshNanos(mbeanName) > 0;
+    }
+
+    /**
+     * Returns the values recorded for an mBean, unless they are due for a refresh.
+     *
+     * @param mbeanName the mBean objectName
+     * @return the recorded values, or null if the mBean should be read
+     */
+    public List<RecordedValue> get(ObjectName mbeanName) {
+        Entry entry = entriesPerBean.get(mbeanName);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.refreshedNanos >= getRefreshNanos(mbeanName)) {
+            entriesPerBean.remove(mbeanName);
+            return null;
+        }
+        return entry.recordedValues;
+    }
+
+    public void put(ObjectName mbeanName, List<RecordedValue> recordedValues) {
+        entriesPerBean.put(mbeanName, new Entry(System.nanoTime(), recordedValues));
+    }
+
+    public void remove(ObjectName mbeanName) {
+        entriesPerBean.remove(mbeanName);
+    }
+
+    public void onlyKeepMBeans(Set<ObjectName> latestBeans) {
+        entriesPerBean.keySet().retainAll(latestBeans);
+    }
+
+    private long getRefreshNanos(ObjectName mbeanName) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).apply(mbeanName)) {
+                return refreshNanos.get(i);
+            }
+        }
+        return 0;
+    }
+}
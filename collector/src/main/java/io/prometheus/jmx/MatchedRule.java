@@ -36,6 +36,9 @@ public class MatchedRule {
     final Double value;
     final double valueFactor;
 
+    // The index of the rule that produced this result, only used for rule statistics
+    final int ruleIndex;
+
     private static final MatchedRule _unmatched = new MatchedRule();
 
     /**
@@ -49,6 +52,7 @@ public class MatchedRule {
         this.labels = null;
         this.value = null;
         this.valueFactor = 1.0;
+        this.ruleIndex = -1;
     }
 
     /**
@@ -72,6 +76,32 @@ public class MatchedRule {
             final List<String> labelValues,
             final Double value,
             double valueFactor) {
+        this(name, matchName, type, help, labelNames, labelValues, value, valueFactor, -1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param name name
+     * @param matchName matchName
+     * @param type type
+     * @param help help
+     * @param labelNames labelNames
+     * @param labelValues labelValues
+     * @param value value
+     * @param valueFactor valueFactor
+     * @param ruleIndex the index of the rule that produced this result
+     */
+    MatchedRule(
+            final String name,
+            final String matchName,
+            final String type,
+            final String help,
+            final List<String> labelNames,
+            final List<String> labelValues,
+            final Double value,
+            double valueFactor,
+            int ruleIndex) {
         this.name = name == null ? null : PrometheusNaming.sanitizeMetricName(name);
         this.matchName = matchName;
         this.type = type;
@@ -79,6 +109,7 @@ public class MatchedRule {
         this.labels = Labels.of(labelNames, labelValues);
         this.value = value;
         this.valueFactor = valueFactor;
+        this.ruleIndex = ruleIndex;
     }
 
     /**
@@ -92,6 +123,7 @@ public class MatchedRule {
      * @param labels labels
      * @param value value
      * @param valueFactor valueFactor
+     * @param ruleIndex ruleIndex
      */
     private MatchedRule(
             final String name,
@@ -100,7 +132,8 @@ public class MatchedRule {
             final String help,
             final Labels labels,
             final Double value,
-            double valueFactor) {
+            double valueFactor,
+            int ruleIndex) {
         this.name = name;
         this.matchName = matchName;
         this.type = type;
@@ -108,6 +141,7 @@ public class MatchedRule {
         this.labels = labels;
         this.value = value;
         this.valueFactor = valueFactor;
+        this.ruleIndex = ruleIndex;
     }
 
     /**
@@ -117,7 +151,8 @@ public class MatchedRule {
      * @return a MatchedRule with a value
      */
     public MatchedRule withValue(double value) {
-        return new MatchedRule(this.name, this.matchName, this.type, this.help, this.labels, value, this.valueFactor);
+        return new MatchedRule(
+                this.name, this.matchName, this.type, this.help, this.labels, value, this.valueFactor, this.ruleIndex);
     }
 
     /**
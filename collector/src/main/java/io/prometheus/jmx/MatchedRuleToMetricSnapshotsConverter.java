@@ -25,10 +25,12 @@ import io.prometheus.metrics.model.snapshots.MetricSnapshot;
 import io.prometheus.metrics.model.snapshots.MetricSnapshots;
 import io.prometheus.metrics.model.snapshots.UnknownSnapshot;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -62,96 +64,121 @@ public class MatchedRuleToMetricSnapshotsConverter {
      * @return a MetricSnapshots
      */
     public static MetricSnapshots convert(List<MatchedRule> matchedRules) {
-        Map<String, List<MatchedRule>> rulesByPrometheusMetricName = new HashMap<>();
-
+        Builder builder = new Builder();
         for (MatchedRule matchedRule : matchedRules) {
-            List<MatchedRule> matchedRulesWithSameName =
-                    rulesByPrometheusMetricName.computeIfAbsent(matchedRule.name, name -> new ArrayList<>());
-            matchedRulesWithSameName.add(matchedRule);
+            LOGGER.trace("matchedRule %s", matchedRule);
+            builder.add(matchedRule, matchedRule.value);
         }
+        return builder.build();
+    }
 
-        if (LOGGER.isTraceEnabled()) {
-            rulesByPrometheusMetricName
-                    .values()
-                    .forEach(matchedRules1 ->
-                            matchedRules1.forEach(matchedRule -> LOGGER.trace("matchedRule %s", matchedRule)));
+    /**
+     * Collects samples grouped by metric name as they are matched, so no intermediate list of
+     * MatchedRules with values is needed. Not thread safe.
+     */
+    static class Builder {
+
+        private final Map<String, Family> families = new HashMap<>();
+
+        /**
+         * Method to add a sample
+         *
+         * @param matchedRule the matched rule, its value is ignored
+         * @param value the value of the sample
+         */
+        void add(MatchedRule matchedRule, double value) {
+            Family family = families.get(matchedRule.name);
+            if (family == null) {
+                family = new Family(matchedRule);
+                families.put(matchedRule.name, family);
+            }
+            family.add(matchedRule, value);
         }
 
-        MetricSnapshots.Builder result = MetricSnapshots.builder();
-        for (List<MatchedRule> rulesWithSameName : rulesByPrometheusMetricName.values()) {
-            result.metricSnapshot(convertRulesWithSameName(rulesWithSameName));
+        /**
+         * Method to build the MetricSnapshots of the samples added so far
+         *
+         * @return a MetricSnapshots
+         */
+        MetricSnapshots build() {
+            MetricSnapshots.Builder result = MetricSnapshots.builder();
+            for (Family family : families.values()) {
+                result.metricSnapshot(family.build());
+            }
+            return result.build();
         }
-        return result.build();
     }
 
-    private static MetricSnapshot convertRulesWithSameName(List<MatchedRule> rulesWithSameName) {
-        boolean labelsUnique = isLabelsUnique(rulesWithSameName);
-        MatchedRule firstRule = rulesWithSameName.get(0);
-        switch (getType(rulesWithSameName)) {
-            case "COUNTER":
-                CounterSnapshot.Builder counterBuilder =
-                        CounterSnapshot.builder().name(firstRule.name).help(firstRule.help);
-                for (MatchedRule rule : rulesWithSameName) {
-                    Labels labels = rule.labels;
-                    if (!labelsUnique) {
-                        labels = labels.merge(Labels.of(OBJECTNAME, getDomainName(rule.matchName)));
-                    }
-                    counterBuilder.dataPoint(CounterSnapshot.CounterDataPointSnapshot.builder()
-                            .labels(labels)
-                            .value(rule.value)
-                            .build());
-                }
-                return counterBuilder.build();
-            case "GAUGE":
-                GaugeSnapshot.Builder gaugeBuilder =
-                        GaugeSnapshot.builder().name(firstRule.name).help(firstRule.help);
-                for (MatchedRule rule : rulesWithSameName) {
-                    Labels labels = rule.labels;
-                    if (!labelsUnique) {
-                        labels = labels.merge(Labels.of(OBJECTNAME, getDomainName(rule.matchName)));
-                    }
-                    gaugeBuilder.dataPoint(GaugeSnapshot.GaugeDataPointSnapshot.builder()
-                            .labels(labels)
-                            .value(rule.value)
-                            .build());
-                }
-                return gaugeBuilder.build();
-            default:
-                UnknownSnapshot.Builder unknownBuilder =
-                        UnknownSnapshot.builder().name(firstRule.name).help(firstRule.help);
-                for (MatchedRule rule : rulesWithSameName) {
-                    Labels labels = rule.labels;
-                    if (!labelsUnique) {
-                        labels = labels.merge(Labels.of(OBJECTNAME, getDomainName(rule.matchName)));
-                    }
-                    unknownBuilder.dataPoint(UnknownSnapshot.UnknownDataPointSnapshot.builder()
-                            .labels(labels)
-                            .value(rule.value)
-                            .build());
-                }
-                return unknownBuilder.build();
+    /** The samples of one metric name */
+    private static class Family {
+
+        private final MatchedRule firstRule;
+        private final List<MatchedRule> rules = new ArrayList<>();
+        private final Set<Labels> labelsSet = new HashSet<>();
+        private double[] values = new double[4];
+        private String type;
+        private boolean labelsUnique = true;
+
+        private Family(MatchedRule firstRule) {
+            this.firstRule = firstRule;
+            this.type = firstRule.type;
         }
-    }
 
-    /**
-     * If all rules have the same type, that type is returned. Otherwise, "UNKNOWN" is returned.
-     */
-    private static String getType(List<MatchedRule> rulesWithSameName) {
-        if (rulesWithSameName.stream().map(rule -> rule.type).distinct().count() == 1) {
-            return rulesWithSameName.get(0).type;
+        private void add(MatchedRule rule, double value) {
+            if (!Objects.equals(type, rule.type)) {
+                type = "UNKNOWN";
+            }
+            if (labelsUnique && !labelsSet.add(rule.labels)) {
+                labelsUnique = false;
+            }
+            if (rules.size() == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[rules.size()] = value;
+            rules.add(rule);
         }
-        return "UNKNOWN";
-    }
 
-    private static boolean isLabelsUnique(List<MatchedRule> rulesWithSameName) {
-        Set<Labels> labelsSet = new HashSet<>(rulesWithSameName.size());
-        for (MatchedRule matchedRule : rulesWithSameName) {
-            Labels labels = matchedRule.labels;
-            if (labelsSet.contains(labels)) {
-                return false;
+        private Labels getLabels(int index) {
+            MatchedRule rule = rules.get(index);
+            if (labelsUnique) {
+                return rule.labels;
+            }
+            return rule.labels.merge(Labels.of(OBJECTNAME, getDomainName(rule.matchName)));
+        }
+
+        private MetricSnapshot build() {
+            switch (type == null ? "UNKNOWN" : type) {
+                case "COUNTER":
+                    CounterSnapshot.Builder counterBuilder =
+                            CounterSnapshot.builder().name(firstRule.name).help(firstRule.help);
+                    for (int i = 0; i < rules.size(); i++) {
+                        counterBuilder.dataPoint(CounterSnapshot.CounterDataPointSnapshot.builder()
+                                .labels(getLabels(i))
+                                .value(values[i])
+                                .build());
+                    }
+                    return counterBuilder.build();
+                case "GAUGE":
+                    GaugeSnapshot.Builder gaugeBuilder =
+                            GaugeSnapshot.builder().name(firstRule.name).help(firstRule.help);
+                    for (int i = 0; i < rules.size(); i++) {
+                        gaugeBuilder.dataPoint(GaugeSnapshot.GaugeDataPointSnapshot.builder()
+                                .labels(getLabels(i))
+                                .value(values[i])
+                                .build());
+                    }
+                    return gaugeBuilder.build();
+                default:
+                    UnknownSnapshot.Builder unknownBuilder =
+                            UnknownSnapshot.builder().name(firstRule.name).help(firstRule.help);
+                    for (int i = 0; i < rules.size(); i++) {
+                        unknownBuilder.dataPoint(UnknownSnapshot.UnknownDataPointSnapshot.builder()
+                                .labels(getLabels(i))
+                                .value(values[i])
+                                .build());
+                    }
+                    return unknownBuilder.build();
             }
-            labelsSet.add(labels);
         }
-        return true;
     }
 }
@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.jmx.logger.Logger;
+import io.prometheus.jmx.logger.LoggerFactory;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.model.registry.MultiCollector;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.DataPointSnapshot;
+import io.prometheus.metrics.model.snapshots.GaugeSnapshot;
+import io.prometheus.metrics.model.snapshots.HistogramSnapshot;
+import io.prometheus.metrics.model.snapshots.InfoSnapshot;
+import io.prometheus.metrics.model.snapshots.Labels;
+import io.prometheus.metrics.model.snapshots.MetricMetadata;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import io.prometheus.metrics.model.snapshots.UnknownSnapshot;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+/**
+ * Scrapes several JMX targets from a single standalone exporter process.
+ *
+ * <p>Each entry of {@code targets} is combined with the top-level configuration, so targets share
+ * the rules and other settings the entry does not override. Every target is scraped by its own
+ * {@link JmxCollector}, with its own connection, and all its metrics, including the jmx_scrape_*
+ * metrics, get a {@code target} label and the labels of the entry.
+ *
+ * <p>At most {@code targetConcurrency} targets are scraped at the same time. With {@code
+ * scrapeIntervalSeconds}, targets are scraped in the background on a shared scheduler, each
+ * starting at a random offset so the scrapes are spread over the interval.
+ */
+@SuppressWarnings("unchecked")
+public class MultiTargetCollector implements MultiCollector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiTargetCollector.class);
+
+    private static final String TARGET_LABEL = "target";
+
+    // Only reported once for the process, not per target
+    private static final String CONFIG_RELOAD_PREFIX = "jmx_config_reload_";
+
+    // Must be configured per target
+    private static final List<String> CONNECTION_KEYS = Arrays.asList("jmxUrl", "hostPort", "pid", "attachMainClass");
+
+    // Apply to the process, not passed on to the targets
+    private static final List<String> PROCESS_KEYS =
+            Arrays.asList("targets", "targetConcurrency", "scrapeIntervalSeconds", "httpServer", "openTelemetry");
+
+    /** A single target, scraped by its own JmxCollector. */
+    private static class Target {
+
+        final String name;
+        final JmxCollector jmxCollector;
+        final PrometheusRegistry prometheusRegistry = new PrometheusRegistry();
+        final ThreadPoolExecutor scrapeExecutor;
+        volatile MetricSnapshots lastSnapshots;
+
+        Target(String name, Map<String, Object> yamlConfig, Labels targetLabels) throws MalformedObjectNameException {
+            this.name = name;
+            // Only keeps a thread while the target is being scraped
+            this.scrapeExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "jmx-scrape-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+            this.scrapeExecutor.allowCoreThreadTimeOut(true);
+            this.jmxCollector = new JmxCollector(yamlConfig, targetLabels, scrapeExecutor);
+            this.jmxCollector.register(prometheusRegistry);
+        }
+
+        MetricSnapshots scrape() {
+            return prometheusRegistry.scrape(metricName -> !metricName.startsWith(CONFIG_RELOAD_PREFIX));
+        }
+
+        void close() {
+            jmxCollector.close();
+            scrapeExecutor.shutdownNow();
+        }
+    }
+
+    /** The targets of a configuration, and the threads scraping them. */
+    private static class Config {
+
+        final List<Target> targets = new ArrayList<>();
+        int targetConcurrency = 1;
+        Integer scrapeIntervalSeconds;
+        long lastUpdate;
+        ScheduledThreadPoolExecutor targetScrapers;
+        boolean scheduled;
+
+        // The collects using this configuration, and whether it was replaced by a reload. Guarded
+        // by the MultiTargetCollector
+        int inUse;
+        boolean retired;
+
+        void close() {
+            if (targetScrapers != null) {
+                targetScrapers.shutdownNow();
+            }
+            for (Target target : targets) {
+                target.close();
+            }
+        }
+    }
+
+    private final File configFile;
+    private Config config;
+
+    private Counter configReloadSuccess;
+    private Counter configReloadFailure;
+
+    /**
+     * Constructor
+     *
+     * @param in the configuration file, must not be null
+     * @throws IOException if an I/O error occurs
+     * @throws MalformedObjectNameException if the ObjectName is invalid
+     */
+    public MultiTargetCollector(File in) throws IOException, MalformedObjectNameException {
+        Objects.requireNonNull(in, "configuration file must not be null");
+        configFile = in;
+        try (FileReader fr = new FileReader(in)) {
+            config = loadConfig(new Yaml(new SafeConstructor(new LoaderOptions())).load(fr));
+        }
+        config.lastUpdate = configFile.lastModified();
+    }
+
+    /**
+     * Constructor
+     *
+     * @param yamlConfig the YAML configuration string, must not be null
+     * @throws MalformedObjectNameException if the ObjectName is invalid
+     */
+    public MultiTargetCollector(String yamlConfig) throws MalformedObjectNameException {
+        Objects.requireNonNull(yamlConfig, "YAML configuration must not be null");
+        configFile = null;
+        config = loadConfig(new Yaml(new SafeConstructor(new LoaderOptions())).load(yamlConfig));
+    }
+
+    /**
+     * Registers this collector with the default Prometheus registry.
+     *
+     * @return this MultiTargetCollector instance for method chaining
+     */
+    public MultiTargetCollector register() {
+        return register(PrometheusRegistry.defaultRegistry);
+    }
+
+    /**
+     * Registers this collector with the specified Prometheus registry.
+     *
+     * @param prometheusRegistry the registry to register with, must not be null
+     * @return this MultiTargetCollector instance for method chaining
+     */
+    public MultiTargetCollector register(PrometheusRegistry prometheusRegistry) {
+        Objects.requireNonNull(prometheusRegistry, "Prometheus registry must not be null");
+        configReloadSuccess = Counter.builder()
+                .name("jmx_config_reload_success_total")
+                .help("Number of times configuration have successfully been reloaded.")
+                .register(prometheusRegistry);
+
+        configReloadFailure = Counter.builder()
+                .name("jmx_config_reload_failure_total")
+                .help("Number of times configuration have failed to be reloaded.")
+                .register(prometheusRegistry);
+
+        prometheusRegistry.register(this);
+
+        return this;
+    }
+
+    /**
+     * Returns if {@code ruleStatistics} is configured for any target.
+     *
+     * @return true if the rule statistics of a target are counted, else false
+     */
+    public boolean isRuleStatisticsEnabled() {
+        Config config = acquireConfig();
+        try {
+            for (Target target : config.targets) {
+                if (target.jmxCollector.isRuleStatisticsEnabled()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            releaseConfig(config);
+        }
+    }
+
+    /**
+     * Returns the rule statistics of all targets as JSON, see {@link RuleStatistics#toJson(List)}.
+     *
+     * @return the rule statistics as JSON
+     */
+    public String getRuleStatisticsJson() {
+        Config config = acquireConfig();
+        try {
+            List<RuleStatistics> ruleStatistics = new ArrayList<>();
+            for (Target target : config.targets) {
+                ruleStatistics.add(target.jmxCollector.getRuleStatistics());
+            }
+            return RuleStatistics.toJson(ruleStatistics);
+        } finally {
+            releaseConfig(config);
+        }
+    }
+
+    /**
+     * Returns the latest configuration, reloading it if the file changed. The configuration must
+     * be released with {@link #releaseConfig(Config)} when the collect using it is done.
+     *
+     * @return the latest configuration
+     */
+    private synchronized Config acquireConfig() {
+        if (configFile != null && configFile.lastModified() > config.lastUpdate) {
+            LOGGER.trace("Configuration file changed, reloading...");
+            try (FileReader fr = new FileReader(configFile)) {
+                Config newConfig = loadConfig(new Yaml(new SafeConstructor(new LoaderOptions())).load(fr));
+                newConfig.lastUpdate = configFile.lastModified();
+                retireConfig(config);
+                config = newConfig;
+                configReloadSuccess.inc();
+            } catch (Exception e) {
+                LOGGER.error("Configuration reload failed: %s: ", e);
+                configReloadFailure.inc();
+            }
+        }
+
+        if (config.scrapeIntervalSeconds != null && !config.scheduled) {
+            scheduleScrapes(config);
+        }
+        config.inUse++;
+        return config;
+    }
+
+    /**
+     * Releases a configuration returned by {@link #acquireConfig()}, closing it if it was replaced
+     * and no other collect uses it.
+     *
+     * @param config the configuration
+     */
+    private synchronized void releaseConfig(Config config) {
+        if (--config.inUse == 0 && config.retired) {
+            config.close();
+        }
+    }
+
+    /**
+     * Stops using a configuration replaced by a reload, closing it now if no collect uses it, else
+     * when the last collect using it releases it.
+     *
+     * @param config the configuration
+     */
+    private void retireConfig(Config config) {
+        config.retired = true;
+        if (config.inUse == 0) {
+            config.close();
+        }
+    }
+
+    private Config loadConfig(Map<String, Object> yamlConfig) throws MalformedObjectNameException {
+        if (yamlConfig == null || !yamlConfig.containsKey("targets")) {
+            throw new IllegalArgumentException("Must provide targets");
+        }
+
+        Config cfg = new Config();
+
+        if (yamlConfig.containsKey("targetConcurrency")) {
+            try {
+                cfg.targetConcurrency = (Integer) yamlConfig.get("targetConcurrency");
+                if (cfg.targetConcurrency <= 0) {
+                    throw new IllegalArgumentException("targetConcurrency must be at least 1");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for targetConcurrency", e);
+            }
+        }
+
+        if (yamlConfig.containsKey("scrapeIntervalSeconds")) {
+            try {
+                cfg.scrapeIntervalSeconds = (Integer) yamlConfig.get("scrapeIntervalSeconds");
+                if (cfg.scrapeIntervalSeconds <= 0) {
+                    throw new IllegalArgumentException("scrapeIntervalSeconds must be at least 1");
+                }
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Invalid number provided for scrapeIntervalSeconds", e);
+            }
+        }
+
+        for (String key : CONNECTION_KEYS) {
+            if (yamlConfig.containsKey(key)) {
+                throw new IllegalArgumentException(key + " must be provided per target, if targets is given");
+            }
+        }
+
+        Map<String, Object> sharedYamlConfig = new LinkedHashMap<>(yamlConfig);
+        sharedYamlConfig.keySet().removeAll(PROCESS_KEYS);
+
+        List<Map<String, Object>> targetsYaml;
+        try {
+            targetsYaml = (List<Map<String, Object>>) yamlConfig.get("targets");
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Invalid list provided for targets", e);
+        }
+        if (targetsYaml == null || targetsYaml.isEmpty()) {
+            throw new IllegalArgumentException("Must provide at least one target, if targets is given");
+        }
+
+        Set<String> names = new HashSet<>();
+        try {
+            for (Map<String, Object> targetYaml : targetsYaml) {
+                String name = (String) targetYaml.get("name");
+                if (name == null || name.trim().isEmpty()) {
+                    throw new IllegalArgumentException("Must provide name, if target is given: " + targetYaml);
+                }
+                if (!names.add(name)) {
+                    throw new IllegalArgumentException("Duplicate target name: " + name);
+                }
+
+                List<String> labelNames = new ArrayList<>();
+                List<String> labelValues = new ArrayList<>();
+                labelNames.add(TARGET_LABEL);
+                labelValues.add(name);
+                Map<String, Object> labelsYaml = (Map<String, Object>) targetYaml.get("labels");
+                if (labelsYaml != null) {
+                    for (Map.Entry<String, Object> entry : labelsYaml.entrySet()) {
+                        if (TARGET_LABEL.equals(entry.getKey())) {
+                            throw new IllegalArgumentException(
+                                    "labels must not contain " + TARGET_LABEL + ", it is set to the target name");
+                        }
+                        labelNames.add(entry.getKey());
+                        labelValues.add(String.valueOf(entry.getValue()));
+                    }
+                }
+
+                // The target overrides the top-level configuration, including the rules
+                Map<String, Object> targetYamlConfig = new LinkedHashMap<>(sharedYamlConfig);
+                targetYamlConfig.putAll(targetYaml);
+                targetYamlConfig.keySet().removeAll(PROCESS_KEYS);
+                targetYamlConfig.remove("name");
+                targetYamlConfig.remove("labels");
+
+                cfg.targets.add(new Target(name, targetYamlConfig, Labels.of(labelNames, labelValues)));
+            }
+        } catch (RuntimeException | MalformedObjectNameException e) {
+            // Release the targets already created
+            cfg.close();
+            throw e;
+        }
+
+        cfg.targetScrapers = new ScheduledThreadPoolExecutor(cfg.targetConcurrency, r -> {
+            Thread t = new Thread(r, "jmx-target-scraper");
+            t.setDaemon(true);
+            return t;
+        });
+
+        return cfg;
+    }
+
+    /**
+     * Starts the background scrapes of the targets, each at a random offset within the interval.
+     *
+     * @param config the configuration to schedule the scrapes of
+     */
+    private void scheduleScrapes(Config config) {
+        long intervalMillis = TimeUnit.SECONDS.toMillis(config.scrapeIntervalSeconds);
+        for (Target target : config.targets) {
+            long jitterMillis = ThreadLocalRandom.current().nextLong(intervalMillis);
+            config.targetScrapers.scheduleWithFixedDelay(
+                    () -> scheduledScrape(target), jitterMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        config.scheduled = true;
+    }
+
+    private void scheduledScrape(Target target) {
+        try {
+            target.lastSnapshots = target.scrape();
+        } catch (Throwable t) {
+            // Keep the schedule running, serve the previous snapshots
+            LOGGER.error("Scheduled JMX scrape of target %s failed: %s", target.name, t);
+        }
+    }
+
+    @Override
+    public MetricSnapshots collect() {
+        Config config = acquireConfig();
+        try {
+            return collect(config);
+        } finally {
+            releaseConfig(config);
+        }
+    }
+
+    private MetricSnapshots collect(Config config) {
+        List<MetricSnapshots> targetSnapshots = new ArrayList<>();
+        if (config.scrapeIntervalSeconds != null) {
+            for (Target target : config.targets) {
+                // Null until the first scheduled scrape of the target completed
+                MetricSnapshots lastSnapshots = target.lastSnapshots;
+                if (lastSnapshots != null) {
+                    targetSnapshots.add(lastSnapshots);
+                }
+            }
+        } else {
+            List<Future<MetricSnapshots>> futures = new ArrayList<>();
+            for (Target target : config.targets) {
+                futures.add(config.targetScrapers.submit(target::scrape));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    targetSnapshots.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    LOGGER.error("JMX scrape of target %s failed: %s", config.targets.get(i).name, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        return merge(targetSnapshots);
+    }
+
+    /**
+     * Merges the snapshots of the targets, combining the data points of metrics with the same
+     * name. The target labels keep the data points of different targets distinct.
+     *
+     * @param targetSnapshots the snapshots per target
+     * @return the merged snapshots
+     */
+    static MetricSnapshots merge(List<MetricSnapshots> targetSnapshots) {
+        Map<String, List<MetricSnapshot>> snapshotsByName = new LinkedHashMap<>();
+        for (MetricSnapshots metricSnapshots : targetSnapshots) {
+            for (MetricSnapshot metricSnapshot : metricSnapshots) {
+                snapshotsByName
+                        .computeIfAbsent(metricSnapshot.getMetadata().getPrometheusName(), name -> new ArrayList<>())
+                        .add(metricSnapshot);
+            }
+        }
+
+        MetricSnapshots.Builder result = MetricSnapshots.builder();
+        for (List<MetricSnapshot> snapshotsWithSameName : snapshotsByName.values()) {
+            result.metricSnapshot(mergeSnapshotsWithSameName(snapshotsWithSameName));
+        }
+        return result.build();
+    }
+
+    private static MetricSnapshot mergeSnapshotsWithSameName(List<MetricSnapshot> snapshots) {
+        MetricSnapshot first = snapshots.get(0);
+        if (snapshots.size() == 1) {
+            return first;
+        }
+
+        MetricMetadata metadata = first.getMetadata();
+        boolean sameType = true;
+        boolean onlyValues = true;
+        for (MetricSnapshot snapshot : snapshots) {
+            sameType &= snapshot.getClass() == first.getClass();
+            onlyValues &= snapshot instanceof CounterSnapshot
+                    || snapshot instanceof GaugeSnapshot
+                    || snapshot instanceof UnknownSnapshot;
+        }
+
+        if (!sameType) {
+            if (onlyValues) {
+                // Rules of different targets exported different types, as with a single target
+                return toUnknownSnapshot(metadata, snapshots);
+            }
+            LOGGER.trace("metric %s has different types per target, only keeping the first", metadata.getName());
+            List<MetricSnapshot> snapshotsOfFirstType = new ArrayList<>();
+            for (MetricSnapshot snapshot : snapshots) {
+                if (snapshot.getClass() == first.getClass()) {
+                    snapshotsOfFirstType.add(snapshot);
+                }
+            }
+            snapshots = snapshotsOfFirstType;
+        }
+
+        if (first instanceof CounterSnapshot) {
+            return new CounterSnapshot(metadata, concatDataPoints(snapshots));
+        } else if (first instanceof GaugeSnapshot) {
+            return new GaugeSnapshot(metadata, concatDataPoints(snapshots));
+        } else if (first instanceof UnknownSnapshot) {
+            return new UnknownSnapshot(metadata, concatDataPoints(snapshots));
+        } else if (first instanceof HistogramSnapshot) {
+            return new HistogramSnapshot(
+                    ((HistogramSnapshot) first).isGaugeHistogram(), metadata, concatDataPoints(snapshots));
+        } else if (first instanceof InfoSnapshot) {
+            return new InfoSnapshot(metadata, concatDataPoints(snapshots));
+        }
+
+        LOGGER.trace("metric %s has an unsupported type, only keeping the first target", metadata.getName());
+        return first;
+    }
+
+    private static <T extends DataPointSnapshot> List<T> concatDataPoints(List<MetricSnapshot> snapshots) {
+        List<T> dataPoints = new ArrayList<>();
+        for (MetricSnapshot snapshot : snapshots) {
+            dataPoints.addAll((List<T>) snapshot.getDataPoints());
+        }
+        return dataPoints;
+    }
+
+    private static UnknownSnapshot toUnknownSnapshot(MetricMetadata metadata, List<MetricSnapshot> snapshots) {
+        List<UnknownSnapshot.UnknownDataPointSnapshot> dataPoints = new ArrayList<>();
+        for (MetricSnapshot snapshot : snapshots) {
+            for (DataPointSnapshot dataPoint : snapshot.getDataPoints()) {
+                double value;
+                if (dataPoint instanceof CounterSnapshot.CounterDataPointSnapshot) {
+                    value = ((CounterSnapshot.CounterDataPointSnapshot) dataPoint).getValue();
+                } else if (dataPoint instanceof GaugeSnapshot.GaugeDataPointSnapshot) {
+                    value = ((GaugeSnapshot.GaugeDataPointSnapshot) dataPoint).getValue();
+                } else {
+                    value = ((UnknownSnapshot.UnknownDataPointSnapshot) dataPoint).getValue();
+                }
+                dataPoints.add(UnknownSnapshot.UnknownDataPointSnapshot.builder()
+                        .labels(dataPoint.getLabels())
+                        .value(value)
+                        .build());
+            }
+        }
+        return new UnknownSnapshot(metadata, dataPoints);
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
@@ -51,11 +52,46 @@ public class ObjectNameAttributeFilter {
      */
     public static final String AUTO_EXCLUDE_OBJECT_NAME_ATTRIBUTES = "autoExcludeObjectNameAttributes";
 
+    /**
+     * Configuration constant to define the read time budget of an attribute, enables excluding
+     * slow attributes
+     */
+    public static final String SLOW_ATTRIBUTE_BUDGET_MILLISECONDS = "slowAttributeBudgetMilliseconds";
+
+    /**
+     * Configuration constant to define the number of consecutive over budget reads after which an
+     * attribute is excluded
+     */
+    public static final String SLOW_ATTRIBUTE_STRIKES = "slowAttributeStrikes";
+
+    /**
+     * Configuration constant to define how long a slow attribute is excluded before it is retried
+     */
+    public static final String SLOW_ATTRIBUTE_EXCLUSION_SECONDS = "slowAttributeExclusionSeconds";
+
+    private static final int DEFAULT_SLOW_ATTRIBUTE_STRIKES = 3;
+    private static final int DEFAULT_SLOW_ATTRIBUTE_EXCLUSION_SECONDS = 300;
+
     private final Map<ObjectName, Set<String>> configExcludeObjectNameAttributesMap;
     private final Map<ObjectName, Set<String>> dynamicExcludeObjectNameAttributesMap;
     private final Map<ObjectName, Set<String>> includeObjectNameAttributesMap;
+    private final Map<ObjectName, Map<String, SlowAttribute>> slowObjectNameAttributesMap;
+    private final Set<ObjectName> slowObjectNames;
 
     private boolean autoExcludeObjectNameAttributes;
+    private long slowAttributeBudgetNanos;
+    private int slowAttributeStrikes = DEFAULT_SLOW_ATTRIBUTE_STRIKES;
+    private long slowAttributeExclusionNanos = TimeUnit.SECONDS.toNanos(DEFAULT_SLOW_ATTRIBUTE_EXCLUSION_SECONDS);
+
+    /**
+     * Class to track the over budget reads of an attribute
+     */
+    private static class SlowAttribute {
+
+        int strikes;
+        long excludedUntilNanos;
+        boolean excluded;
+    }
 
     /**
      * Constructor
@@ -64,6 +100,8 @@ public class ObjectNameAttributeFilter {
         configExcludeObjectNameAttributesMap = new ConcurrentHashMap<>();
         dynamicExcludeObjectNameAttributesMap = new ConcurrentHashMap<>();
         includeObjectNameAttributesMap = new ConcurrentHashMap<>();
+        slowObjectNameAttributesMap = new ConcurrentHashMap<>();
+        slowObjectNames = ConcurrentHashMap.newKeySet();
     }
 
     /**
@@ -85,9 +123,35 @@ public class ObjectNameAttributeFilter {
 
         LOGGER.trace("dynamicExclusion [%b]", autoExcludeObjectNameAttributes);
 
+        if (yamlConfig.containsKey(SLOW_ATTRIBUTE_BUDGET_MILLISECONDS)) {
+            int budgetMilliseconds = getPositiveInteger(yamlConfig, SLOW_ATTRIBUTE_BUDGET_MILLISECONDS);
+            slowAttributeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMilliseconds);
+        }
+        if (yamlConfig.containsKey(SLOW_ATTRIBUTE_STRIKES)) {
+            slowAttributeStrikes = getPositiveInteger(yamlConfig, SLOW_ATTRIBUTE_STRIKES);
+        }
+        if (yamlConfig.containsKey(SLOW_ATTRIBUTE_EXCLUSION_SECONDS)) {
+            int exclusionSeconds = getPositiveInteger(yamlConfig, SLOW_ATTRIBUTE_EXCLUSION_SECONDS);
+            slowAttributeExclusionNanos = TimeUnit.SECONDS.toNanos(exclusionSeconds);
+        }
+
+        LOGGER.trace("slowAttributeBudgetNanos [%d]", slowAttributeBudgetNanos);
+
         return this;
     }
 
+    private static int getPositiveInteger(Map<String, Object> yamlConfig, String key) {
+        try {
+            Integer value = (Integer) yamlConfig.get(key);
+            if (value == null || value <= 0) {
+                throw new IllegalArgumentException(key + " must be at least 1");
+            }
+            return value;
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Invalid number provided for " + key, e);
+        }
+    }
+
     /**
      * Method to initialize the configExcludeObjectNameAttributesMap and
      * includeObjectNameAttributesMap
@@ -149,6 +213,150 @@ public class ObjectNameAttributeFilter {
                 dynamicExcludeObjectNameAttributesMap.remove(name);
             }
         }
+        if (slowAttributeBudgetNanos > 0) {
+            slowObjectNameAttributesMap.keySet().retainAll(aliveMBeans);
+            slowObjectNames.retainAll(aliveMBeans);
+        }
+    }
+
+    /**
+     * Method to remove the dynamic exclusions of an unregistered mBean
+     *
+     * @param objectName the ObjectName
+     */
+    public void remove(ObjectName objectName) {
+        if (autoExcludeObjectNameAttributes) {
+            dynamicExcludeObjectNameAttributesMap.remove(objectName);
+        }
+        slowObjectNameAttributesMap.remove(objectName);
+        slowObjectNames.remove(objectName);
+    }
+
+    /**
+     * Method to return whether slow attributes are excluded
+     *
+     * @return true if a read time budget is configured, else false
+     */
+    public boolean slowAttributeBudgetIsEnabled() {
+        return slowAttributeBudgetNanos > 0;
+    }
+
+    /**
+     * Method to return whether the attributes of an mBean should be read, and timed, one by one
+     * because a previous read exceeded the budget
+     *
+     * @param objectName the ObjectName
+     * @return true if the attributes should be read one by one, else false
+     */
+    public boolean isSlow(ObjectName objectName) {
+        return slowObjectNames.contains(objectName);
+    }
+
+    /**
+     * Method to record the time a bulk read of an mBean's attributes took. Marks the mBean as slow
+     * if the read exceeded the budget.
+     *
+     * @param objectName the ObjectName
+     * @param nanos the read time
+     */
+    public void recordRead(ObjectName objectName, long nanos) {
+        if (slowAttributeBudgetNanos > 0 && nanos > slowAttributeBudgetNanos) {
+            LOGGER.trace("object name [%s] exceeded read budget [%d ns]", objectName.getCanonicalName(), nanos);
+            slowObjectNames.add(objectName);
+        }
+    }
+
+    /**
+     * Method to record the time a read of a single attribute took. Excludes the attribute once
+     * it exceeded the budget for the configured number of consecutive reads.
+     *
+     * @param objectName the ObjectName
+     * @param attributeName the attribute name
+     * @param nanos the read time
+     * @return true if the read exceeded the budget, else false
+     */
+    public boolean recordRead(ObjectName objectName, String attributeName, long nanos) {
+        if (nanos <= slowAttributeBudgetNanos) {
+            Map<String, SlowAttribute> slowAttributes = slowObjectNameAttributesMap.get(objectName);
+            if (slowAttributes != null) {
+                slowAttributes.remove(attributeName);
+            }
+            return false;
+        }
+
+        SlowAttribute slowAttribute = slowObjectNameAttributesMap
+                .computeIfAbsent(objectName, o -> new ConcurrentHashMap<>())
+                .computeIfAbsent(attributeName, a -> new SlowAttribute());
+        synchronized (slowAttribute) {
+            slowAttribute.strikes++;
+            if (slowAttribute.strikes >= slowAttributeStrikes) {
+                LOGGER.trace(
+                        "auto adding exclusion of slow object name [%s] attribute name [%s]",
+                        objectName.getCanonicalName(), attributeName);
+                slowAttribute.excluded = true;
+                slowAttribute.excludedUntilNanos = System.nanoTime() + slowAttributeExclusionNanos;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to mark an mBean as no longer slow after all its attributes were read within budget
+     *
+     * @param objectName the ObjectName
+     */
+    public void recordWithinBudget(ObjectName objectName) {
+        slowObjectNames.remove(objectName);
+    }
+
+    /**
+     * Method to check if an attribute is currently excluded for being slow. An exclusion expires
+     * after the configured time, after which a single over budget read excludes the attribute again.
+     *
+     * @param objectName the ObjectName
+     * @param attributeName the attribute name
+     * @return true if it should be excluded, false otherwise
+     */
+    public boolean excludeSlow(ObjectName objectName, String attributeName) {
+        if (slowObjectNameAttributesMap.isEmpty()) {
+            return false;
+        }
+
+        Map<String, SlowAttribute> slowAttributes = slowObjectNameAttributesMap.get(objectName);
+        if (slowAttributes == null) {
+            return false;
+        }
+
+        SlowAttribute slowAttribute = slowAttributes.get(attributeName);
+        if (slowAttribute == null) {
+            return false;
+        }
+
+        synchronized (slowAttribute) {
+            if (!slowAttribute.excluded) {
+                return false;
+            }
+            if (System.nanoTime() - slowAttribute.excludedUntilNanos >= 0) {
+                LOGGER.trace(
+                        "retrying slow object name [%s] attribute name [%s]",
+                        objectName.getCanonicalName(), attributeName);
+                slowAttribute.excluded = false;
+                slowAttribute.strikes = slowAttributeStrikes - 1;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Method to check if an mBean has attributes that are currently excluded for being slow
+     *
+     * @param objectName the ObjectName
+     * @return true if it has slow attributes, false otherwise
+     */
+    public boolean hasSlowAttributes(ObjectName objectName) {
+        Map<String, SlowAttribute> slowAttributes = slowObjectNameAttributesMap.get(objectName);
+        return slowAttributes != null && !slowAttributes.isEmpty();
     }
 
     /**
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A rule template such as {@code kafka_$1_$2} compiled into literal and group reference segments,
+ * so it is expanded from the groups of a rule pattern match without parsing it again.
+ *
+ * <p>Expanding gives the same result as {@link Matcher#replaceAll(String)} on the whole-name match
+ * of a rule pattern. Templates using named groups or that {@code replaceAll} would reject are not
+ * compiled and are expanded with {@code replaceAll}, so they fail the same way.
+ *
+ * <p>Group 0 of a whole-name match is the whole input, so compiled templates expand it as such.
+ * They can then also be expanded from a match of an anchored rule pattern without its wrapper.
+ */
+class ReplacementTemplate {
+
+    private final String template;
+
+    // The literal before each group reference, and after the last one, null if not compiled
+    private final String[] literals;
+    private final int[] groups;
+
+    private ReplacementTemplate(String template, String[] literals, int[] groups) {
+        this.template = template;
+        this.literals = literals;
+        this.groups = groups;
+    }
+
+    /**
+     * Method to compile a template for a rule pattern
+     *
+     * @param template the template as configured
+     * @param pattern the compiled rule pattern, null for a rule without pattern
+     * @return the compiled template
+     */
+    static ReplacementTemplate compile(String template, Pattern pattern) {
+        if (pattern == null) {
+            return new ReplacementTemplate(template, null, null);
+        }
+
+        int groupCount = pattern.matcher("").groupCount();
+        List<String> literals = new ArrayList<>();
+        List<Integer> groups = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= template.length()) {
+                    return new ReplacementTemplate(template, null, null);
+                }
+                literal.append(template.charAt(i + 1));
+                i += 2;
+            } else if (c == '$') {
+                // Named groups, missing and unknown groups are left to replaceAll
+                if (i + 1 >= template.length()) {
+                    return new ReplacementTemplate(template, null, null);
+                }
+                int group = template.charAt(i + 1) - '0';
+                if (group < 0 || group > 9 || group > groupCount) {
+                    return new ReplacementTemplate(template, null, null);
+                }
+                i += 2;
+                // Like replaceAll, take the longest number that is an existing group
+                while (i < template.length()) {
+                    int digit = template.charAt(i) - '0';
+                    if (digit < 0 || digit > 9 || group * 10 + digit > groupCount) {
+                        break;
+                    }
+                    group = group * 10 + digit;
+                    i++;
+                }
+                literals.add(literal.toString());
+                groups.add(group);
+                literal.setLength(0);
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+
+        int[] groupArray = new int[groups.size()];
+        for (int j = 0; j < groupArray.length; j++) {
+            groupArray[j] = groups.get(j);
+        }
+        return new ReplacementTemplate(template, literals.toArray(new String[0]), groupArray);
+    }
+
+    /**
+     * Method to check if the template is compiled, so it is expanded without {@code replaceAll}
+     *
+     * @return true if the template is compiled, else false
+     */
+    boolean isCompiled() {
+        return literals != null;
+    }
+
+    /**
+     * Method to check if the template has no group references
+     *
+     * @return true if the template expands to a constant, else false
+     */
+    boolean isLiteral() {
+        return literals != null && groups.length == 0;
+    }
+
+    /**
+     * Method to get the constant a template without group references expands to
+     *
+     * @return the constant
+     */
+    String getLiteral() {
+        return literals[0];
+    }
+
+    /**
+     * Method to expand the template
+     *
+     * @param matcher the matcher that matched the whole input, or the start of the input for a
+     *     compiled template and an input without line terminators
+     * @param input the input matched
+     * @param builder a builder to reuse
+     * @return the expanded template
+     */
+    String expand(Matcher matcher, String input, StringBuilder builder) {
+        // With line terminators, replaceAll may find a different match than matches()
+        if (literals == null || hasLineTerminator(input)) {
+            String result = matcher.replaceAll(template);
+            // Restore the match for the templates expanded after this one
+            matcher.reset(input).matches();
+            return result;
+        }
+        if (groups.length == 0) {
+            return literals[0];
+        }
+        if (groups.length == 1 && literals[0].isEmpty() && literals[1].isEmpty()) {
+            if (groups[0] == 0) {
+                return input;
+            }
+            String group = matcher.group(groups[0]);
+            return group != null ? group : "";
+        }
+
+        builder.setLength(0);
+        for (int i = 0; i < groups.length; i++) {
+            builder.append(literals[i]);
+            if (groups[i] == 0) {
+                builder.append(input);
+                continue;
+            }
+            int start = matcher.start(groups[i]);
+            if (start != -1) {
+                builder.append(input, start, matcher.end(groups[i]));
+            }
+        }
+        builder.append(literals[groups.length]);
+        return builder.toString();
+    }
+
+    /**
+     * Method to check if an input contains a line terminator, which {@code .} and {@code $} treat
+     * specially
+     *
+     * @param input the input
+     * @return true if the input contains a line terminator, else false
+     */
+    static boolean hasLineTerminator(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
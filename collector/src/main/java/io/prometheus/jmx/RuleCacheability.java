@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.List;
+
+/**
+ * Works out which rules can be cached without configuring {@code cache}, as their result does not
+ * depend on a numeric or boolean value.
+ *
+ * <p>A rule is matched against {@code <name>: <value>}. Numbers and booleans contain neither
+ * {@code :} nor a space, so a pattern ending with a literal that can't end within {@code ": "
+ * <value>} can only match within {@code <name>:}. Its match, and so its capture groups, is then the
+ * same for any such value. Lookaheads and templates using the whole match are not supported.
+ */
+class RuleCacheability {
+
+    // The renderings of numbers and booleans that contain more than digits, signs, dots and exponents
+    private static final String[] VALUE_WORDS = {"true", "false", "NaN", "-Infinity", "<cache>"};
+
+    private static final String VALUE_CHARACTERS = "0123456789+-.Ee";
+
+    private RuleCacheability() {
+        // Intentionally empty
+    }
+
+    /**
+     * Method to check if a value can be matched by a rule cached automatically
+     *
+     * @param value the value
+     * @return true if the value is a number or a boolean, else false
+     */
+    static boolean isCacheableValue(Object value) {
+        return value instanceof Number || value instanceof Boolean;
+    }
+
+    /**
+     * Method to check if the result of a rule does not depend on a numeric or boolean value
+     *
+     * @param rule the rule
+     * @param pattern the rule pattern as configured, null for a rule without pattern
+     * @return true if the rule can be cached, else false
+     */
+    static boolean isValueIndependent(JmxCollector.Rule rule, String pattern) {
+        if (pattern == null) {
+            // The default format does not use the value
+            return true;
+        }
+
+        if (pattern.contains("(?=") || pattern.contains("(?!")) {
+            return false;
+        }
+
+        String trailingLiteral = RuleLiteralIndex.trailingLiteral(pattern);
+        if (trailingLiteral == null || trailingLiteral.isEmpty() || !canOnlyEndBeforeValue(trailingLiteral)) {
+            return false;
+        }
+
+        // $0 is the whole name, including the value
+        return !usesWholeMatch(rule.name)
+                && !usesWholeMatch(rule.value)
+                && !usesWholeMatch(rule.help)
+                && !usesWholeMatch(rule.labelNames)
+                && !usesWholeMatch(rule.labelValues);
+    }
+
+    private static boolean canOnlyEndBeforeValue(String trailingLiteral) {
+        int lastSeparator = Math.max(trailingLiteral.lastIndexOf(':'), trailingLiteral.lastIndexOf(' '));
+        if (lastSeparator == trailingLiteral.length() - 1) {
+            // The literal ends with ':', or with ' ' which also occurs right before the value
+            return trailingLiteral.charAt(lastSeparator) == ':';
+        }
+
+        // Whatever follows the last ':' or ' ' would have to occur within the value
+        String tail = trailingLiteral.substring(lastSeparator + 1);
+        for (String valueWord : VALUE_WORDS) {
+            if (valueWord.contains(tail)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < tail.length(); i++) {
+            if (VALUE_CHARACTERS.indexOf(tail.charAt(i)) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean usesWholeMatch(List<String> templates) {
+        if (templates != null) {
+            for (String template : templates) {
+                if (usesWholeMatch(template)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean usesWholeMatch(String template) {
+        return template != null && template.contains("$0");
+    }
+}
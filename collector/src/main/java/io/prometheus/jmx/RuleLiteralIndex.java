@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Index of the literal substrings the rule patterns require, so a rule is only matched against a
+ * matchName containing all of them.
+ *
+ * <p>Literals are only taken from the top level of a pattern, outside of groups, character classes
+ * and optional parts. A pattern with a top level alternation, inline flags or escapes that are not
+ * understood has no literals, so its rule is always matched. Literals of a single character are
+ * ignored as they rarely rule anything out. All literals are found in one pass over the matchName
+ * with an Aho-Corasick automaton.
+ */
+class RuleLiteralIndex {
+
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    private final int[][] literalIdsPerRule;
+
+    // The automaton, per state: the sorted transition characters, their target states, the fail
+    // state and the ids of the literals ending in the state
+    private final char[][] transitionChars;
+    private final int[][] transitionStates;
+    private final int[] failStates;
+    private final int[][] outputs;
+
+    private RuleLiteralIndex(int[][] literalIdsPerRule, List<String> literals) {
+        this.literalIdsPerRule = literalIdsPerRule;
+
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> trieOutputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        trieOutputs.add(new ArrayList<>());
+        for (int id = 0; id < literals.size(); id++) {
+            String literal = literals.get(id);
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                Integer next = trie.get(state).get(literal.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    trieOutputs.add(new ArrayList<>());
+                    trie.get(state).put(literal.charAt(i), next);
+                }
+                state = next;
+            }
+            trieOutputs.get(state).add(id);
+        }
+
+        int states = trie.size();
+        transitionChars = new char[states][];
+        transitionStates = new int[states][];
+        failStates = new int[states];
+        outputs = new int[states][];
+        for (int state = 0; state < states; state++) {
+            TreeMap<Character, Integer> transitions = trie.get(state);
+            transitionChars[state] = new char[transitions.size()];
+            transitionStates[state] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                transitionChars[state][i] = transition.getKey();
+                transitionStates[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // Breadth first, so the fail state of a state is complete before its children are visited
+        Deque<Integer> queue = new ArrayDeque<>();
+        outputs[0] = NO_OUTPUTS;
+        for (int child : transitionStates[0]) {
+            failStates[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> stateOutputs = trieOutputs.get(state);
+            for (int id : outputs[failStates[state]]) {
+                stateOutputs.add(id);
+            }
+            outputs[state] = stateOutputs.isEmpty() ? NO_OUTPUTS : toArray(stateOutputs);
+            for (int i = 0; i < transitionChars[state].length; i++) {
+                int child = transitionStates[state][i];
+                failStates[child] = next(failStates[state], transitionChars[state][i]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Method to create a RuleLiteralIndex for rule patterns
+     *
+     * @param patterns the rule patterns as configured, null for a rule without pattern
+     * @return a RuleLiteralIndex, or null if no pattern has literals
+     */
+    static RuleLiteralIndex create(List<String> patterns) {
+        Map<String, Integer> literalIds = new LinkedHashMap<>();
+        int[][] literalIdsPerRule = new int[patterns.size()][];
+        for (int i = 0; i < patterns.size(); i++) {
+            List<String> literals =
+                    patterns.get(i) != null ? requiredLiterals(patterns.get(i)) : Collections.emptyList();
+            if (literals.isEmpty()) {
+                continue;
+            }
+            literalIdsPerRule[i] = new int[literals.size()];
+            for (int j = 0; j < literals.size(); j++) {
+                Integer id = literalIds.get(literals.get(j));
+                if (id == null) {
+                    id = literalIds.size();
+                    literalIds.put(literals.get(j), id);
+                }
+                literalIdsPerRule[i][j] = id;
+            }
+        }
+        if (literalIds.isEmpty()) {
+            return null;
+        }
+        return new RuleLiteralIndex(literalIdsPerRule, new ArrayList<>(literalIds.keySet()));
+    }
+
+    /**
+     * Method to get the ids of the literals required by a rule
+     *
+     * @param ruleIndex the index of the rule in the patterns the index was created for
+     * @return the literal ids, or null if the rule has no literals
+     */
+    int[] getLiteralIds(int ruleIndex) {
+        return literalIdsPerRule[ruleIndex];
+    }
+
+    /**
+     * Method to find the literals occurring in a string
+     *
+     * @param string the string to search
+     * @param found the set to clear and fill with the ids of the literals found
+     */
+    void find(CharSequence string, BitSet found) {
+        found.clear();
+        int state = 0;
+        for (int i = 0; i < string.length(); i++) {
+            state = next(state, string.charAt(i));
+            for (int id : outputs[state]) {
+                found.set(id);
+            }
+        }
+    }
+
+    /**
+     * Method to check if all literals of a rule were found
+     *
+     * @param found the ids of the literals found
+     * @param literalIds the ids of the literals required by the rule
+     * @return true if all literals were found, else false
+     */
+    static boolean foundAll(BitSet found, int[] literalIds) {
+        for (int id : literalIds) {
+            if (!found.get(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int i = Arrays.binarySearch(transitionChars[state], c);
+            if (i >= 0) {
+                return transitionStates[state][i];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failStates[state];
+        }
+    }
+
+    /**
+     * Method to extract the literal substrings any match of a pattern contains
+     *
+     * @param pattern the rule pattern
+     * @return the literals, empty if none could be extracted
+     */
+    static List<String> requiredLiterals(String pattern) {
+        Set<String> literals = new LinkedHashSet<>();
+        if (parse(pattern, literals) == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(literals);
+    }
+
+    /**
+     * Method to get the literal a pattern ends with
+     *
+     * @param pattern the rule pattern
+     * @return the literal any match ends with, empty if there is none, or null if the pattern could
+     *     not be parsed
+     */
+    static String trailingLiteral(String pattern) {
+        return parse(pattern, new LinkedHashSet<>());
+    }
+
+    /**
+     * Parses the top level of a pattern, returns the literal it ends with or null if it could not
+     * be parsed
+     */
+    private static String parse(String pattern, Set<String> literals) {
+        StringBuilder run = new StringBuilder();
+        int length = pattern.length();
+        int i = 0;
+        while (i < length) {
+            char c = pattern.charAt(i);
+            int atomEnd;
+            String atom = null;
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= length) {
+                        return null;
+                    }
+                    char escaped = pattern.charAt(i + 1);
+                    atomEnd = i + 2;
+                    if (escaped == 'Q') {
+                        int end = pattern.indexOf("\\E", i + 2);
+                        atom = end < 0 ? pattern.substring(i + 2) : pattern.substring(i + 2, end);
+                        atomEnd = end < 0 ? length : end + 2;
+                    } else if (!Character.isLetterOrDigit(escaped)) {
+                        atom = String.valueOf(escaped);
+                    } else if ("tnrfae".indexOf(escaped) >= 0) {
+                        atom = String.valueOf("\t\n\r\f\u0007\u001B".charAt("tnrfae".indexOf(escaped)));
+                    } else if ("dDsSwWhHvVRXbBAGzZ".indexOf(escaped) < 0 && (escaped < '1' || escaped > '9')) {
+                        // Code points, control characters, properties and named groups
+                        return null;
+                    }
+                    break;
+                case '[':
+                    atomEnd = skipCharacterClass(pattern, i);
+                    break;
+                case '(':
+                    if (i + 2 < length && pattern.charAt(i + 1) == '?' && ":=!<>".indexOf(pattern.charAt(i + 2)) < 0) {
+                        // Inline flags change how the rest of the pattern matches
+                        return null;
+                    }
+                    atomEnd = skipGroup(pattern, i);
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    atomEnd = i + 1;
+                    break;
+                case ')':
+                case '|':
+                case '?':
+                case '*':
+                case '+':
+                case '{':
+                    // An alternation or a group closed at the top level may bypass the whole rest
+                    return null;
+                default:
+                    atom = String.valueOf(c);
+                    atomEnd = i + 1;
+                    break;
+            }
+            if (atomEnd < 0) {
+                return null;
+            }
+
+            char quantifier = atomEnd < length ? pattern.charAt(atomEnd) : 0;
+            boolean quantified = quantifier == '?' || quantifier == '*' || quantifier == '+' || quantifier == '{';
+            if (atom == null || atom.isEmpty()) {
+                addLiteral(literals, run);
+            } else if (!quantified) {
+                run.append(atom);
+            } else if (quantifier == '+') {
+                // The atom occurs at least once, but what follows is not next to it
+                run.append(atom);
+                addLiteral(literals, run);
+            } else {
+                // The last character of the atom may not occur
+                run.append(atom, 0, atom.length() - 1);
+                addLiteral(literals, run);
+            }
+
+            i = quantified ? skipQuantifier(pattern, atomEnd) : atomEnd;
+            if (i < 0) {
+                return null;
+            }
+        }
+        String trailingLiteral = run.toString();
+        addLiteral(literals, run);
+        return trailingLiteral;
+    }
+
+    private static void addLiteral(Set<String> literals, StringBuilder run) {
+        if (run.length() > 1) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /** Returns the index after the character class starting at start, or -1 if unterminated */
+    private static int skipCharacterClass(String pattern, int start) {
+        int i = start + 1;
+        if (i < pattern.length() && pattern.charAt(i) == '^') {
+            i++;
+        }
+        if (i < pattern.length() && pattern.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /** Returns the index after the group starting at start, or -1 if unterminated */
+    private static int skipGroup(String pattern, int start) {
+        int i = start + 1;
+        int depth = 1;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == 'Q') {
+                    int end = pattern.indexOf("\\E", i + 2);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    i = end + 2;
+                } else {
+                    i += 2;
+                }
+                continue;
+            }
+            if (c == '[') {
+                i = skipCharacterClass(pattern, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /** Returns the index after the quantifier starting at start, or -1 if unterminated */
+    private static int skipQuantifier(String pattern, int start) {
+        int i = start;
+        if (pattern.charAt(i) == '{') {
+            i = pattern.indexOf('}', i);
+            if (i < 0) {
+                return -1;
+            }
+        }
+        i++;
+        // Reluctant and possessive quantifiers
+        if (i < pattern.length() && (pattern.charAt(i) == '?' || pattern.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.ObjectName;
+
+/**
+ * Works out from the rule patterns which MBeans no rule can match, so they are skipped before
+ * their MBeanInfo and attributes are read.
+ *
+ * <p>A rule is matched against {@code domain<properties><attrKeys>attrName: value}. A pattern that
+ * starts with {@code ^}, a literal domain and {@code <} can only match from the start of that
+ * string, so it can only match an MBean if the pattern can match a string starting with the
+ * domain and the key properties of the MBean. Only used if all rules have such a pattern. Without
+ * the {@code ^} the literal may also match the end of a longer domain, such as {@code server<}
+ * in {@code kafka.server<}.
+ */
+class RuleReachability {
+
+    // A ^, a literal domain (dots may be escaped or not), and the start of the properties
+    private static final Pattern DOMAIN_ANCHORED_PATTERN = Pattern.compile("^\\^(?:[A-Za-z0-9_\\-]|\\\\\\.|\\.)+<");
+
+    private final List<Pattern> prefixPatterns;
+    private final Map<ObjectName, Boolean> reachablePerBean = new ConcurrentHashMap<>();
+
+    private RuleReachability(List<Pattern> prefixPatterns) {
+        this.prefixPatterns = prefixPatterns;
+    }
+
+    /**
+     * Method to create a RuleReachability for rule patterns
+     *
+     * @param patterns the rule patterns as configured, null for a rule without pattern
+     * @return a RuleReachability, or null if any MBean may be matched by a rule
+     */
+    static RuleReachability create(List<String> patterns) {
+        List<Pattern> prefixPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern == null || !isDomainAnchored(pattern)) {
+                return null;
+            }
+            prefixPatterns.add(Pattern.compile("^(?:" + pattern + ")"));
+        }
+        return new RuleReachability(prefixPatterns);
+    }
+
+    /**
+     * Method to check if a rule pattern starts with {@code ^}, a literal domain and {@code <}
+     *
+     * @param pattern the rule pattern as configured
+     * @return true if the pattern can only match from the start of the name, else false
+     */
+    static boolean isDomainAnchored(String pattern) {
+        if (!DOMAIN_ANCHORED_PATTERN.matcher(pattern).lookingAt()) {
+            return false;
+        }
+
+        // An alternation at the top level, or closing the group the pattern is wrapped in, may
+        // match anywhere in the name
+        int groupDepth = 0;
+        int classDepth = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == 'Q') {
+                    int end = pattern.indexOf("\\E", i + 2);
+                    i = end < 0 ? pattern.length() : end + 1;
+                } else {
+                    i++;
+                }
+            } else if (c == '[') {
+                if (classDepth++ == 0) {
+                    // A ] right after the opening [ is a literal
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '^') {
+                        i++;
+                    }
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == ']') {
+                        i++;
+                    }
+                }
+            } else if (c == ']' && classDepth > 0) {
+                classDepth--;
+            } else if (classDepth == 0) {
+                if (c == '(') {
+                    groupDepth++;
+                } else if (c == ')' && --groupDepth < 0) {
+                    return false;
+                } else if (c == '|' && groupDepth == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to check if any rule can match an MBean
+     *
+     * @param mBeanName the MBean objectName
+     * @param keyProperties the key properties of the MBean, in objectName order
+     * @return true if a rule can match the MBean, else false
+     */
+    public boolean isReachable(ObjectName mBeanName, LinkedHashMap<String, String> keyProperties) {
+        Boolean reachable = reachablePerBean.get(mBeanName);
+        if (reachable == null) {
+            reachable = computeReachable(mBeanName.getDomain(), keyProperties);
+            reachablePerBean.put(mBeanName, reachable);
+        }
+        return reachable;
+    }
+
+    public void remove(ObjectName mBeanName) {
+        reachablePerBean.remove(mBeanName);
+    }
+
+    public void onlyKeepMBeans(Set<ObjectName> latestBeans) {
+        reachablePerBean.keySet().retainAll(latestBeans);
+    }
+
+    private boolean computeReachable(String domain, LinkedHashMap<String, String> keyProperties) {
+        // The start of the name rules are matched against, TabularData values may add properties
+        String properties = keyProperties.toString();
+        String prefix = new StringBuilder(domain.length() + properties.length())
+                .append(domain)
+                .append('<')
+                .append(properties, 1, properties.length() - 1)
+                .toString();
+
+        for (Pattern prefixPattern : prefixPatterns) {
+            Matcher matcher = prefixPattern.matcher(prefix);
+            // If the end of the prefix was hit, the rest of the name may still match
+            if (matcher.lookingAt() || matcher.hitEnd()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.metrics.model.registry.MultiCollector;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.Labels;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import io.prometheus.metrics.model.snapshots.Unit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Counts, per rule, how often its pattern was evaluated and matched, the time spent matching it
+ * and how often its cached result was used, so expensive and unused rules can be found.
+ *
+ * <p>Rules are identified by their index in the configuration and a short hash of their pattern,
+ * and the metrics get the labels of the target the rules are run for. The counts are reset when the
+ * rules change, as on a configuration reload.
+ */
+public class RuleStatistics implements MultiCollector {
+
+    private static final String EVALUATIONS = "jmx_rule_evaluations";
+    private static final String MATCHES = "jmx_rule_matches";
+    private static final String DURATION_SECONDS = "jmx_rule_duration_seconds";
+    private static final String CACHE_HITS = "jmx_rule_cache_hits";
+
+    private final Labels targetLabels;
+
+    // The patterns of the rules counted, null for a rule without pattern
+    private List<String> patterns = Collections.emptyList();
+    private String[] patternHashes = new String[0];
+    private Counts totals = new Counts(0);
+
+    /** Constructor */
+    public RuleStatistics() {
+        this(Labels.EMPTY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param targetLabels the labels to add to the metrics, must not be null
+     */
+    RuleStatistics(Labels targetLabels) {
+        this.targetLabels = Objects.requireNonNull(targetLabels, "target labels must not be null");
+    }
+
+    /**
+     * The counts of one scrape, per rule index
+     */
+    static class Counts {
+
+        final long[] evaluations;
+        final long[] matches;
+        final long[] nanos;
+        final long[] cacheHits;
+
+        /**
+         * Constructor
+         *
+         * @param rules the number of rules
+         */
+        Counts(int rules) {
+            evaluations = new long[rules];
+            matches = new long[rules];
+            nanos = new long[rules];
+            cacheHits = new long[rules];
+        }
+
+        private void add(Counts counts) {
+            for (int i = 0; i < evaluations.length; i++) {
+                evaluations[i] += counts.evaluations[i];
+                matches[i] += counts.matches[i];
+                nanos[i] += counts.nanos[i];
+                cacheHits[i] += counts.cacheHits[i];
+            }
+        }
+    }
+
+    /**
+     * Method to add the counts of a scrape
+     *
+     * @param patterns the rule patterns of the configuration scraped with
+     * @param counts the counts of the scrape, null if rule statistics are disabled
+     */
+    synchronized void add(List<String> patterns, Counts counts) {
+        if (counts == null) {
+            patterns = Collections.emptyList();
+        }
+        if (patterns != this.patterns) {
+            this.patterns = patterns;
+            patternHashes = new String[patterns.size()];
+            for (int i = 0; i < patternHashes.length; i++) {
+                patternHashes[i] = patternHash(patterns.get(i));
+            }
+            totals = new Counts(patterns.size());
+        }
+        if (counts != null) {
+            totals.add(counts);
+        }
+    }
+
+    /**
+     * Method to get the statistics as JSON
+     *
+     * @return a JSON object with a {@code rules} array, in configuration order
+     */
+    public String toJson() {
+        return toJson(Collections.singletonList(this));
+    }
+
+    /**
+     * Method to get the statistics of several targets as JSON.
+     *
+     * @param ruleStatistics the statistics of the targets
+     * @return a JSON object with a {@code rules} array, per target in configuration order, each
+     *     rule with the {@code labels} of its target if it has any
+     */
+    public static String toJson(List<RuleStatistics> ruleStatistics) {
+        StringBuilder json = new StringBuilder("{\"rules\":[");
+        boolean first = true;
+        for (RuleStatistics statistics : ruleStatistics) {
+            first = statistics.appendRules(json, first);
+        }
+        return json.append("]}").toString();
+    }
+
+    private synchronized boolean appendRules(StringBuilder json, boolean first) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('{');
+            if (!targetLabels.isEmpty()) {
+                json.append("\"labels\":{");
+                for (int j = 0; j < targetLabels.size(); j++) {
+                    if (j > 0) {
+                        json.append(',');
+                    }
+                    appendJsonString(json, targetLabels.getName(j));
+                    json.append(':');
+                    appendJsonString(json, targetLabels.getValue(j));
+                }
+                json.append("},");
+            }
+            json.append("\"rule\":").append(i);
+            json.append(",\"pattern_hash\":\"").append(patternHashes[i]).append('"');
+            json.append(",\"pattern\":");
+            appendJsonString(json, patterns.get(i));
+            json.append(",\"evaluations\":").append(totals.evaluations[i]);
+            json.append(",\"matches\":").append(totals.matches[i]);
+            json.append(",\"duration_seconds\":").append(totals.nanos[i] / 1e9);
+            json.append(",\"cache_hits\":").append(totals.cacheHits[i]);
+            json.append('}');
+        }
+        return first;
+    }
+
+    @Override
+    public synchronized MetricSnapshots collect() {
+        if (patterns.isEmpty()) {
+            return MetricSnapshots.of();
+        }
+
+        CounterSnapshot.Builder evaluations = CounterSnapshot.builder()
+                .name(EVALUATIONS)
+                .help("Number of times the pattern of a rule was evaluated.");
+        CounterSnapshot.Builder matches =
+                CounterSnapshot.builder().name(MATCHES).help("Number of times the pattern of a rule matched.");
+        CounterSnapshot.Builder durationSeconds = CounterSnapshot.builder()
+                .name(DURATION_SECONDS)
+                .help("Time spent evaluating the pattern of a rule, in seconds.")
+                .unit(Unit.SECONDS);
+        CounterSnapshot.Builder cacheHits = CounterSnapshot.builder()
+                .name(CACHE_HITS)
+                .help("Number of times the cached result of a rule was used instead of evaluating the rules.");
+        for (int i = 0; i < patterns.size(); i++) {
+            Labels labels = targetLabels.merge(Labels.of("rule", String.valueOf(i), "pattern_hash", patternHashes[i]));
+            evaluations.dataPoint(dataPoint(labels, totals.evaluations[i]));
+            matches.dataPoint(dataPoint(labels, totals.matches[i]));
+            durationSeconds.dataPoint(dataPoint(labels, totals.nanos[i] / 1e9));
+            cacheHits.dataPoint(dataPoint(labels, totals.cacheHits[i]));
+        }
+        return MetricSnapshots.of(evaluations.build(), matches.build(), durationSeconds.build(), cacheHits.build());
+    }
+
+    @Override
+    public List<String> getPrometheusNames() {
+        return Arrays.asList(EVALUATIONS, MATCHES, DURATION_SECONDS, CACHE_HITS);
+    }
+
+    /**
+     * Method to get the short hash identifying a rule pattern
+     *
+     * @param pattern the pattern, null for a rule without pattern
+     * @return the hash, as 8 hexadecimal digits
+     */
+    static String patternHash(String pattern) {
+        return String.format("%08x", pattern != null ? pattern.hashCode() : 0);
+    }
+
+    private static CounterSnapshot.CounterDataPointSnapshot dataPoint(Labels labels, double value) {
+        return CounterSnapshot.CounterDataPointSnapshot.builder()
+                .labels(labels)
+                .value(value)
+                .build();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.metrics.core.metrics.Histogram;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import javax.management.ObjectName;
+
+/**
+ * Collects the timings of a single scrape: the duration of each scrape phase and, optionally, the
+ * duration per MBean.
+ *
+ * <p>Only used by the thread running the scrape.
+ */
+class ScrapeStatistics {
+
+    /** The time spent on a single MBean. */
+    static class MBeanDuration {
+
+        final ObjectName objectName;
+        final long nanos;
+
+        MBeanDuration(ObjectName objectName, long nanos) {
+            this.objectName = objectName;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final Comparator<MBeanDuration> BY_NANOS = Comparator.comparingLong(d -> d.nanos);
+
+    private final Histogram mBeanDurationHistogram;
+    private final int slowestMBeansCount;
+    private final PriorityQueue<MBeanDuration> slowestMBeans;
+
+    long discoveryNanos;
+    long fetchNanos;
+    long matchNanos;
+    long convertNanos;
+
+    /**
+     * Constructor
+     *
+     * @param mBeanDurationHistogram histogram, labeled by domain, to observe the duration per MBean
+     *     in, or null
+     * @param slowestMBeansCount the number of slowest MBeans to keep track of, or 0
+     */
+    ScrapeStatistics(Histogram mBeanDurationHistogram, int slowestMBeansCount) {
+        this.mBeanDurationHistogram = mBeanDurationHistogram;
+        this.slowestMBeansCount = slowestMBeansCount;
+        this.slowestMBeans =
+                slowestMBeansCount > 0 ? new PriorityQueue<>(Math.min(slowestMBeansCount, 64) + 1, BY_NANOS) : null;
+    }
+
+    /**
+     * Records the time spent fetching and processing an MBean.
+     *
+     * @param objectName the MBean
+     * @param fetchNanos time spent getting the MBeanInfo and attribute values
+     * @param processNanos time spent passing the values to the receiver
+     */
+    void recordMBean(ObjectName objectName, long fetchNanos, long processNanos) {
+        this.matchNanos += processNanos;
+
+        long nanos = fetchNanos + processNanos;
+        if (mBeanDurationHistogram != null) {
+            mBeanDurationHistogram.labelValues(objectName.getDomain()).observe(nanos / 1e9);
+        }
+
+        if (slowestMBeans != null) {
+            if (slowestMBeans.size() < slowestMBeansCount) {
+                slowestMBeans.add(new MBeanDuration(objectName, nanos));
+            } else if (slowestMBeans.peek().nanos < nanos) {
+                slowestMBeans.poll();
+                slowestMBeans.add(new MBeanDuration(objectName, nanos));
+            }
+        }
+    }
+
+    /**
+     * Returns the slowest MBeans of the scrape, slowest first.
+     *
+     * @return the slowest MBeans
+     */
+    List<MBeanDuration> getSlowestMBeans() {
+        List<MBeanDuration> result = new ArrayList<>();
+        if (slowestMBeans != null) {
+            result.addAll(slowestMBeans);
+            result.sort(BY_NANOS.reversed());
+        }
+        return result;
+    }
+}
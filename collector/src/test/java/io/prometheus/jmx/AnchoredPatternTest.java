@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class AnchoredPatternTest {
+
+    private static final String[] INPUTS = {
+        "org.apache.activemq.artemis<broker=\"0.0.0.0\", component=addresses, address=\"q\"><>MessageCount: 5",
+        "org.apache.activemq.artemis<broker=\"0.0.0.0\"><>Uptime: 12",
+        "com.bea<ServerRuntime=s1, Name=n, Type=JDBCRuntime><>ActiveConnections: 1",
+        "com.bea<ServerRuntime=s1, Name=n, a=b, Type=JDBCRuntime><>ActiveConnections: <cache>",
+        "java.lang<type=Memory><HeapMemoryUsage>used: 123",
+        "",
+    };
+
+    private static final String[] TEMPLATES = {"$1", "$2_$3", "$0", "x$0y$1", "constant", "$4"};
+
+    @Test
+    public void testAnchoredPatterns() {
+        String[] patterns = {
+            "^org.apache.activemq.artemis<broker=\"([^\"]*)\"><>([^:]*):\\s(.*)",
+            "^org.apache.activemq.artemis<broker=\"([^\"]*)\",\\s*component=addresses,"
+                    + "\\s*address=\"([^\"]*)\"><>([^:]*)",
+            "^com.bea<ServerRuntime=(.+), Name=(.+), Type=(.+)Runtime><>(.+):",
+            "^com.bea<ServerRuntime=(.+), Name=(.+), (.+)Runtime=(.*), Type=(.+)Runtime><>(.+):",
+            "^(java|com)\\.(lang|bea)<(.*?)>(.*)",
+            "^java.lang<type=Memory><HeapMemoryUsage>(used|max)$",
+            "^$",
+            "^",
+        };
+        for (String pattern : patterns) {
+            assertThat(AnchoredPattern.compile(pattern)).as(pattern).isNotNull();
+            for (String input : INPUTS) {
+                assertMatchesLikeWrapped(pattern, input);
+            }
+        }
+    }
+
+    @Test
+    public void testNotAnchoredPatterns() {
+        String[] patterns = {
+            null,
+            "java.lang<type=Memory>",
+            "^java.lang|com.bea",
+            "^?java.lang",
+            "^*java.lang",
+            "(^java.lang)",
+            "^java.lang(",
+            "\\^java.lang",
+        };
+        for (String pattern : patterns) {
+            assertThat(AnchoredPattern.compile(pattern))
+                    .as(String.valueOf(pattern))
+                    .isNull();
+        }
+    }
+
+    private static void assertMatchesLikeWrapped(String pattern, String input) {
+        Pattern wrapped = Pattern.compile("^.*(?:" + pattern + ").*$");
+        Matcher expected = wrapped.matcher(input);
+        Matcher actual = AnchoredPattern.compile(pattern).matcher(input);
+
+        boolean matches = expected.matches();
+        assertThat(actual.lookingAt()).as(pattern + " " + input).isEqualTo(matches);
+        if (!matches) {
+            return;
+        }
+        assertThat(actual.groupCount()).isEqualTo(expected.groupCount());
+        for (int group = 1; group <= expected.groupCount(); group++) {
+            assertThat(actual.group(group)).as(pattern + " " + input).isEqualTo(expected.group(group));
+        }
+        for (String template : TEMPLATES) {
+            ReplacementTemplate replacementTemplate = ReplacementTemplate.compile(template, wrapped);
+            if (replacementTemplate.isCompiled()) {
+                StringBuilder builder = new StringBuilder();
+                assertThat(replacementTemplate.expand(actual, input, builder))
+                        .as(pattern + " " + input + " " + template)
+                        .isEqualTo(wrapped.matcher(input).replaceAll(template));
+            }
+        }
+    }
+}
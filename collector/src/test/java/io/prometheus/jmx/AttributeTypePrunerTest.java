@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenMBeanAttributeInfoSupport;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularType;
+import org.junit.jupiter.api.Test;
+
+public class AttributeTypePrunerTest {
+
+    @Test
+    public void testNumericAndBooleanTypesAreRead() {
+        assertThat(AttributeTypePruner.canProduceSample(attribute("int"), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(attribute("java.lang.Long"), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(attribute("boolean"), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(attribute("java.util.Date"), false))
+                .isTrue();
+    }
+
+    @Test
+    public void testUnknownTypesAreRead() {
+        assertThat(AttributeTypePruner.canProduceSample(attribute("java.lang.Object"), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(attribute("com.organisation.State"), false))
+                .isTrue();
+    }
+
+    @Test
+    public void testArrayTypesArePruned() {
+        assertThat(AttributeTypePruner.canProduceSample(attribute("[Ljava.lang.String;"), true))
+                .isFalse();
+        assertThat(AttributeTypePruner.canProduceSample(attribute("[J"), true)).isFalse();
+    }
+
+    @Test
+    public void testStringTypesAreOnlyReadIfStringValuesAreExported() {
+        assertThat(AttributeTypePruner.canProduceSample(attribute("java.lang.String"), false))
+                .isFalse();
+        assertThat(AttributeTypePruner.canProduceSample(attribute("java.lang.String"), true))
+                .isTrue();
+    }
+
+    @Test
+    public void testObjectNameTypesArePruned() {
+        assertThat(AttributeTypePruner.canProduceSample(attribute("javax.management.ObjectName"), true))
+                .isFalse();
+    }
+
+    @Test
+    public void testOpenTypesAreInspected() throws Exception {
+        String[] names = {"key", "value"};
+        OpenType<?>[] strings = {SimpleType.STRING, SimpleType.STRING};
+        OpenType<?>[] stringAndNumber = {SimpleType.STRING, SimpleType.LONG};
+        CompositeType stringsOnly = new CompositeType("strings", "strings", names, names, strings);
+        CompositeType withNumber = new CompositeType("usage", "usage", names, names, stringAndNumber);
+        TabularType keyedNumbers = new TabularType("keyed", "keyed", withNumber, new String[] {"key"});
+        TabularType keyedStrings = new TabularType("props", "props", stringsOnly, new String[] {"key"});
+
+        assertThat(AttributeTypePruner.canProduceSample(openAttribute(withNumber), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(openAttribute(stringsOnly), false))
+                .isFalse();
+        assertThat(AttributeTypePruner.canProduceSample(openAttribute(keyedNumbers), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(openAttribute(keyedStrings), false))
+                .isFalse();
+        assertThat(AttributeTypePruner.canProduceSample(openAttribute(keyedStrings), true))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(openAttribute(new ArrayType<>(1, withNumber)), true))
+                .isFalse();
+    }
+
+    @Test
+    public void testMXBeanAttributesAreInspected() throws Exception {
+        MBeanInfo mBeanInfo =
+                ManagementFactory.getPlatformMBeanServer().getMBeanInfo(new ObjectName("java.lang:type=Memory"));
+        Map<String, MBeanAttributeInfo> attributes = new HashMap<>();
+        for (MBeanAttributeInfo mBeanAttributeInfo : mBeanInfo.getAttributes()) {
+            attributes.put(mBeanAttributeInfo.getName(), mBeanAttributeInfo);
+        }
+
+        assertThat(AttributeTypePruner.canProduceSample(attributes.get("HeapMemoryUsage"), false))
+                .isTrue();
+        assertThat(AttributeTypePruner.canProduceSample(attributes.get("ObjectName"), true))
+                .isFalse();
+    }
+
+    @Test
+    public void testExpensiveRuntimeAttributesAreIgnored() throws Exception {
+        ObjectName runtime = new ObjectName("java.lang:type=Runtime");
+
+        assertThat(AttributeTypePruner.isIgnored(runtime, "SystemProperties")).isTrue();
+        assertThat(AttributeTypePruner.isIgnored(runtime, "ClassPath")).isTrue();
+        assertThat(AttributeTypePruner.isIgnored(runtime, "Uptime")).isFalse();
+        ObjectName flightRecorder = new ObjectName("jdk.management.jfr:type=FlightRecorder");
+        assertThat(AttributeTypePruner.isIgnored(flightRecorder, "Recordings")).isTrue();
+    }
+
+    private static MBeanAttributeInfo attribute(String type) {
+        return new MBeanAttributeInfo("Value", type, "value", true, false, false);
+    }
+
+    private static MBeanAttributeInfo openAttribute(OpenType<?> openType) {
+        return new OpenMBeanAttributeInfoSupport("Value", "value", openType, true, false, false);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class BudgetedCharSequenceTest {
+
+    private static final String INPUT = "kafka.server<type=BrokerTopicMetrics, name=BytesInPerSec><>Count: 5";
+
+    @Test
+    public void testMatchWithinBudget() {
+        BudgetedCharSequence budgetedCharSequence = new BudgetedCharSequence();
+        budgetedCharSequence.reset(INPUT, 10_000);
+        Matcher matcher = Pattern.compile("^.*(?:kafka.(\\w+)<type=(.+), name=(.+)PerSec><>Count).*$")
+                .matcher(budgetedCharSequence);
+
+        assertThat(matcher.matches()).isTrue();
+        assertThat(matcher.group(3)).isEqualTo("BytesIn");
+        assertThat(budgetedCharSequence.toString()).isSameAs(INPUT);
+    }
+
+    @Test
+    public void testBacktrackingMatchIsAborted() {
+        BudgetedCharSequence budgetedCharSequence = new BudgetedCharSequence();
+        budgetedCharSequence.reset(INPUT, 10_000);
+        Matcher matcher = Pattern.compile("^.*(?:(.*.*)*#).*$").matcher(budgetedCharSequence);
+
+        assertThatThrownBy(matcher::matches).isInstanceOf(BudgetedCharSequence.BudgetExceededException.class);
+
+        // The budget is per match
+        budgetedCharSequence.reset(INPUT, 10_000);
+        matcher.reset(budgetedCharSequence);
+        matcher.usePattern(Pattern.compile("^.*(?:Count).*$"));
+        assertThat(matcher.matches()).isTrue();
+    }
+
+    @Test
+    public void testUnlimit() {
+        BudgetedCharSequence budgetedCharSequence = new BudgetedCharSequence();
+        budgetedCharSequence.reset(INPUT, 1);
+        budgetedCharSequence.unlimit();
+        Matcher matcher = Pattern.compile("^.*(?:PerSec).*$").matcher(budgetedCharSequence);
+
+        assertThat(matcher.matches()).isTrue();
+        assertThat(matcher.replaceAll("$0")).isEqualTo(INPUT);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class DomainRuleIndexTest {
+
+    @Test
+    public void testRulesWithoutLiteralDomainApplyToEveryDomain() {
+        assertThat(create(".*", null, "(java.lang|kafka.server)<")).isNull();
+        assertThat(create("kafka.server<type=(.+)>", "java.lang<")).isNull();
+    }
+
+    @Test
+    public void testRuleWithoutCaretAppliesToDomainEndingWithItsLiteral() {
+        List<String> patterns = Arrays.asList("server<type=(.+)><>Value", "^java.lang<type=Memory>");
+        List<JmxCollector.Rule> rules = rules(patterns.size());
+        DomainRuleIndex domainRuleIndex = DomainRuleIndex.create(rules, patterns);
+
+        assertThat(domainRuleIndex.getRules("kafka.server")).containsExactly(rules.get(0));
+        assertThat(domainRuleIndex.getRules("java.lang")).containsExactly(rules.get(0), rules.get(1));
+    }
+
+    @Test
+    public void testRulesPerDomainKeepConfigurationOrder() {
+        List<String> patterns = Arrays.asList(
+                "^kafka.server<type=(.+)><>Value", ".*Count", "^java.lang<type=Memory>", "^kafka\\.server<>", null);
+        List<JmxCollector.Rule> rules = rules(patterns.size());
+        DomainRuleIndex domainRuleIndex = DomainRuleIndex.create(rules, patterns);
+
+        assertThat(domainRuleIndex.getRules("kafka.server"))
+                .containsExactly(rules.get(0), rules.get(1), rules.get(3), rules.get(4));
+        assertThat(domainRuleIndex.getRules("java.lang")).containsExactly(rules.get(1), rules.get(2), rules.get(4));
+        assertThat(domainRuleIndex.getRules("java.language")).containsExactly(rules.get(1), rules.get(4));
+        assertThat(domainRuleIndex.getRules("kafkaXserver")).containsExactly(rules.get(0), rules.get(1), rules.get(4));
+    }
+
+    private static DomainRuleIndex create(String... patterns) {
+        return DomainRuleIndex.create(rules(patterns.length), Arrays.asList(patterns));
+    }
+
+    private static List<JmxCollector.Rule> rules(int count) {
+        List<JmxCollector.Rule> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rules.add(new JmxCollector.Rule());
+        }
+        return rules;
+    }
+}
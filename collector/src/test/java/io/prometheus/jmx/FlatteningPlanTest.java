@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularType;
+import org.junit.jupiter.api.Test;
+
+public class FlatteningPlanTest {
+
+    @Test
+    public void testCompositeTypeItemsAreSorted() throws Exception {
+        FlatteningPlan plan = FlatteningPlan.of(compositeType());
+
+        assertThat(plan.itemNames).containsExactly("count", "key", "name");
+        assertThat(plan.itemTypeNames).containsExactly("java.lang.Long", "java.lang.String", "java.lang.String");
+        assertThat(plan.indexNames).isEmpty();
+    }
+
+    @Test
+    public void testTabularTypeIndexIsNotAnItem() throws Exception {
+        FlatteningPlan plan =
+                FlatteningPlan.of(new TabularType("table", "table", compositeType(), new String[] {"key"}));
+
+        assertThat(plan.itemNames).containsExactly("count", "name");
+        assertThat(plan.itemTypeNames).containsExactly("java.lang.Long", "java.lang.String");
+        assertThat(plan.indexNames).containsExactly("key");
+    }
+
+    @Test
+    public void testEqualTypesSharePlan() throws Exception {
+        assertThat(FlatteningPlan.of(compositeType())).isSameAs(FlatteningPlan.of(compositeType()));
+    }
+
+    private static CompositeType compositeType() throws Exception {
+        return new CompositeType(
+                "row",
+                "row",
+                new String[] {"name", "key", "count"},
+                new String[] {"name", "key", "count"},
+                new OpenType<?>[] {SimpleType.STRING, SimpleType.STRING, SimpleType.LONG});
+    }
+}
@@ -24,6 +24,8 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.logging.LogManager;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -262,6 +264,26 @@ public class JmxCollectorConstructorTest {
             JmxCollector.SslProperties props = new JmxCollector.SslProperties(false);
             assertThat(props.enabled).isFalse();
         }
+
+        @Test
+        public void testSslPropertiesEqualByValue() {
+            JmxCollector.SslProperties props = sslProperties("changeit");
+            JmxCollector.SslProperties same = sslProperties("changeit");
+            assertThat(props).isEqualTo(same);
+            assertThat(props.hashCode()).isEqualTo(same.hashCode());
+            assertThat(props).isNotEqualTo(sslProperties("other"));
+        }
+
+        private JmxCollector.SslProperties sslProperties(String password) {
+            JmxCollector.KeyStoreProperties keyStoreProperties = new JmxCollector.KeyStoreProperties();
+            keyStoreProperties.path = Paths.get("keystore.pkcs12");
+            keyStoreProperties.type = "PKCS12";
+            keyStoreProperties.password = password.toCharArray();
+            JmxCollector.SslProperties props = new JmxCollector.SslProperties(true);
+            props.keyStoreProperties = keyStoreProperties;
+            props.protocols = Arrays.asList("TLSv1.3");
+            return props;
+        }
     }
 
     @Nested
@@ -23,9 +23,19 @@ import static org.assertj.core.api.AssertionsForClassTypes.within;
 
 import io.prometheus.metrics.model.registry.PrometheusRegistry;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.logging.LogManager;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -82,6 +92,58 @@ public class JmxCollectorTest {
         assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
     }
 
+    @Test
+    public void testMatchNameVariantsPerRule() throws Exception {
+        new JmxCollector(
+                        "\n---\nrules:\n- pattern: `^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replace_block_op_min_time: 200`\n  name: snake_cached\n  attrNameSnakeCase: true\n  cache: true\n- pattern: `^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime: <cache>`\n  name: cached\n  attrNameSnakeCase: true\n- pattern: `^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replace_block_op_min_time: 200`\n  name: snake\n  attrNameSnakeCase: true"
+                                .replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(getSampleValue("snake_cached", new String[] {}, new String[] {}))
+                .isNull();
+        assertThat(getSampleValue("cached", new String[] {}, new String[] {})).isNull();
+        assertThat(getSampleValue("snake", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+    }
+
+    @Test
+    public void testHelpSharedPerMetric() throws Exception {
+        new JmxCollector(
+                        "\n---\nrules:\n- pattern: `^java.lang<type=Memory><HeapMemoryUsage>([a-z]+)`\n  name: heap\n  help: heap $1\n  labels:\n    area: $1\n- pattern: `^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime`\n  name: foo"
+                                .replace('`', '"'))
+                .register(prometheusRegistry);
+        String help = getHelp("heap");
+        assertThat(help).startsWith("heap ");
+        assertThat(getHelp("heap")).isEqualTo(help);
+        assertThat(getHelp("foo"))
+                .isEqualTo("Attribute exposed for management"
+                        + " hadoop:name=DataNodeActivity-ams-hdd001-50010,type=null,attribute=replaceBlockOpMinTime");
+    }
+
+    @Test
+    public void testHelpChosenPerScrape() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName first = new ObjectName("io.prometheus.jmx.test.help:type=first");
+        ObjectName second = new ObjectName("io.prometheus.jmx.test.help:type=second");
+        mBeanServer.registerMBean(new SleepingValue(1), first);
+        try {
+            new JmxCollector("\n---\nrules:\n- pattern: `^io.prometheus.jmx.test.help<type=([a-z]+)><>Value`\n"
+                                    .replace('`', '"')
+                            + "  name: help_value\n  labels:\n    type: $1")
+                    .register(prometheusRegistry);
+            assertThat(getHelp("help_value")).contains("type=first");
+
+            mBeanServer.unregisterMBean(first);
+            mBeanServer.registerMBean(new SleepingValue(2), second);
+            assertThat(getHelp("help_value")).contains("type=second");
+        } finally {
+            if (mBeanServer.isRegistered(first)) {
+                mBeanServer.unregisterMBean(first);
+            }
+            if (mBeanServer.isRegistered(second)) {
+                mBeanServer.unregisterMBean(second);
+            }
+        }
+    }
+
     @Test
     public void testLabelsAreSet() throws Exception {
         new JmxCollector(
@@ -130,6 +192,15 @@ public class JmxCollectorTest {
                 .isCloseTo(200, within(0.001));
     }
 
+    @Test
+    public void testPatternMatchingTheEndOfTheDomain() throws Exception {
+        new JmxCollector(
+                        "\n---\nrules:\n- pattern: `oop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime:`\n  name: foo"
+                                .replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+    }
+
     @Test
     public void testNameAndLabelSanitized() throws Exception {
         new JmxCollector(
@@ -544,6 +615,84 @@ public class JmxCollectorTest {
         assertThat(actual).isEqualTo(Camel.EXPECTED_SECONDS);
     }
 
+    @Test
+    public void testRulesCachedAutomatically() throws Exception {
+        new JmxCollector(
+                        "\n---\nrules:\n- pattern: `^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime`\n  name: foo"
+                                .replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue("jmx_scrape_cached_beans", new String[] {}, new String[] {}))
+                .isGreaterThan(0.0);
+    }
+
+    @Test
+    public void testRulesNotCachedAutomaticallyWithCacheFalse() throws Exception {
+        new JmxCollector(
+                        "\n---\nrules:\n- pattern: `^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime`\n  name: foo\n  cache: false"
+                                .replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue("jmx_scrape_cached_beans", new String[] {}, new String[] {}))
+                .isEqualTo(0.0);
+    }
+
+    @Test
+    public void testRuleStatistics() throws Exception {
+        String pattern = "^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime";
+        JmxCollector jc = new JmxCollector(("\n---\nruleStatistics: true\nrules:\n- pattern: `" + pattern
+                                + "`\n  name: foo\n- pattern: `^never<>matches`\n  name: bar")
+                        .replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(jc.isRuleStatisticsEnabled()).isTrue();
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+
+        String[] labelNames = {"rule", "pattern_hash"};
+        String[] foo = {"0", RuleStatistics.patternHash(pattern)};
+        String[] bar = {"1", RuleStatistics.patternHash("^never<>matches")};
+        assertThat(getSampleValue("jmx_rule_matches", labelNames, foo)).isEqualTo(1.0);
+        assertThat(getSampleValue("jmx_rule_evaluations", labelNames, foo)).isGreaterThanOrEqualTo(1.0);
+        assertThat(getSampleValue("jmx_rule_matches", labelNames, bar)).isEqualTo(0.0);
+
+        // The second scrape uses the cached result of the first rule
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue("jmx_rule_cache_hits", labelNames, foo)).isGreaterThanOrEqualTo(1.0);
+    }
+
+    @Test
+    public void testRuleMatchBudget() throws Exception {
+        String pattern = "^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime";
+        new JmxCollector(("\n---\nruleMatchBudget: 100000\nruleMatchBudgetExceededLimit: 1\nrules:\n"
+                                + "- pattern: `^hadoop<(.*.*)*#`\n  name: bad\n"
+                                + "- pattern: `" + pattern + "`\n  name: foo")
+                        .replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue(
+                        "jmx_rule_match_budget_exceeded",
+                        new String[] {"rule", "pattern_hash"},
+                        new String[] {"0", RuleStatistics.patternHash("^hadoop<(.*.*)*#")}))
+                .isEqualTo(1.0);
+        assertThat(getSampleValue("jmx_rule_match_budget_disabled_rules", new String[] {}, new String[] {}))
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void testRuleStatisticsDisabledByDefault() throws Exception {
+        String pattern = "^hadoop<service=DataNode, name=DataNodeActivity-ams-hdd001-50010><>replaceBlockOpMinTime";
+        JmxCollector jc = new JmxCollector(
+                        ("\n---\nrules:\n- pattern: `" + pattern + "`\n  name: foo").replace('`', '"'))
+                .register(prometheusRegistry);
+        assertThat(jc.isRuleStatisticsEnabled()).isFalse();
+        assertThat(getSampleValue("foo", new String[] {}, new String[] {})).isCloseTo(200, within(0.001));
+        assertThat(getSampleValue("jmx_rule_matches", new String[] {"rule", "pattern_hash"}, new String[] {
+                    "0", RuleStatistics.patternHash(pattern)
+                }))
+                .isNull();
+    }
+
     /*
     @Test
     public void testCachedBeansDisabled() throws Exception {
@@ -788,6 +937,14 @@ public class JmxCollectorTest {
         return prometheusRegistryUtils.getSampleValue(name, labelNames, labelValues);
     }
 
+    private String getHelp(String name) {
+        return prometheusRegistry.scrape(name::equals).stream()
+                .filter(metricSnapshot -> metricSnapshot.getMetadata().getName().equals(name))
+                .map(metricSnapshot -> metricSnapshot.getMetadata().getHelp())
+                .findFirst()
+                .orElse(null);
+    }
+
     @Test
     public void scrapeTimeoutSecondsNegativeRejected() {
         assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\nscrapeTimeoutSeconds: 0"));
@@ -807,6 +964,210 @@ public class JmxCollectorTest {
                 .isNotNull();
     }
 
+    @Test
+    public void scrapeThreadsZeroRejected() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\nscrapeThreads: 0"));
+    }
+
+    @Test
+    public void scrapeThreadsMultipleCollectsSameMetrics() throws Exception {
+        new JmxCollector("---\nscrapeThreads: 4").register(prometheusRegistry);
+        assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                .isNotNull();
+        assertThat(getSampleValue("org_apache_cassandra_metrics_Compaction_Value", new String[] {"name"}, new String[] {
+                    "CompletedTasks"
+                }))
+                .isNotNull();
+    }
+
+    @Test
+    public void mbeanInventoryResyncSecondsZeroRejected() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\nmbeanInventoryResyncSeconds: 0"));
+    }
+
+    @Test
+    public void mbeanInventoryCollectsSameMetrics() throws Exception {
+        new JmxCollector("---\nmbeanInventoryResyncSeconds: 60").register(prometheusRegistry);
+        for (int i = 0; i < 2; i++) {
+            assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                    .isNotNull();
+            assertThat(getSampleValue(
+                            "org_apache_cassandra_metrics_Compaction_Value",
+                            new String[] {"name"},
+                            new String[] {"CompletedTasks"}))
+                    .isNotNull();
+        }
+    }
+
+    @Test
+    public void mbeanInfoCacheCollectsSameMetrics() throws Exception {
+        new JmxCollector("---\nmbeanInfoCache: true\nmbeanInventoryResyncSeconds: 3600").register(prometheusRegistry);
+        for (int i = 0; i < 2; i++) {
+            assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                    .isNotNull();
+            assertThat(getSampleValue(
+                            "org_apache_cassandra_metrics_Compaction_Value",
+                            new String[] {"name"},
+                            new String[] {"CompletedTasks"}))
+                    .isNotNull();
+        }
+    }
+
+    @Test
+    public void mbeanInfoCacheWithoutMBeanInventoryRejected() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\nmbeanInfoCache: true"));
+    }
+
+    @Test
+    public void objectNameRefreshSecondsZeroRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new JmxCollector("---\nobjectNameRefreshSeconds:\n  \"java.lang:type=Runtime\": 0"));
+    }
+
+    @Test
+    public void pidZeroRejected() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\npid: 0"));
+    }
+
+    @Test
+    public void pidAndJmxUrlRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new JmxCollector("---\npid: 1234\nhostPort: localhost:9999"));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new JmxCollector("---\npid: 1234\nattachMainClass: com.example.Main"));
+    }
+
+    @Test
+    public void objectNameRefreshSecondsCollectsSameMetrics() throws Exception {
+        new JmxCollector("---\nobjectNameRefreshSeconds:\n  \"java.lang:*\": 3600").register(prometheusRegistry);
+        for (int i = 0; i < 2; i++) {
+            assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                    .isNotNull();
+        }
+    }
+
+    @Test
+    public void scrapeIntervalSecondsZeroRejected() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\nscrapeIntervalSeconds: 0"));
+    }
+
+    @Test
+    public void scrapeIntervalSecondsServesScheduledSnapshots() throws Exception {
+        new JmxCollector("---\nscrapeIntervalSeconds: 3600").register(prometheusRegistry);
+        assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                .isNotNull();
+
+        // No scrape ran in between, so the scrape duration is unchanged
+        Double duration = getSampleValue("jmx_scrape_duration_seconds", new String[] {}, new String[] {});
+        assertThat(duration).isNotNull();
+        assertThat(getSampleValue("jmx_scrape_duration_seconds", new String[] {}, new String[] {}))
+                .isEqualTo(duration);
+    }
+
+    @Test
+    public void scrapeIntervalSecondsKeepsSnapshotsWhenTargetIsDown(@TempDir Path tempDir) throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        Registry registry = LocateRegistry.createRegistry(port);
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:" + port + "/jmxrmi");
+        JMXConnectorServer connectorServer =
+                JMXConnectorServerFactory.newJMXConnectorServer(url, null, ManagementFactory.getPlatformMBeanServer());
+        connectorServer.start();
+
+        File configFile = tempDir.resolve("config.yml").toFile();
+        Files.write(
+                configFile.toPath(),
+                ("---\njmxUrl: " + url + "\nscrapeIntervalSeconds: 1\nincludeObjectNames: [`java.lang:*`]")
+                        .replace('`', '"')
+                        .getBytes());
+        JmxCollector jmxCollector =
+                new JmxCollector(configFile, JmxCollector.Mode.STANDALONE).register(prometheusRegistry);
+        try {
+            assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                    .isNotNull();
+
+            connectorServer.stop();
+            UnicastRemoteObject.unexportObject(registry, true);
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (!Double.valueOf(1).equals(getSampleValue("jmx_scrape_error", new String[] {}, new String[] {}))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertThat(getSampleValue("jmx_scrape_error", new String[] {}, new String[] {}))
+                    .isEqualTo(1.0);
+            assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                    .isNotNull();
+        } finally {
+            jmxCollector.close();
+        }
+    }
+
+    @Test
+    public void scrapePhaseDurationsExported() throws Exception {
+        new JmxCollector("---").register(prometheusRegistry);
+        assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                .isNotNull();
+
+        for (String phase : new String[] {"discovery", "fetch", "match", "convert"}) {
+            assertThat(getSampleValue(
+                            "jmx_scrape_phase_duration_seconds", new String[] {"phase"}, new String[] {phase}))
+                    .isNotNull();
+        }
+    }
+
+    @Test
+    public void slowestMBeansExported() throws Exception {
+        new JmxCollector("---\nslowestMBeansCount: 100000").register(prometheusRegistry);
+        assertThat(getSampleValue("java_lang_OperatingSystem_ProcessCpuTime", new String[] {}, new String[] {}))
+                .isNotNull();
+
+        assertThat(getSampleValue(
+                        "jmx_scrape_slowest_mbean_duration_seconds",
+                        new String[] {"object_name"},
+                        new String[] {"java.lang:type=OperatingSystem"}))
+                .isNotNull();
+    }
+
+    @Test
+    public void slowestMBeansCountNegativeRejected() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JmxCollector("---\nslowestMBeansCount: -1"));
+    }
+
+    @Test
+    public void partialScrapeOnTimeoutServesStaleBeansNotReached() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName fastName = new ObjectName("io.prometheus.jmx.test.partial:type=fast");
+        ObjectName slowName = new ObjectName("io.prometheus.jmx.test.partial:type=slow");
+        SleepingValue slow = new SleepingValue(2);
+        mBeanServer.registerMBean(new SleepingValue(1), fastName);
+        mBeanServer.registerMBean(slow, slowName);
+        try {
+            new JmxCollector("---\nscrapeTimeoutSeconds: 1\npartialScrapeOnTimeout: true\n"
+                            + "includeObjectNames: [\"io.prometheus.jmx.test.partial:*\"]")
+                    .register(prometheusRegistry);
+            assertThat(getSampleValue("io_prometheus_jmx_test_partial_slow_Value", new String[] {}, new String[] {}))
+                    .isCloseTo(2, within(0.001));
+
+            slow.value = 20;
+            slow.sleepMillis = 2500;
+
+            // The slow bean times out and is served from the previous scrape
+            assertThat(getSampleValue("io_prometheus_jmx_test_partial_slow_Value", new String[] {}, new String[] {}))
+                    .isCloseTo(2, within(0.001));
+            assertThat(getSampleValue("io_prometheus_jmx_test_partial_fast_Value", new String[] {}, new String[] {}))
+                    .isCloseTo(1, within(0.001));
+            assertThat(getSampleValue("jmx_scrape_stale_beans", new String[] {}, new String[] {}))
+                    .isGreaterThanOrEqualTo(1);
+        } finally {
+            slow.sleepMillis = 0;
+            mBeanServer.unregisterMBean(fastName);
+            mBeanServer.unregisterMBean(slowName);
+        }
+    }
+
     @Test
     public void scrapeTimeoutCounterRegistered() throws Exception {
         new JmxCollector("---\nscrapeTimeoutSeconds: 60").register(prometheusRegistry);
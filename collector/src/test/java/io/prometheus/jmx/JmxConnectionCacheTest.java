@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.security.auth.Subject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class JmxConnectionCacheTest {
+
+    private JmxConnectionCache cache;
+    private TestConnectionFactory factory;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new JmxConnectionCache();
+        factory = new TestConnectionFactory();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        JMXConnector first = cache.acquire("target", null, factory);
+        cache.release(first, false, null);
+        JMXConnector second = cache.acquire("target", null, factory);
+        cache.release(second, false, null);
+
+        assertThat(second).isSameAs(first);
+        assertThat(factory.connectors).hasSize(1);
+        assertThat(factory.closedCount).isZero();
+    }
+
+    @Test
+    public void testZeroMaxAgeClosesAfterEveryScrape() throws Exception {
+        cache.release(cache.acquire("target", 0, factory), false, 0);
+        cache.release(cache.acquire("target", 0, factory), false, 0);
+
+        assertThat(factory.connectors).hasSize(2);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+        assertThat(factory.connectors.get(1).closed).isTrue();
+        assertThat(factory.closedCount).isEqualTo(2);
+    }
+
+    @Test
+    public void testExpiredConnectionIsReplaced() throws Exception {
+        cache.release(cache.acquire("target", 1, factory), false, 1);
+        Thread.sleep(1100);
+        cache.acquire("target", 1, factory);
+
+        assertThat(factory.connectors).hasSize(2);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+    }
+
+    @Test
+    public void testFailedScrapeClosesConnection() throws Exception {
+        cache.release(cache.acquire("target", null, factory), true, null);
+
+        assertThat(factory.connectors.get(0).closed).isTrue();
+        assertThat(factory.closedCount).isEqualTo(1);
+
+        cache.acquire("target", null, factory);
+        assertThat(factory.connectors).hasSize(2);
+    }
+
+    @Test
+    public void testFailedConnectionNotificationTriggersReconnect() throws Exception {
+        cache.release(cache.acquire("target", null, factory), false, null);
+        factory.connectors.get(0).fail();
+        cache.acquire("target", null, factory);
+
+        assertThat(factory.connectors).hasSize(2);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+    }
+
+    @Test
+    public void testDeadConnectionIsReplacedAfterFailedScrape() throws Exception {
+        cache.release(cache.acquire("target", null, factory), false, null);
+        factory.connectors.get(0).dead = true;
+
+        // Not probed before it is reused
+        JMXConnector dead = cache.acquire("target", null, factory);
+        assertThat(dead).isSameAs(factory.connectors.get(0));
+        cache.release(dead, true, null);
+
+        cache.acquire("target", null, factory);
+        assertThat(factory.connectors).hasSize(2);
+    }
+
+    @Test
+    public void testChangedTargetTriggersReconnect() throws Exception {
+        cache.release(cache.acquire("target", null, factory), false, null);
+        cache.acquire("other", null, factory);
+
+        assertThat(factory.connectors).hasSize(2);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+    }
+
+    @Test
+    public void testFailedScrapeKeepsConnectionOfConcurrentScrape() throws Exception {
+        JMXConnector first = cache.acquire("target", null, factory);
+        JMXConnector second = cache.acquire("target", null, factory);
+        assertThat(second).isSameAs(first);
+
+        cache.release(first, true, null);
+        assertThat(factory.connectors.get(0).closed).isFalse();
+
+        // The failed connection is not handed out anymore
+        JMXConnector third = cache.acquire("target", null, factory);
+        assertThat(third).isNotSameAs(first);
+
+        cache.release(second, false, null);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+        assertThat(factory.closedCount).isEqualTo(1);
+
+        cache.release(third, false, null);
+        assertThat(factory.connectors.get(1).closed).isFalse();
+    }
+
+    @Test
+    public void testExpiredConnectionInUseIsClosedOnRelease() throws Exception {
+        JMXConnector first = cache.acquire("target", 1, factory);
+        Thread.sleep(1100);
+        JMXConnector second = cache.acquire("target", 1, factory);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(factory.connectors.get(0).closed).isFalse();
+
+        cache.release(first, false, 1);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+        assertThat(factory.connectors.get(1).closed).isFalse();
+    }
+
+    @Test
+    public void testCloseWaitsForScrapeUsingConnection() throws Exception {
+        JMXConnector connector = cache.acquire("target", null, factory);
+        cache.close();
+        assertThat(factory.connectors.get(0).closed).isFalse();
+
+        cache.release(connector, false, null);
+        assertThat(factory.connectors.get(0).closed).isTrue();
+        assertThat(factory.closedCount).isEqualTo(1);
+    }
+
+    private static class TestConnectionFactory implements JmxConnectionCache.ConnectionFactory {
+
+        final List<TestJmxConnector> connectors = new ArrayList<>();
+        int closedCount;
+
+        @Override
+        public JMXConnector connect() {
+            TestJmxConnector connector = new TestJmxConnector();
+            connectors.add(connector);
+            return connector;
+        }
+
+        @Override
+        public void closed() {
+            closedCount++;
+        }
+    }
+
+    private static class TestJmxConnector implements JMXConnector {
+
+        private final NotificationBroadcasterSupport broadcaster = new NotificationBroadcasterSupport();
+        boolean closed;
+        boolean dead;
+
+        void fail() {
+            broadcaster.sendNotification(
+                    new JMXConnectionNotification(JMXConnectionNotification.FAILED, this, "test", 1, "failed", null));
+        }
+
+        @Override
+        public void connect() {
+            // Intentionally empty
+        }
+
+        @Override
+        public void connect(Map<String, ?> env) {
+            // Intentionally empty
+        }
+
+        @Override
+        public MBeanServerConnection getMBeanServerConnection() throws IOException {
+            if (closed || dead) {
+                throw new IOException("connection is gone");
+            }
+            return ManagementFactory.getPlatformMBeanServer();
+        }
+
+        @Override
+        public MBeanServerConnection getMBeanServerConnection(Subject delegationSubject) throws IOException {
+            return getMBeanServerConnection();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void addConnectionNotificationListener(
+                NotificationListener listener, NotificationFilter filter, Object handback) {
+            broadcaster.addNotificationListener(listener, filter, handback);
+        }
+
+        @Override
+        public void removeConnectionNotificationListener(NotificationListener listener)
+                throws ListenerNotFoundException {
+            broadcaster.removeNotificationListener(listener);
+        }
+
+        @Override
+        public void removeConnectionNotificationListener(NotificationListener l, NotificationFilter f, Object handback)
+                throws ListenerNotFoundException {
+            broadcaster.removeNotificationListener(l, f, handback);
+        }
+
+        @Override
+        public String getConnectionId() {
+            return "test";
+        }
+    }
+}
@@ -34,8 +34,14 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.management.Attribute;
 import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import org.junit.jupiter.api.BeforeEach;
@@ -115,11 +121,12 @@ public class JmxScraperTest {
                 String attrType,
                 String attrDescription,
                 Object value) {
+            // The scraper reuses beanProperties and attrKeys for other values
             recordedBeans.add(new RecordedBean(
                     domain,
-                    beanProperties,
+                    new LinkedHashMap<>(beanProperties),
                     attributesAsLabelsWithValues,
-                    attrKeys,
+                    new ArrayList<>(attrKeys),
                     attrName,
                     attrType,
                     attrDescription,
@@ -466,6 +473,423 @@ public class JmxScraperTest {
                 }
             }
         }
+
+        @Test
+        void doScrapeWithScrapeWorkersRecordsSameValuesInSameOrder() throws Exception {
+            ObjectName stringValueName = new ObjectName("io.prometheus.jmx:type=stringValue");
+            ObjectName customValueName = new ObjectName("io.prometheus.jmx:type=customValue");
+            ObjectName dateValueName = new ObjectName("io.prometheus.jmx.test:type=dateValue");
+            ExecutorService scrapeWorkers = Executors.newFixedThreadPool(2);
+            try {
+                StringValue.registerBean(platformServer);
+                CustomValue.registerBean(platformServer);
+                DateValue.registerBean(platformServer);
+                ObjectName includePattern = new ObjectName("io.prometheus.jmx*:*");
+
+                createScraper(includePattern).doScrape();
+
+                RecordingMBeanReceiver concurrentReceiver = new RecordingMBeanReceiver();
+                new JmxScraper(
+                                "",
+                                "",
+                                "",
+                                new SslProperties(false),
+                                Collections.singletonList(includePattern),
+                                Collections.emptyList(),
+                                false,
+                                filter,
+                                Collections.emptyList(),
+                                concurrentReceiver,
+                                cache,
+                                scrapeWorkers,
+                                2,
+                                null,
+                                null,
+                                null,
+                                0,
+                                null,
+                                null,
+                                null,
+                                true,
+                                null,
+                                null)
+                        .doScrape();
+
+                assertThat(concurrentReceiver.getRecordedBeans()).isNotEmpty();
+                assertThat(toStrings(concurrentReceiver.getRecordedBeans()))
+                        .containsExactlyElementsOf(toStrings(receiver.getRecordedBeans()));
+            } finally {
+                scrapeWorkers.shutdownNow();
+                if (platformServer.isRegistered(stringValueName)) {
+                    platformServer.unregisterMBean(stringValueName);
+                }
+                if (platformServer.isRegistered(customValueName)) {
+                    platformServer.unregisterMBean(customValueName);
+                }
+                if (platformServer.isRegistered(dateValueName)) {
+                    platformServer.unregisterMBean(dateValueName);
+                }
+            }
+        }
+
+        @Test
+        void doScrapeWithMBeanInventoryPicksUpRegistrations() throws Exception {
+            ObjectName stringValueName = new ObjectName("io.prometheus.jmx:type=stringValue");
+            ObjectName customValueName = new ObjectName("io.prometheus.jmx:type=customValue");
+            MBeanInventory inventory = new MBeanInventory();
+            try {
+                StringValue.registerBean(platformServer);
+                ObjectName includePattern = new ObjectName("io.prometheus.jmx:*");
+                JmxScraper scraper = new JmxScraper(
+                        "",
+                        "",
+                        "",
+                        new SslProperties(false),
+                        Collections.singletonList(includePattern),
+                        Collections.emptyList(),
+                        false,
+                        filter,
+                        Collections.emptyList(),
+                        receiver,
+                        cache,
+                        null,
+                        1,
+                        null,
+                        null,
+                        inventory,
+                        3600,
+                        null,
+                        null,
+                        null,
+                        true,
+                        null,
+                        null);
+
+                scraper.doScrape();
+                assertThat(receiver.getRecordedBeans()).anyMatch(b -> "Text".equals(b.attrName));
+                assertThat(receiver.getRecordedBeans()).noneMatch(b -> "Value".equals(b.attrName));
+
+                CustomValue.registerBean(platformServer);
+                platformServer.unregisterMBean(stringValueName);
+                receiver.getRecordedBeans().clear();
+                scraper.doScrape();
+                assertThat(receiver.getRecordedBeans()).anyMatch(b -> "Value".equals(b.attrName));
+                assertThat(receiver.getRecordedBeans())
+                        .noneMatch(b -> "Text".equals(b.attrName) && b.beanProperties.containsValue("stringValue"));
+                assertThat(cache.getKeyPropertiesPerBean()).doesNotContainKey(stringValueName);
+            } finally {
+                inventory.close();
+                if (platformServer.isRegistered(stringValueName)) {
+                    platformServer.unregisterMBean(stringValueName);
+                }
+                if (platformServer.isRegistered(customValueName)) {
+                    platformServer.unregisterMBean(customValueName);
+                }
+            }
+        }
+
+        @Test
+        void doScrapeWithMBeanInfoCacheRecordsSameValues() throws Exception {
+            ObjectName customValueName = new ObjectName("io.prometheus.jmx:type=customValue");
+            MBeanInfoCache mBeanInfoCache = new MBeanInfoCache();
+            MBeanInventory inventory = new MBeanInventory();
+            try {
+                CustomValue.registerBean(platformServer);
+                ObjectName includePattern = new ObjectName("io.prometheus.jmx:*");
+                JmxScraper scraper = new JmxScraper(
+                        "",
+                        "",
+                        "",
+                        new SslProperties(false),
+                        Collections.singletonList(includePattern),
+                        Collections.emptyList(),
+                        false,
+                        filter,
+                        Collections.emptyList(),
+                        receiver,
+                        cache,
+                        null,
+                        1,
+                        null,
+                        null,
+                        inventory,
+                        3600,
+                        mBeanInfoCache,
+                        null,
+                        null,
+                        true,
+                        null,
+                        null);
+
+                scraper.doScrape();
+                List<String> first = toStrings(receiver.getRecordedBeans());
+                assertThat(mBeanInfoCache.getEntriesPerBean()).containsKey(customValueName);
+
+                receiver.getRecordedBeans().clear();
+                scraper.doScrape();
+                assertThat(toStrings(receiver.getRecordedBeans())).containsExactlyElementsOf(first);
+
+                platformServer.unregisterMBean(customValueName);
+                scraper.doScrape();
+                assertThat(mBeanInfoCache.getEntriesPerBean()).doesNotContainKey(customValueName);
+            } finally {
+                inventory.close();
+                if (platformServer.isRegistered(customValueName)) {
+                    platformServer.unregisterMBean(customValueName);
+                }
+            }
+        }
+
+        @Test
+        void doScrapeWithMBeanInfoCacheFetchesReplacedMBeanInfo() throws Exception {
+            ObjectName customValueName = new ObjectName("io.prometheus.jmx:type=customValue");
+            MBeanInfoCache mBeanInfoCache = new MBeanInfoCache();
+            MBeanInventory inventory = new MBeanInventory();
+            try {
+                CustomValue.registerBean(platformServer);
+                ObjectName includePattern = new ObjectName("io.prometheus.jmx:*");
+                JmxScraper scraper = new JmxScraper(
+                        "",
+                        "",
+                        "",
+                        new SslProperties(false),
+                        Collections.singletonList(includePattern),
+                        Collections.emptyList(),
+                        false,
+                        filter,
+                        Collections.emptyList(),
+                        receiver,
+                        cache,
+                        null,
+                        1,
+                        null,
+                        null,
+                        inventory,
+                        3600,
+                        mBeanInfoCache,
+                        null,
+                        null,
+                        true,
+                        null,
+                        null);
+
+                scraper.doScrape();
+                assertThat(receiver.getRecordedBeans()).anyMatch(b -> "Value".equals(b.attrName));
+
+                // Replace the MBean between scrapes, its name never disappears from the query
+                platformServer.unregisterMBean(customValueName);
+                platformServer.registerMBean(new TotalValue(), customValueName);
+                receiver.getRecordedBeans().clear();
+                scraper.doScrape();
+                assertThat(receiver.getRecordedBeans())
+                        .filteredOn(b -> b.beanProperties.containsValue("customValue"))
+                        .extracting(b -> b.attrName)
+                        .containsExactly("Total");
+            } finally {
+                inventory.close();
+                if (platformServer.isRegistered(customValueName)) {
+                    platformServer.unregisterMBean(customValueName);
+                }
+            }
+        }
+
+        @Test
+        void doScrapeWithMBeanRefreshCacheReplaysValuesUntilRefresh() throws Exception {
+            ObjectName sleepingValueName = new ObjectName("io.prometheus.jmx:type=sleepingValue");
+            SleepingValue sleepingValue = new SleepingValue(1);
+            MBeanRefreshCache mBeanRefreshCache =
+                    new MBeanRefreshCache(Collections.singletonMap(new ObjectName("io.prometheus.jmx:*"), 3600));
+            try {
+                platformServer.registerMBean(sleepingValue, sleepingValueName);
+                JmxScraper scraper = new JmxScraper(
+                        "",
+                        "",
+                        "",
+                        new SslProperties(false),
+                        Collections.singletonList(sleepingValueName),
+                        Collections.emptyList(),
+                        false,
+                        filter,
+                        Collections.emptyList(),
+                        receiver,
+                        cache,
+                        null,
+                        1,
+                        null,
+                        null,
+                        null,
+                        0,
+                        null,
+                        null,
+                        mBeanRefreshCache,
+                        true,
+                        null,
+                        null);
+
+                scraper.doScrape();
+                List<String> first = toStrings(receiver.getRecordedBeans());
+                assertThat(first).containsExactly("io.prometheus.jmx{type=sleepingValue}[]Value=1");
+                assertThat(mBeanRefreshCache.getEntriesPerBean()).containsKey(sleepingValueName);
+
+                sleepingValue.value = 2;
+                receiver.getRecordedBeans().clear();
+                scraper.doScrape();
+                assertThat(toStrings(receiver.getRecordedBeans())).containsExactlyElementsOf(first);
+
+                platformServer.unregisterMBean(sleepingValueName);
+                scraper.doScrape();
+                assertThat(mBeanRefreshCache.getEntriesPerBean()).doesNotContainKey(sleepingValueName);
+            } finally {
+                if (platformServer.isRegistered(sleepingValueName)) {
+                    platformServer.unregisterMBean(sleepingValueName);
+                }
+            }
+        }
+
+        @Test
+        void doScrapeWithoutStringValuesExportedDoesNotReadStrings() throws Exception {
+            ObjectName customValueName = new ObjectName("io.prometheus.jmx:type=customValue");
+            try {
+                CustomValue.registerBean(platformServer);
+                new JmxScraper(
+                                "",
+                                "",
+                                "",
+                                new SslProperties(false),
+                                Collections.singletonList(customValueName),
+                                Collections.emptyList(),
+                                false,
+                                filter,
+                                Collections.emptyList(),
+                                receiver,
+                                cache,
+                                null,
+                                1,
+                                null,
+                                null,
+                                null,
+                                0,
+                                null,
+                                null,
+                                null,
+                                false,
+                                null,
+                                null)
+                        .doScrape();
+
+                assertThat(receiver.getRecordedBeans()).anyMatch(b -> "Value".equals(b.attrName));
+                assertThat(receiver.getRecordedBeans()).noneMatch(b -> "Text".equals(b.attrName));
+            } finally {
+                if (platformServer.isRegistered(customValueName)) {
+                    platformServer.unregisterMBean(customValueName);
+                }
+            }
+        }
+
+        @Test
+        void doScrapeOneByOneSkipsSlowAttributes() throws Exception {
+            ObjectName bulkReadFailingName = new ObjectName("io.prometheus.jmx:type=bulkReadFailing");
+            BulkReadFailing bulkReadFailing = new BulkReadFailing();
+            Map<String, Object> slowAttributeConfig = new HashMap<>();
+            slowAttributeConfig.put(ObjectNameAttributeFilter.SLOW_ATTRIBUTE_BUDGET_MILLISECONDS, 10);
+            slowAttributeConfig.put(ObjectNameAttributeFilter.SLOW_ATTRIBUTE_STRIKES, 2);
+            ObjectNameAttributeFilter slowAttributeFilter = ObjectNameAttributeFilter.create(slowAttributeConfig);
+            slowAttributeFilter.recordRead(bulkReadFailingName, "Slow", 20_000_000L);
+            slowAttributeFilter.recordRead(bulkReadFailingName, "Slow", 20_000_000L);
+            try {
+                platformServer.registerMBean(bulkReadFailing, bulkReadFailingName);
+                new JmxScraper(
+                                "",
+                                "",
+                                "",
+                                new SslProperties(false),
+                                Collections.singletonList(bulkReadFailingName),
+                                Collections.emptyList(),
+                                false,
+                                slowAttributeFilter,
+                                Collections.emptyList(),
+                                receiver,
+                                cache,
+                                null,
+                                1,
+                                null,
+                                null,
+                                null,
+                                0,
+                                null,
+                                null,
+                                null,
+                                false,
+                                null,
+                                null)
+                        .doScrape();
+
+                // getAttributes failed, the attributes were read one by one without the slow one
+                assertThat(receiver.getRecordedBeans()).anyMatch(b -> "Fast".equals(b.attrName));
+                assertThat(receiver.getRecordedBeans()).noneMatch(b -> "Slow".equals(b.attrName));
+                assertThat(bulkReadFailing.reads).containsOnlyKeys("Fast");
+            } finally {
+                if (platformServer.isRegistered(bulkReadFailingName)) {
+                    platformServer.unregisterMBean(bulkReadFailingName);
+                }
+            }
+        }
+
+        private List<String> toStrings(List<RecordedBean> recordedBeans) {
+            List<String> strings = new ArrayList<>();
+            for (RecordedBean b : recordedBeans) {
+                strings.add(b.domain + b.beanProperties + b.attrKeys + b.attrName + "=" + b.value);
+            }
+            return strings;
+        }
+    }
+
+    /**
+     * An MBean whose getAttributes always fails, counting the reads of each attribute.
+     */
+    static class BulkReadFailing implements DynamicMBean {
+
+        final Map<String, Integer> reads = new ConcurrentHashMap<>();
+
+        @Override
+        public Object getAttribute(String attribute) {
+            reads.merge(attribute, 1, Integer::sum);
+            return 1;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            throw new IllegalStateException("getAttributes failed");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(
+                    BulkReadFailing.class.getName(),
+                    "",
+                    new MBeanAttributeInfo[] {
+                        new MBeanAttributeInfo("Fast", "int", "", true, false, false),
+                        new MBeanAttributeInfo("Slow", "int", "", true, false, false)
+                    },
+                    null,
+                    null,
+                    null);
+        }
     }
 
     @Nested
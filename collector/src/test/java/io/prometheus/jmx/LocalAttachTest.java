@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+public class LocalAttachTest {
+
+    @Test
+    public void testUnknownMainClassIsNotFound() {
+        LocalAttach localAttach = LocalAttach.forMainClass("io.prometheus.jmx.NoSuchMainClass");
+
+        assertThatThrownBy(localAttach::getLocalConnectorAddress)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("io.prometheus.jmx.NoSuchMainClass");
+    }
+
+    @Test
+    public void testEqualTargetsAreEqual() {
+        assertThat(LocalAttach.forPid(1234)).isEqualTo(LocalAttach.forPid(1234));
+        assertThat(LocalAttach.forPid(1234)).isNotEqualTo(LocalAttach.forPid(4321));
+        assertThat(LocalAttach.forMainClass("com.example.Main"))
+                .isEqualTo(LocalAttach.forMainClass("com.example.Main"));
+        assertThat(LocalAttach.forMainClass("com.example.Main")).isNotEqualTo(LocalAttach.forPid(1234));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.DataPointSnapshot;
+import io.prometheus.metrics.model.snapshots.GaugeSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import io.prometheus.metrics.model.snapshots.UnknownSnapshot;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class MBeanDumpTest {
+
+    private static final String CONFIG =
+            "---\nincludeObjectNames: [\"hadoop:*\", \"org.apache.cassandra.metrics:*\"]\nrules:\n- pattern: \".*\"";
+
+    @BeforeAll
+    public static void classSetUp() throws Exception {
+        TestMBeanRegistry.registerTestMBeans();
+    }
+
+    @Test
+    public void testReplayGivesTheScrapedMetrics() throws Exception {
+        PrometheusRegistry prometheusRegistry = new PrometheusRegistry();
+        JmxCollector jmxCollector = new JmxCollector(CONFIG).register(prometheusRegistry);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jmxCollector.dump(out);
+
+        MBeanDump mBeanDump = MBeanDump.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(mBeanDump.getBeanCount()).isGreaterThan(0);
+        assertThat(mBeanDump.getValueCount()).isGreaterThan(0);
+
+        List<String> expected = getSamples(prometheusRegistry.scrape(name -> !name.startsWith("jmx_")));
+        List<String> replayed = getSamples(new JmxCollector(CONFIG).replay(mBeanDump, false));
+        assertThat(replayed).isNotEmpty();
+        assertThat(replayed).isEqualTo(expected);
+    }
+
+    @Test
+    public void testDumpHasValuesTheRulesCannotExport() throws Exception {
+        PrometheusRegistry prometheusRegistry = new PrometheusRegistry();
+        JmxCollector jmxCollector = new JmxCollector(
+                        "---\nincludeObjectNames: [\"hadoop:*\", \"io.prometheus.jmx:type=stringValue\"]\n"
+                                + "rules:\n- pattern: \"^hadoop<\"")
+                .register(prometheusRegistry);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jmxCollector.dump(out);
+
+        MBeanDump mBeanDump = MBeanDump.read(new ByteArrayInputStream(out.toByteArray()));
+        List<String> replayed = getSamples(
+                new JmxCollector("---\nrules:\n- pattern: \"^io.prometheus.jmx<type=stringValue><>Text: (.*)\"\n"
+                                + "  name: string_value\n  value: 1\n  labels:\n    text: $1")
+                        .replay(mBeanDump, false));
+        assertThat(replayed).containsExactly("string_value{text=\"value\"} 1.0");
+    }
+
+    @Test
+    public void testValuesAreKept() throws Exception {
+        List<Object> values = Arrays.asList(
+                null,
+                "text",
+                true,
+                (byte) 1,
+                (short) 2,
+                3,
+                4L,
+                5.5f,
+                6.5,
+                new BigInteger("12345678901234567890"),
+                new BigDecimal("1.25"),
+                new AtomicLong(7));
+        LinkedHashMap<String, String> beanProperties = new LinkedHashMap<>();
+        beanProperties.put("type", "Test");
+        beanProperties.put("name", "a");
+        ObjectName objectName = new ObjectName("test:type=Test,name=a");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MBeanDump.Writer writer = new MBeanDump.Writer(out);
+        JmxScraper.MBeanReceiver receiver = writer.tee(new Recorder());
+        for (Object value : values) {
+            receiver.recordBean(
+                    "test",
+                    beanProperties,
+                    value == null ? null : Collections.emptyMap(),
+                    Collections.singletonList("key"),
+                    "Value",
+                    "type",
+                    null,
+                    value);
+        }
+        receiver.scrapedBean(objectName);
+        writer.finish();
+
+        Recorder recorder = new Recorder();
+        MBeanDump.read(new ByteArrayInputStream(out.toByteArray())).replay(recorder);
+
+        List<Object> expected = new ArrayList<>(values);
+        expected.set(values.size() - 1, new BigDecimal("7"));
+        assertThat(recorder.values).isEqualTo(expected);
+        assertThat(recorder.records.get(0)).isEqualTo("test{type=Test, name=a}null[key]Value type null");
+        assertThat(recorder.records.get(1)).isEqualTo("test{type=Test, name=a}{}[key]Value type null");
+        assertThat(recorder.beans).isEqualTo(Collections.singletonList(objectName));
+    }
+
+    @Test
+    public void testFailedDumpIsNotFinished() throws Exception {
+        MBeanDump.Writer writer = new MBeanDump.Writer(new ByteArrayOutputStream());
+        writer.fail("JMX scrape failed: foo");
+        assertThatThrownBy(writer::finish).isInstanceOf(IOException.class).hasMessage("JMX scrape failed: foo");
+    }
+
+    @Test
+    public void testInvalidDumpIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(out)) {
+            gzipOutputStream.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        assertThatThrownBy(() -> MBeanDump.read(new ByteArrayInputStream(out.toByteArray())))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Not an MBean dump");
+    }
+
+    private static List<String> getSamples(MetricSnapshots metricSnapshots) {
+        List<String> samples = new ArrayList<>();
+        for (MetricSnapshot metricSnapshot : metricSnapshots) {
+            for (DataPointSnapshot dataPoint : metricSnapshot.getDataPoints()) {
+                double value = dataPoint instanceof GaugeSnapshot.GaugeDataPointSnapshot
+                        ? ((GaugeSnapshot.GaugeDataPointSnapshot) dataPoint).getValue()
+                        : ((UnknownSnapshot.UnknownDataPointSnapshot) dataPoint).getValue();
+                samples.add(metricSnapshot.getMetadata().getName() + dataPoint.getLabels() + " " + value);
+            }
+        }
+        Collections.sort(samples);
+        return samples;
+    }
+
+    private static class Recorder implements JmxScraper.MBeanReceiver {
+
+        final List<String> records = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+        final List<ObjectName> beans = new ArrayList<>();
+
+        @Override
+        public void recordBean(
+                String domain,
+                LinkedHashMap<String, String> beanProperties,
+                Map<String, String> attributesAsLabelsWithValues,
+                List<String> attrKeys,
+                String attrName,
+                String attrType,
+                String attrDescription,
+                Object value) {
+            records.add(domain + beanProperties + attributesAsLabelsWithValues + attrKeys + attrName + " " + attrType
+                    + " " + attrDescription);
+            values.add(value);
+        }
+
+        @Override
+        public void scrapedBean(ObjectName mBeanName) {
+            beans.add(mBeanName);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.ImmutableDescriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class MBeanInfoCacheTest {
+
+    private static final MBeanAttributeInfo VALUE_ATTRIBUTE =
+            new MBeanAttributeInfo("Value", "int", "value", true, false, false);
+
+    @Test
+    public void testImmutableInfoIsCached() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache();
+        ObjectName name = new ObjectName("com.organisation:name=value");
+
+        MBeanInfoCache.Entry entry = cache.put(name, mBeanInfo(null), attributes());
+
+        assertThat(cache.get(name)).isSameAs(entry);
+        assertThat(entry.attributeNames).containsExactly("Value");
+        assertThat(entry.name2MBeanAttributeInfo).containsEntry("Value", VALUE_ATTRIBUTE);
+    }
+
+    @Test
+    public void testMutableInfoIsNotCached() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache();
+        ObjectName name = new ObjectName("com.organisation:name=value");
+
+        MBeanInfoCache.Entry entry =
+                cache.put(name, mBeanInfo(new ImmutableDescriptor("immutableInfo=false")), attributes());
+
+        assertThat(entry.attributeNames).containsExactly("Value");
+        assertThat(cache.get(name)).isNull();
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache();
+        ObjectName name = new ObjectName("com.organisation:name=value");
+        cache.put(name, mBeanInfo(new ImmutableDescriptor("immutableInfo=true")), attributes());
+
+        cache.remove(name);
+
+        assertThat(cache.get(name)).isNull();
+    }
+
+    @Test
+    public void testOnlyKeepMBeans() throws Exception {
+        MBeanInfoCache cache = new MBeanInfoCache();
+        ObjectName alive = new ObjectName("com.organisation:name=alive");
+        ObjectName dead = new ObjectName("com.organisation:name=dead");
+        cache.put(alive, mBeanInfo(null), attributes());
+        cache.put(dead, mBeanInfo(null), attributes());
+
+        cache.onlyKeepMBeans(Collections.singleton(alive));
+
+        assertThat(cache.getEntriesPerBean()).containsKey(alive);
+        assertThat(cache.getEntriesPerBean()).doesNotContainKey(dead);
+    }
+
+    private static MBeanInfo mBeanInfo(ImmutableDescriptor descriptor) {
+        return new MBeanInfo("Test", "test", new MBeanAttributeInfo[] {VALUE_ATTRIBUTE}, null, null, null, descriptor);
+    }
+
+    private static Map<String, MBeanAttributeInfo> attributes() {
+        Map<String, MBeanAttributeInfo> attributes = new LinkedHashMap<>();
+        attributes.put(VALUE_ATTRIBUTE.getName(), VALUE_ATTRIBUTE);
+        return attributes;
+    }
+}
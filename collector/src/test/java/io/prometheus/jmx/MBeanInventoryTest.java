@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MBeanInventoryTest {
+
+    private MBeanServer mBeanServer;
+    private ObjectName pattern;
+    private ObjectName beanName;
+    private MBeanInventory inventory;
+    private AtomicInteger queryCount;
+    private Callable<Set<ObjectName>> query;
+    private Predicate<ObjectName> filter;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        pattern = new ObjectName("io.prometheus.jmx.inventory:*");
+        beanName = new ObjectName("io.prometheus.jmx.inventory:type=test");
+        inventory = new MBeanInventory();
+        queryCount = new AtomicInteger();
+        query = () -> {
+            queryCount.incrementAndGet();
+            return mBeanServer.queryNames(pattern, null);
+        };
+        filter = pattern::apply;
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        inventory.close();
+        if (mBeanServer.isRegistered(beanName)) {
+            mBeanServer.unregisterMBean(beanName);
+        }
+    }
+
+    @Test
+    public void testFirstUpdateQueries() throws Exception {
+        mBeanServer.registerMBean(new StringValue(), beanName);
+
+        MBeanInventory.Update update = inventory.update(mBeanServer, null, "key", query, filter, 3600);
+
+        assertThat(update.resynced).isTrue();
+        assertThat(update.mBeanNames).containsExactly(beanName);
+        assertThat(queryCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRegistrationsAreAppliedWithoutQuerying() throws Exception {
+        inventory.update(mBeanServer, null, "key", query, filter, 3600);
+
+        mBeanServer.registerMBean(new StringValue(), beanName);
+        MBeanInventory.Update update = inventory.update(mBeanServer, null, "key", query, filter, 3600);
+
+        assertThat(update.resynced).isFalse();
+        assertThat(update.mBeanNames).containsExactly(beanName);
+
+        mBeanServer.unregisterMBean(beanName);
+        update = inventory.update(mBeanServer, null, "key", query, filter, 3600);
+
+        assertThat(update.resynced).isFalse();
+        assertThat(update.mBeanNames).isEmpty();
+        assertThat(update.unregistered).containsExactly(beanName);
+        assertThat(queryCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFilteredRegistrationsAreIgnored() throws Exception {
+        inventory.update(mBeanServer, null, "key", query, filter, 3600);
+
+        mBeanServer.registerMBean(new StringValue(), beanName);
+        MBeanInventory.Update update = inventory.update(mBeanServer, null, "key", query, name -> false, 3600);
+
+        assertThat(update.mBeanNames).isEmpty();
+    }
+
+    @Test
+    public void testChangedQueryKeyQueries() throws Exception {
+        inventory.update(mBeanServer, null, "key", query, filter, 3600);
+        MBeanInventory.Update update = inventory.update(mBeanServer, null, "other", query, filter, 3600);
+
+        assertThat(update.resynced).isTrue();
+        assertThat(queryCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testPeriodicResync() throws Exception {
+        inventory.update(mBeanServer, null, "key", query, filter, 1);
+        Thread.sleep(1100);
+        MBeanInventory.Update update = inventory.update(mBeanServer, null, "key", query, filter, 1);
+
+        assertThat(update.resynced).isTrue();
+        assertThat(queryCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCloseStopsListening() throws Exception {
+        inventory.update(mBeanServer, null, "key", query, filter, 3600);
+        inventory.close();
+        MBeanInventory.Update update = inventory.update(mBeanServer, null, "key", query, filter, 3600);
+
+        assertThat(update.resynced).isTrue();
+        assertThat(queryCount.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class MBeanRefreshCacheTest {
+
+    @Test
+    public void testOnlyMatchingMBeansAreCached() throws Exception {
+        MBeanRefreshCache cache = cache(3600);
+
+        assertThat(cache.isCached(new ObjectName("java.lang:type=Runtime"))).isTrue();
+        assertThat(cache.isCached(new ObjectName("java.lang:type=Memory"))).isFalse();
+    }
+
+    @Test
+    public void testFirstMatchingPatternApplies() throws Exception {
+        Map<ObjectName, Integer> refreshSecondsPerPattern = new LinkedHashMap<>();
+        refreshSecondsPerPattern.put(new ObjectName("java.lang:type=Runtime"), 1);
+        refreshSecondsPerPattern.put(new ObjectName("java.lang:*"), 3600);
+        MBeanRefreshCache cache = new MBeanRefreshCache(refreshSecondsPerPattern);
+        ObjectName runtime = new ObjectName("java.lang:type=Runtime");
+        ObjectName memory = new ObjectName("java.lang:type=Memory");
+
+        cache.put(runtime, recordedValues());
+        cache.put(memory, recordedValues());
+        Thread.sleep(1100);
+
+        assertThat(cache.get(runtime)).isNull();
+        assertThat(cache.get(memory)).isNotNull();
+    }
+
+    @Test
+    public void testRecordedValuesAreReturnedUntilRefresh() throws Exception {
+        MBeanRefreshCache cache = cache(1);
+        ObjectName name = new ObjectName("java.lang:type=Runtime");
+        List<MBeanRefreshCache.RecordedValue> recordedValues = recordedValues();
+
+        assertThat(cache.get(name)).isNull();
+
+        cache.put(name, recordedValues);
+        assertThat(cache.get(name)).containsExactlyElementsOf(recordedValues);
+
+        Thread.sleep(1100);
+        assertThat(cache.get(name)).isNull();
+        assertThat(cache.getEntriesPerBean()).doesNotContainKey(name);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        MBeanRefreshCache cache = cache(3600);
+        ObjectName name = new ObjectName("java.lang:type=Runtime");
+
+        cache.put(name, recordedValues());
+        cache.remove(name);
+
+        assertThat(cache.get(name)).isNull();
+    }
+
+    @Test
+    public void testOnlyKeepMBeans() throws Exception {
+        MBeanRefreshCache cache = cache(3600);
+        ObjectName runtime = new ObjectName("java.lang:type=Runtime");
+        ObjectName other = new ObjectName("java.lang:type=Runtime,name=other");
+
+        cache.put(runtime, recordedValues());
+        cache.put(other, recordedValues());
+        cache.onlyKeepMBeans(Collections.singleton(runtime));
+
+        assertThat(cache.getEntriesPerBean()).containsOnlyKeys(runtime);
+    }
+
+    private static MBeanRefreshCache cache(int refreshSeconds) throws Exception {
+        return new MBeanRefreshCache(
+                Collections.singletonMap(new ObjectName("java.lang:type=Runtime,*"), refreshSeconds));
+    }
+
+    private static List<MBeanRefreshCache.RecordedValue> recordedValues() {
+        LinkedHashMap<String, String> beanProperties = new LinkedHashMap<>();
+        beanProperties.put("type", "Runtime");
+        return Collections.singletonList(new MBeanRefreshCache.RecordedValue(
+                "java.lang",
+                beanProperties,
+                Collections.emptyMap(),
+                Collections.emptyList(),
+                "Uptime",
+                "long",
+                "Uptime",
+                1000L));
+    }
+}
@@ -317,6 +317,53 @@ public class MatchedRuleToMetricSnapshotsConverterTest {
         }
     }
 
+    @Nested
+    class BuilderTests {
+
+        @Test
+        public void testBuilderUsesAddedValues() {
+            MatchedRule matchedRule = new MatchedRule(
+                    "gauge_metric", "domain<type=Type>attr: 1", "GAUGE", "help", of("l"), of("v"), null, 1.0);
+            MatchedRule otherMatchedRule = new MatchedRule(
+                    "gauge_metric", "domain<type=Type>other: 2", "GAUGE", "help", of("l"), of("w"), null, 1.0);
+
+            MatchedRuleToMetricSnapshotsConverter.Builder builder = new MatchedRuleToMetricSnapshotsConverter.Builder();
+            builder.add(matchedRule, 1.0);
+            builder.add(otherMatchedRule, 2.0);
+
+            MetricSnapshots metricSnapshots = builder.build();
+
+            assertThat(metricSnapshots).hasSize(1);
+
+            GaugeSnapshot snapshot = (GaugeSnapshot) metricSnapshots.iterator().next();
+            assertThat(snapshot.getDataPoints()).hasSize(2);
+            assertThat(snapshot.getDataPoints().get(0).getLabels().get("l")).isEqualTo("v");
+            assertThat(snapshot.getDataPoints().get(0).getValue()).isEqualTo(1.0);
+            assertThat(snapshot.getDataPoints().get(1).getLabels().get("l")).isEqualTo("w");
+            assertThat(snapshot.getDataPoints().get(1).getValue()).isEqualTo(2.0);
+        }
+
+        @Test
+        public void testBuilderDuplicateLabelsAddsObjectname() {
+            MatchedRule matchedRule = new MatchedRule(
+                    "gauge_metric", "domain1<type=Type>attr: 1", "GAUGE", "help", of("l"), of("v"), null, 1.0);
+            MatchedRule otherMatchedRule = new MatchedRule(
+                    "gauge_metric", "domain2<type=Type>attr: 2", "COUNTER", "help", of("l"), of("v"), null, 1.0);
+
+            MatchedRuleToMetricSnapshotsConverter.Builder builder = new MatchedRuleToMetricSnapshotsConverter.Builder();
+            builder.add(matchedRule, 1.0);
+            builder.add(otherMatchedRule, 2.0);
+
+            MetricSnapshot snapshot = builder.build().iterator().next();
+            assertThat(snapshot).isInstanceOf(UnknownSnapshot.class);
+            assertThat(snapshot.getDataPoints()).hasSize(2);
+
+            for (DataPointSnapshot dp : snapshot.getDataPoints()) {
+                assertThat(dp.getLabels().get("_objectname")).isNotNull();
+            }
+        }
+    }
+
     @Nested
     class ConstructorTests {
 
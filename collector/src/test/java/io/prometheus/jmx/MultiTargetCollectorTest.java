@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.GaugeSnapshot;
+import io.prometheus.metrics.model.snapshots.Labels;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import io.prometheus.metrics.model.snapshots.UnknownSnapshot;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MultiTargetCollectorTest {
+
+    @Test
+    public void testTargetsRequired() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new MultiTargetCollector("---\nrules: []"));
+        assertThatIllegalArgumentException().isThrownBy(() -> new MultiTargetCollector("---\ntargets: []"));
+    }
+
+    @Test
+    public void testTargetNameRequired() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new MultiTargetCollector("---\ntargets:\n- hostPort: localhost:9999"));
+    }
+
+    @Test
+    public void testDuplicateTargetNameRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new MultiTargetCollector("---\ntargets:\n"
+                        + "- name: a\n  hostPort: localhost:9999\n"
+                        + "- name: a\n  hostPort: localhost:9998"));
+    }
+
+    @Test
+    public void testTopLevelConnectionRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new MultiTargetCollector(
+                        "---\nhostPort: localhost:9999\ntargets:\n- name: a\n  hostPort: localhost:9998"));
+    }
+
+    @Test
+    public void testTargetConnectionRequired() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new MultiTargetCollector("---\ntargets:\n- name: a"));
+    }
+
+    @Test
+    public void testTargetConcurrencyZeroRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new MultiTargetCollector(
+                        "---\ntargetConcurrency: 0\ntargets:\n- name: a\n  hostPort: localhost:9999"));
+    }
+
+    @Test
+    public void testTargetLabelRejected() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new MultiTargetCollector(
+                        "---\ntargets:\n- name: a\n  hostPort: localhost:9999\n  labels:\n    target: b"));
+    }
+
+    @Test
+    public void testReloadDuringCollectKeepsOldTargets(@TempDir Path tempDir) throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("io.prometheus.jmx.test.reload:type=slow");
+        SleepingValue slow = new SleepingValue(1);
+        mBeanServer.registerMBean(slow, objectName);
+
+        ConnectorServer connectorServer = new ConnectorServer();
+
+        File configFile = tempDir.resolve("config.yml").toFile();
+        String yamlConfig = ("---\nincludeObjectNames: [`io.prometheus.jmx.test.reload:*`]\n"
+                        + "targets:\n- name: a\n  jmxUrl: " + connectorServer.url)
+                .replace('`', '"');
+        Files.write(configFile.toPath(), yamlConfig.getBytes());
+        MultiTargetCollector multiTargetCollector =
+                new MultiTargetCollector(configFile).register(new PrometheusRegistry());
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            slow.sleepMillis = 2000;
+            Future<MetricSnapshots> inFlight = executorService.submit(() -> multiTargetCollector.collect());
+            Thread.sleep(500);
+
+            // Reloads the configuration while the first collect is still reading the slow MBean
+            Files.write(configFile.toPath(), (yamlConfig + "\n  labels:\n    reloaded: x").getBytes());
+            configFile.setLastModified(configFile.lastModified() + 10000);
+            slow.sleepMillis = 0;
+            assertThat(multiTargetCollector.collect()).anyMatch(MultiTargetCollectorTest::isSlowValue);
+
+            assertThat(inFlight.get()).anyMatch(MultiTargetCollectorTest::isSlowValue);
+        } finally {
+            slow.sleepMillis = 0;
+            executorService.shutdownNow();
+            connectorServer.close();
+            mBeanServer.unregisterMBean(objectName);
+        }
+    }
+
+    @Test
+    public void testRuleStatisticsOfTargetsKeptApart() throws Exception {
+        try (ConnectorServer connectorServer = new ConnectorServer()) {
+            MultiTargetCollector multiTargetCollector = new MultiTargetCollector(
+                            ("---\nruleStatistics: true\nincludeObjectNames: [`java.lang:type=Memory`]\n"
+                                            + "rules:\n- pattern: `.*`\ntargets:\n"
+                                            + "- name: a\n  jmxUrl: " + connectorServer.url + "\n"
+                                            + "- name: b\n  jmxUrl: " + connectorServer.url)
+                                    .replace('`', '"'))
+                    .register(new PrometheusRegistry());
+
+            multiTargetCollector.collect();
+            MetricSnapshots metricSnapshots = multiTargetCollector.collect();
+
+            MetricSnapshot evaluations = metricSnapshots.stream()
+                    .filter(metricSnapshot ->
+                            metricSnapshot.getMetadata().getName().equals("jmx_rule_evaluations"))
+                    .findFirst()
+                    .orElse(null);
+            assertThat(evaluations).isNotNull();
+            assertThat(evaluations.getDataPoints())
+                    .extracting(dataPoint -> dataPoint.getLabels().get("target"))
+                    .containsExactlyInAnyOrder("a", "b");
+
+            assertThat(multiTargetCollector.isRuleStatisticsEnabled()).isTrue();
+            assertThat(multiTargetCollector.getRuleStatisticsJson())
+                    .contains("{\"labels\":{\"target\":\"a\"},\"rule\":0,")
+                    .contains("{\"labels\":{\"target\":\"b\"},\"rule\":0,");
+        }
+    }
+
+    private static boolean isSlowValue(MetricSnapshot metricSnapshot) {
+        return metricSnapshot.getMetadata().getPrometheusName().equals("io_prometheus_jmx_test_reload_slow_Value");
+    }
+
+    @Test
+    public void testMergeCombinesDataPointsOfTargets() {
+        MetricSnapshots merged = MultiTargetCollector.merge(Arrays.asList(
+                MetricSnapshots.of(gauge("jmx_scrape_error", "a", 0)),
+                MetricSnapshots.of(gauge("jmx_scrape_error", "b", 1))));
+
+        assertThat(merged.size()).isEqualTo(1);
+        MetricSnapshot metricSnapshot = merged.get(0);
+        assertThat(metricSnapshot).isInstanceOf(GaugeSnapshot.class);
+        assertThat(metricSnapshot.getDataPoints()).hasSize(2);
+    }
+
+    @Test
+    public void testMergeDifferentTypesAsUnknown() {
+        CounterSnapshot counter = CounterSnapshot.builder()
+                .name("requests")
+                .dataPoint(CounterSnapshot.CounterDataPointSnapshot.builder()
+                        .labels(Labels.of("target", "a"))
+                        .value(1)
+                        .build())
+                .build();
+
+        MetricSnapshots merged = MultiTargetCollector.merge(
+                Arrays.asList(MetricSnapshots.of(counter), MetricSnapshots.of(gauge("requests", "b", 2))));
+
+        assertThat(merged.size()).isEqualTo(1);
+        assertThat(merged.get(0)).isInstanceOf(UnknownSnapshot.class);
+        assertThat(merged.get(0).getDataPoints()).hasSize(2);
+    }
+
+    /** A JMX connector server for the platform MBean server, on a free port. */
+    private static class ConnectorServer implements AutoCloseable {
+
+        final JMXServiceURL url;
+        private final Registry registry;
+        private final JMXConnectorServer jmxConnectorServer;
+
+        ConnectorServer() throws Exception {
+            int port;
+            try (ServerSocket serverSocket = new ServerSocket(0)) {
+                port = serverSocket.getLocalPort();
+            }
+            registry = LocateRegistry.createRegistry(port);
+            url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:" + port + "/jmxrmi");
+            jmxConnectorServer = JMXConnectorServerFactory.newJMXConnectorServer(
+                    url, null, ManagementFactory.getPlatformMBeanServer());
+            jmxConnectorServer.start();
+        }
+
+        @Override
+        public void close() throws Exception {
+            jmxConnectorServer.stop();
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    private static GaugeSnapshot gauge(String name, String target, double value) {
+        return GaugeSnapshot.builder()
+                .name(name)
+                .dataPoint(GaugeSnapshot.GaugeDataPointSnapshot.builder()
+                        .labels(Labels.of("target", target))
+                        .value(value)
+                        .build())
+                .build();
+    }
+}
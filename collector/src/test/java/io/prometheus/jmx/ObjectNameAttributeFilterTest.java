@@ -299,6 +299,102 @@ public class ObjectNameAttributeFilterTest {
                         + "    - \"LoadedClassCount\"\n"));
     }
 
+    @Test
+    public void slowAttributeIsExcludedAfterStrikes() throws Exception {
+        ObjectNameAttributeFilter filter = initSlowAttributeFilter(3600);
+        ObjectName objectName = new ObjectName("java.lang:type=Runtime");
+
+        assertThat(filter.slowAttributeBudgetIsEnabled()).isTrue();
+
+        filter.recordRead(objectName, 5_000_000L);
+        assertThat(filter.isSlow(objectName)).isFalse();
+        filter.recordRead(objectName, 20_000_000L);
+        assertThat(filter.isSlow(objectName)).isTrue();
+
+        assertThat(filter.recordRead(objectName, "SystemProperties", 20_000_000L))
+                .isTrue();
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isFalse();
+        assertThat(filter.recordRead(objectName, "SystemProperties", 20_000_000L))
+                .isTrue();
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isTrue();
+        assertThat(filter.hasSlowAttributes(objectName)).isTrue();
+        assertThat(filter.excludeSlow(objectName, "Uptime")).isFalse();
+    }
+
+    @Test
+    public void slowAttributeReadWithinBudgetResetsStrikes() throws Exception {
+        ObjectNameAttributeFilter filter = initSlowAttributeFilter(3600);
+        ObjectName objectName = new ObjectName("java.lang:type=Runtime");
+
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+        assertThat(filter.recordRead(objectName, "SystemProperties", 1_000_000L))
+                .isFalse();
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isFalse();
+    }
+
+    @Test
+    public void slowAttributeExclusionExpires() throws Exception {
+        ObjectNameAttributeFilter filter = initSlowAttributeFilter(1);
+        ObjectName objectName = new ObjectName("java.lang:type=Runtime");
+
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isTrue();
+
+        Thread.sleep(1100);
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isFalse();
+
+        // A single over budget read excludes the attribute again
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isTrue();
+    }
+
+    @Test
+    public void slowAttributeStateIsRemovedWithMBean() throws Exception {
+        ObjectNameAttributeFilter filter = initSlowAttributeFilter(3600);
+        ObjectName objectName = new ObjectName("java.lang:type=Runtime");
+
+        filter.recordRead(objectName, 20_000_000L);
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+        filter.recordRead(objectName, "SystemProperties", 20_000_000L);
+        filter.onlyKeepMBeans(Collections.emptySet());
+
+        assertThat(filter.isSlow(objectName)).isFalse();
+        assertThat(filter.hasSlowAttributes(objectName)).isFalse();
+        assertThat(filter.excludeSlow(objectName, "SystemProperties")).isFalse();
+    }
+
+    @Test
+    public void slowAttributeBudgetDisabledByDefault() throws Exception {
+        ObjectNameAttributeFilter filter = initEmptyConfigFilter();
+        ObjectName objectName = new ObjectName("java.lang:type=Runtime");
+
+        filter.recordRead(objectName, Long.MAX_VALUE);
+
+        assertThat(filter.slowAttributeBudgetIsEnabled()).isFalse();
+        assertThat(filter.isSlow(objectName)).isFalse();
+    }
+
+    @Test
+    public void invalidSlowAttributeConfigIsRejected() {
+        assertThatThrownBy(() ->
+                        ObjectNameAttributeFilter.create(new Yaml().load("---\nslowAttributeBudgetMilliseconds: 0\n")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ObjectNameAttributeFilter.create(
+                        new Yaml().load("---\nslowAttributeBudgetMilliseconds: 10\nslowAttributeStrikes: x\n")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ObjectNameAttributeFilter initSlowAttributeFilter(int exclusionSeconds) {
+        return ObjectNameAttributeFilter.create(new Yaml()
+                .load("---\n"
+                        + "slowAttributeBudgetMilliseconds: 10\n"
+                        + "slowAttributeStrikes: 2\n"
+                        + "slowAttributeExclusionSeconds: " + exclusionSeconds + "\n"));
+    }
+
     private static ObjectNameAttributeFilter initAutoExcludeDisabledFilter() {
         return ObjectNameAttributeFilter.create(new Yaml()
                 .load("---\n"
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class ReplacementTemplateTest {
+
+    private static final String PATTERN =
+            "kafka.(\\w+)<type=(.+), name=(.+)PerSec\\w*(, topic=(.+))?(, a=(b))?(, c=(d))?(, e=(f))?><>Count";
+
+    private static final String NAME = "kafka.server<type=BrokerTopicMetrics, name=BytesInPerSec, topic=foo><>Count: 5";
+
+    @Test
+    public void testExpandsLikeReplaceAll() {
+        String[] templates = {
+            "kafka_$1_$2_$3_total",
+            "$1",
+            "$5",
+            "$7",
+            "constant",
+            "",
+            "1.5",
+            "$3$3",
+            "\\$1_$1\\\\",
+            "$11",
+            "$10_$110",
+            "$0",
+            "x$1y",
+        };
+        Pattern pattern = Pattern.compile("^.*(?:" + PATTERN + ").*$");
+        for (String template : templates) {
+            assertExpandsLikeReplaceAll(template, pattern, NAME);
+        }
+    }
+
+    @Test
+    public void testLiteral() {
+        Pattern pattern = Pattern.compile("^.*(?:" + PATTERN + ").*$");
+        assertThat(ReplacementTemplate.compile("1.5", pattern).isLiteral()).isTrue();
+        assertThat(ReplacementTemplate.compile("1.5", pattern).getLiteral()).isEqualTo("1.5");
+        assertThat(ReplacementTemplate.compile("a\\$1", pattern).getLiteral()).isEqualTo("a$1");
+        assertThat(ReplacementTemplate.compile("$1", pattern).isLiteral()).isFalse();
+        assertThat(ReplacementTemplate.compile("1.5", null).isLiteral()).isFalse();
+    }
+
+    @Test
+    public void testNamedGroupsAndLineTerminators() {
+        Pattern pattern = Pattern.compile("^.*(?:foo<type=(?<type>.+)><>(\\w+)).*$");
+        assertExpandsLikeReplaceAll("${type}_$2", pattern, "foo<type=Bar><>Count: 1");
+
+        ReplacementTemplate named = ReplacementTemplate.compile("${type}", pattern);
+        ReplacementTemplate numbered = ReplacementTemplate.compile("$2", pattern);
+        Matcher matcher = pattern.matcher("foo<type=Bar><>Count: 1");
+        assertThat(matcher.matches()).isTrue();
+        StringBuilder builder = new StringBuilder();
+        assertThat(named.expand(matcher, "foo<type=Bar><>Count: 1", builder)).isEqualTo("Bar");
+        assertThat(numbered.expand(matcher, "foo<type=Bar><>Count: 1", builder)).isEqualTo("Count");
+
+        // replaceAll finds a match ending before the line terminator, with a different group
+        Pattern lazy = Pattern.compile("^.*(?:foo<type=(\\w+)>(\\s*?)).*$");
+        assertExpandsLikeReplaceAll("$1[$2]", lazy, "foo<type=Bar>\n");
+    }
+
+    @Test
+    public void testInvalidTemplatesFailLikeReplaceAll() {
+        Pattern pattern = Pattern.compile("^.*(?:foo<type=(.+)>).*$");
+        String[] templates = {"$2", "$", "\\", "$a", "${missing}"};
+        for (String template : templates) {
+            Matcher expected = pattern.matcher("foo<type=Bar>");
+            assertThat(expected.matches()).isTrue();
+            Throwable thrown = null;
+            try {
+                expected.replaceAll(template);
+            } catch (RuntimeException e) {
+                thrown = e;
+            }
+            assertThat(thrown).as(template).isNotNull();
+
+            Matcher matcher = pattern.matcher("foo<type=Bar>");
+            assertThat(matcher.matches()).isTrue();
+            ReplacementTemplate replacementTemplate = ReplacementTemplate.compile(template, pattern);
+            assertThatThrownBy(() -> replacementTemplate.expand(matcher, "foo<type=Bar>", new StringBuilder()))
+                    .isInstanceOf(thrown.getClass())
+                    .hasMessage(thrown.getMessage());
+        }
+    }
+
+    private static void assertExpandsLikeReplaceAll(String template, Pattern pattern, String input) {
+        Matcher matcher = pattern.matcher(input);
+        assertThat(matcher.matches()).isTrue();
+        String expected = pattern.matcher(input).replaceAll(template);
+
+        ReplacementTemplate replacementTemplate = ReplacementTemplate.compile(template, pattern);
+        StringBuilder builder = new StringBuilder("stale");
+        assertThat(replacementTemplate.expand(matcher, input, builder))
+                .as(template)
+                .isEqualTo(expected);
+        // Expanding again gives the same result
+        assertThat(replacementTemplate.expand(matcher, input, builder))
+                .as(template)
+                .isEqualTo(expected);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class RuleCacheabilityTest {
+
+    @Test
+    public void testPatternEndingBeforeValue() {
+        assertThat(isValueIndependent("kafka.server<type=(.+), name=(.+)><>Count"))
+                .isTrue();
+        assertThat(isValueIndependent("kafka.server<type=(.+), name=(.+)><>(\\w+)Count:"))
+                .isTrue();
+        assertThat(isValueIndependent("java.lang<type=Memory><HeapMemoryUsage>used"))
+                .isTrue();
+        assertThat(isValueIndependent(null)).isTrue();
+    }
+
+    @Test
+    public void testPatternReachingIntoValue() {
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>Count: (.*)")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>(\\w+)")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>Count: ")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>Count.*")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>Count: 1")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>(.+)e")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>(.+)Nu")).isTrue();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>(.+)Na")).isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(?=.*: 1)(.+)><>Count"))
+                .isFalse();
+        assertThat(isValueIndependent("kafka.server<type=(.+)><>Count|Value")).isFalse();
+    }
+
+    @Test
+    public void testTemplateUsingWholeMatch() {
+        JmxCollector.Rule rule = new JmxCollector.Rule();
+        rule.name = "foo_$0";
+        assertThat(RuleCacheability.isValueIndependent(rule, "kafka.server<type=(.+)><>Count"))
+                .isFalse();
+    }
+
+    @Test
+    public void testMatchDoesNotDependOnValue() {
+        String[] patterns = {
+            "kafka.server<type=(.+), name=(.+)><>Count",
+            "kafka.server<type=(.+), name=(.+)><>(\\w+)Count:",
+            "kafka.server<type=(.+)(.*)t",
+            "kafka.server<type=(.+)(.*)><>(.*)Cou"
+        };
+        String name = "kafka.server<type=Count:, name=Count><>RequestCount";
+        Object[] values = {1, -2.5e-10, Double.NaN, Double.NEGATIVE_INFINITY, true, false, "<cache>"};
+        for (String pattern : patterns) {
+            if (!isValueIndependent(pattern)) {
+                continue;
+            }
+            Pattern compiled = Pattern.compile("^.*(?:" + pattern + ").*$");
+            String expected = groups(compiled, name + ": 0");
+            for (Object value : values) {
+                assertThat(groups(compiled, name + ": " + value)).isEqualTo(expected);
+            }
+        }
+    }
+
+    private static boolean isValueIndependent(String pattern) {
+        return RuleCacheability.isValueIndependent(new JmxCollector.Rule(), pattern);
+    }
+
+    private static String groups(Pattern pattern, String matchName) {
+        Matcher matcher = pattern.matcher(matchName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        StringBuilder groups = new StringBuilder();
+        for (int i = 1; i <= matcher.groupCount(); i++) {
+            groups.append(matcher.group(i)).append('|');
+        }
+        return groups.toString();
+    }
+}
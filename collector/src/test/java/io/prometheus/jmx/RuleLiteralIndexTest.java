@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class RuleLiteralIndexTest {
+
+    @Test
+    public void testTopLevelLiterals() {
+        assertThat(RuleLiteralIndex.requiredLiterals("kafka.server<type=(.+), name=(.+)PerSec\\w*><>Count"))
+                .containsExactly("kafka", "server<type=", ", name=", "PerSec", "><>Count");
+        assertThat(RuleLiteralIndex.requiredLiterals("^kafka\\.network<type=RequestMetrics>"))
+                .containsExactly("kafka.network<type=RequestMetrics>");
+        assertThat(RuleLiteralIndex.requiredLiterals("\\Qjava.lang<type=\\E[^>]+>"))
+                .containsExactly("java.lang<type=");
+    }
+
+    @Test
+    public void testOptionalCharactersAreNotRequired() {
+        assertThat(RuleLiteralIndex.requiredLiterals("Counts?Total")).containsExactly("Count", "Total");
+        assertThat(RuleLiteralIndex.requiredLiterals("abx*cd")).containsExactly("ab", "cd");
+        assertThat(RuleLiteralIndex.requiredLiterals("abx+cd")).containsExactly("abx", "cd");
+        assertThat(RuleLiteralIndex.requiredLiterals("abx{0,2}?cd")).containsExactly("ab", "cd");
+        assertThat(RuleLiteralIndex.requiredLiterals("ab(cd)?ef")).containsExactly("ab", "ef");
+    }
+
+    @Test
+    public void testNoLiteralsIfUnsure() {
+        assertThat(RuleLiteralIndex.requiredLiterals("foo|bar")).isEmpty();
+        assertThat(RuleLiteralIndex.requiredLiterals("(?i)kafka.server")).isEmpty();
+        assertThat(RuleLiteralIndex.requiredLiterals("foo)|(?:bar")).isEmpty();
+        assertThat(RuleLiteralIndex.requiredLiterals("\\x41bc")).isEmpty();
+        assertThat(RuleLiteralIndex.requiredLiterals(".*")).isEmpty();
+    }
+
+    @Test
+    public void testFind() {
+        RuleLiteralIndex index =
+                RuleLiteralIndex.create(Arrays.asList("kafka.server<type=(.+)>", null, "she|he", "hers"));
+
+        assertThat(index.getLiteralIds(1)).isNull();
+        assertThat(index.getLiteralIds(2)).isNull();
+
+        BitSet found = new BitSet();
+        index.find("kafka.server<type=Foo>ushers", found);
+        assertThat(RuleLiteralIndex.foundAll(found, index.getLiteralIds(0))).isTrue();
+        assertThat(RuleLiteralIndex.foundAll(found, index.getLiteralIds(3))).isTrue();
+
+        index.find("kafka.consumer<type=Foo>hers", found);
+        assertThat(RuleLiteralIndex.foundAll(found, index.getLiteralIds(0))).isFalse();
+        assertThat(RuleLiteralIndex.foundAll(found, index.getLiteralIds(3))).isTrue();
+    }
+
+    @Test
+    public void testNeverSkipsAMatch() {
+        String[] patterns = {
+            "java.lang<type=Memory><(\\w+)MemoryUsage>(\\w+): (\\d+)",
+            "java.lang<type=(.+), name=(.+)><Usage>(\\w+)",
+            "Catalina<type=GlobalRequestProcessor, name=\\\"(\\w+-\\w+)-(\\d+)\\\"><>(\\w+):",
+            "kafka.(\\w+)<type=(.+), name=(.+)PerSec\\w*><>Count",
+            "a+b?c*[de]+(?:fg)?h{1,2}"
+        };
+        String[] matchNames = {
+            "java.lang<type=Memory><HeapMemoryUsage>used: 1234",
+            "java.lang<type=MemoryPool, name=Metaspace><Usage>used: 12",
+            "Catalina<type=GlobalRequestProcessor, name=\"http-nio-8080\"><>requestCount: 3",
+            "kafka.server<type=BrokerTopicMetrics, name=BytesInPerSec><>Count: 5",
+            "aacddh",
+            "aabcdfghh"
+        };
+        RuleLiteralIndex index = RuleLiteralIndex.create(Arrays.asList(patterns));
+        BitSet found = new BitSet();
+        for (String matchName : matchNames) {
+            index.find(matchName, found);
+            for (int i = 0; i < patterns.length; i++) {
+                boolean matches = Pattern.compile("^.*(?:" + patterns[i] + ").*$")
+                        .matcher(matchName)
+                        .matches();
+                if (matches && index.getLiteralIds(i) != null) {
+                    assertThat(RuleLiteralIndex.foundAll(found, index.getLiteralIds(i)))
+                            .isTrue();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class RuleReachabilityTest {
+
+    private final JmxMBeanPropertyCache jmxMBeanPropertyCache = new JmxMBeanPropertyCache();
+
+    @Test
+    public void testRuleWithoutPatternMatchesAnyMBean() {
+        assertThat(RuleReachability.create(Collections.singletonList(null))).isNull();
+        assertThat(RuleReachability.create(Arrays.asList("^java.lang<type=Memory>", null)))
+                .isNull();
+    }
+
+    @Test
+    public void testPatternWithoutLiteralDomainMatchesAnyMBean() {
+        assertThat(RuleReachability.create(Collections.singletonList(".*"))).isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("kafka.*<type=(.+)>")))
+                .isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("(java.lang|kafka.server)<")))
+                .isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("<type=Memory>")))
+                .isNull();
+    }
+
+    @Test
+    public void testPatternWithoutCaretMatchesAnyMBean() throws Exception {
+        // The literal may be the end of a longer domain
+        assertThat(RuleReachability.create(Collections.singletonList("server<type=(.+)>")))
+                .isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("kafka.server<type=(.+)>")))
+                .isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("^?kafka.server<type=(.+)>")))
+                .isNull();
+
+        RuleReachability ruleReachability = RuleReachability.create(Collections.singletonList("^server<type=(.+)>"));
+        assertThat(isReachable(ruleReachability, "server:type=ReplicaManager")).isTrue();
+        assertThat(isReachable(ruleReachability, "kafka.server:type=ReplicaManager"))
+                .isFalse();
+    }
+
+    @Test
+    public void testTopLevelAlternationMatchesAnyMBean() {
+        assertThat(RuleReachability.create(Collections.singletonList("^java.lang<type=Memory>|Count")))
+                .isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("^java.lang<type=Memory>)|(?:Count")))
+                .isNull();
+        assertThat(RuleReachability.create(Collections.singletonList("^java.lang<type=(Memory|Threading)>")))
+                .isNotNull();
+        assertThat(RuleReachability.create(Collections.singletonList("^java.lang<type=[|)]>")))
+                .isNotNull();
+    }
+
+    @Test
+    public void testDomainIsMatched() throws Exception {
+        RuleReachability ruleReachability =
+                RuleReachability.create(Collections.singletonList("^kafka.server<type=(.+), name=(.+)><>Value"));
+
+        assertThat(isReachable(ruleReachability, "kafka.server:type=ReplicaManager,name=PartitionCount"))
+                .isTrue();
+        assertThat(isReachable(ruleReachability, "kafka.log:type=LogManager,name=OfflineLogDirectoryCount"))
+                .isFalse();
+        assertThat(isReachable(ruleReachability, "java.lang:type=Memory")).isFalse();
+    }
+
+    @Test
+    public void testKeyPropertiesAreMatched() throws Exception {
+        RuleReachability ruleReachability = RuleReachability.create(
+                Arrays.asList("^java\\.lang<type=Memory><HeapMemoryUsage>(\\w+)", "^java.lang<type=Threading>"));
+
+        assertThat(isReachable(ruleReachability, "java.lang:type=Memory")).isTrue();
+        assertThat(isReachable(ruleReachability, "java.lang:type=Threading")).isTrue();
+        assertThat(isReachable(ruleReachability, "java.lang:type=Runtime")).isFalse();
+        assertThat(isReachable(ruleReachability, "java.lang:type=GarbageCollector,name=G1 Young Generation"))
+                .isFalse();
+    }
+
+    @Test
+    public void testMoreKeyPropertiesMayBeAdded() throws Exception {
+        // TabularData values add their index columns to the key properties
+        RuleReachability ruleReachability =
+                RuleReachability.create(Collections.singletonList("^io.prometheus.jmx<type=tabularData, name=(.+)>"));
+
+        assertThat(isReachable(ruleReachability, "io.prometheus.jmx:type=tabularData"))
+                .isTrue();
+        assertThat(isReachable(ruleReachability, "io.prometheus.jmx:type=compositeData"))
+                .isFalse();
+    }
+
+    @Test
+    public void testEmptyRulesMatchNoMBean() throws Exception {
+        RuleReachability ruleReachability = RuleReachability.create(Collections.emptyList());
+
+        assertThat(isReachable(ruleReachability, "java.lang:type=Memory")).isFalse();
+    }
+
+    private boolean isReachable(RuleReachability ruleReachability, String objectName) throws Exception {
+        ObjectName mBeanName = new ObjectName(objectName);
+        LinkedHashMap<String, String> keyProperties = jmxMBeanPropertyCache.getKeyPropertyList(mBeanName);
+        return ruleReachability.isReachable(mBeanName, keyProperties);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.Labels;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class RuleStatisticsTest {
+
+    @Test
+    public void testCountsAreAddedPerScrape() {
+        RuleStatistics ruleStatistics = new RuleStatistics();
+        List<String> patterns = Arrays.asList("java.lang<type=Memory>", null);
+
+        ruleStatistics.add(patterns, counts(3, 1));
+        ruleStatistics.add(patterns, counts(2, 2));
+
+        MetricSnapshots snapshots = ruleStatistics.collect();
+        Labels labels = Labels.of("rule", "0", "pattern_hash", RuleStatistics.patternHash(patterns.get(0)));
+        assertThat(getValue(snapshots, "jmx_rule_evaluations", labels)).isEqualTo(5.0);
+        assertThat(getValue(snapshots, "jmx_rule_matches", labels)).isEqualTo(3.0);
+        assertThat(getValue(snapshots, "jmx_rule_cache_hits", labels)).isEqualTo(0.0);
+        assertThat(getValue(snapshots, "jmx_rule_matches", Labels.of("rule", "1", "pattern_hash", "00000000")))
+                .isEqualTo(0.0);
+    }
+
+    @Test
+    public void testCountsAreResetWhenRulesChange() {
+        RuleStatistics ruleStatistics = new RuleStatistics();
+        ruleStatistics.add(Arrays.asList("a<>b", "c<>d"), counts(3, 1));
+
+        List<String> patterns = Arrays.asList("e<>f", "g<>h");
+        ruleStatistics.add(patterns, counts(1, 1));
+
+        Labels labels = Labels.of("rule", "0", "pattern_hash", RuleStatistics.patternHash("e<>f"));
+        assertThat(getValue(ruleStatistics.collect(), "jmx_rule_evaluations", labels))
+                .isEqualTo(1.0);
+
+        ruleStatistics.add(patterns, null);
+        assertThat(ruleStatistics.collect().size()).isEqualTo(0);
+        assertThat(ruleStatistics.toJson()).isEqualTo("{\"rules\":[]}");
+    }
+
+    @Test
+    public void testJson() {
+        RuleStatistics ruleStatistics = new RuleStatistics();
+        List<String> patterns = Arrays.asList("a<type=\"(\\w+)\">", null);
+        ruleStatistics.add(patterns, counts(3, 1));
+
+        assertThat(ruleStatistics.toJson())
+                .isEqualTo("{\"rules\":["
+                        + "{\"rule\":0,\"pattern_hash\":\"" + RuleStatistics.patternHash(patterns.get(0))
+                        + "\",\"pattern\":\"a<type=\\\"(\\\\w+)\\\">\",\"evaluations\":3,\"matches\":1,"
+                        + "\"duration_seconds\":0.0,\"cache_hits\":0},"
+                        + "{\"rule\":1,\"pattern_hash\":\"00000000\",\"pattern\":null,\"evaluations\":0,"
+                        + "\"matches\":0,\"duration_seconds\":0.0,\"cache_hits\":0}]}");
+    }
+
+    @Test
+    public void testJsonOfTargets() {
+        RuleStatistics a = new RuleStatistics(Labels.of("target", "a"));
+        RuleStatistics b = new RuleStatistics(Labels.of("target", "b"));
+        List<String> patterns = Arrays.asList("c<>d", null);
+        a.add(patterns, counts(3, 1));
+        b.add(patterns.subList(0, 1), new RuleStatistics.Counts(1));
+
+        assertThat(RuleStatistics.toJson(Arrays.asList(a, b)))
+                .isEqualTo("{\"rules\":["
+                        + "{\"labels\":{\"target\":\"a\"},\"rule\":0,\"pattern_hash\":\""
+                        + RuleStatistics.patternHash("c<>d")
+                        + "\",\"pattern\":\"c<>d\",\"evaluations\":3,\"matches\":1,"
+                        + "\"duration_seconds\":0.0,\"cache_hits\":0},"
+                        + "{\"labels\":{\"target\":\"a\"},\"rule\":1,\"pattern_hash\":\"00000000\","
+                        + "\"pattern\":null,\"evaluations\":0,\"matches\":0,\"duration_seconds\":0.0,"
+                        + "\"cache_hits\":0},"
+                        + "{\"labels\":{\"target\":\"b\"},\"rule\":0,\"pattern_hash\":\""
+                        + RuleStatistics.patternHash("c<>d")
+                        + "\",\"pattern\":\"c<>d\",\"evaluations\":0,\"matches\":0,"
+                        + "\"duration_seconds\":0.0,\"cache_hits\":0}]}");
+    }
+
+    private static RuleStatistics.Counts counts(long evaluations, long matches) {
+        RuleStatistics.Counts counts = new RuleStatistics.Counts(2);
+        counts.evaluations[0] = evaluations;
+        counts.matches[0] = matches;
+        return counts;
+    }
+
+    private static Double getValue(MetricSnapshots snapshots, String name, Labels labels) {
+        for (MetricSnapshot snapshot : snapshots) {
+            if (snapshot.getMetadata().getName().equals(name)) {
+                for (CounterSnapshot.CounterDataPointSnapshot dataPoint :
+                        ((CounterSnapshot) snapshot).getDataPoints()) {
+                    if (dataPoint.getLabels().equals(labels)) {
+                        return dataPoint.getValue();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
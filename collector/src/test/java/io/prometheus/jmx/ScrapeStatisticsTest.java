@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class ScrapeStatisticsTest {
+
+    @Test
+    public void testSlowestMBeans() throws Exception {
+        ScrapeStatistics scrapeStatistics = new ScrapeStatistics(null, 3);
+        scrapeStatistics.recordMBean(new ObjectName("a:name=1"), 10, 1);
+        scrapeStatistics.recordMBean(new ObjectName("a:name=2"), 50, 1);
+        scrapeStatistics.recordMBean(new ObjectName("b:name=3"), 30, 1);
+        scrapeStatistics.recordMBean(new ObjectName("b:name=4"), 5, 1);
+        scrapeStatistics.recordMBean(new ObjectName("c:name=5"), 40, 1);
+
+        List<String> slowest = scrapeStatistics.getSlowestMBeans().stream()
+                .map(d -> d.objectName + "=" + d.nanos)
+                .collect(Collectors.toList());
+
+        assertThat(slowest).containsExactly("a:name=2=51", "c:name=5=41", "b:name=3=31");
+        assertThat(scrapeStatistics.matchNanos).isEqualTo(5L);
+    }
+
+    @Test
+    public void testSlowestMBeansDisabled() throws Exception {
+        ScrapeStatistics scrapeStatistics = new ScrapeStatistics(null, 0);
+        scrapeStatistics.recordMBean(new ObjectName("a:name=1"), 10, 1);
+
+        assertThat(scrapeStatistics.getSlowestMBeans()).isEmpty();
+    }
+}
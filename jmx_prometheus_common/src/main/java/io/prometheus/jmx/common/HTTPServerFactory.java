@@ -45,8 +45,10 @@ import io.prometheus.metrics.model.registry.PrometheusRegistry;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -68,6 +70,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import nl.altindag.ssl.SSLFactory;
@@ -174,6 +177,11 @@ public class HTTPServerFactory {
      */
     private static final String HEALTH_PATH = "/-/healthy";
 
+    /**
+     * Rule statistics endpoint path.
+     */
+    private static final String RULES_PATH = "/-/rules";
+
     /**
      * Security header names and values.
      */
@@ -561,6 +569,31 @@ public class HTTPServerFactory {
     public static HTTPServer createAndStartHTTPServer(
             PrometheusRegistry prometheusRegistry, InetAddress inetAddress, int port, File exporterYamlFile)
             throws IOException {
+        return createAndStartHTTPServer(prometheusRegistry, inetAddress, port, exporterYamlFile, null);
+    }
+
+    /**
+     * Creates and starts an HTTP server with the specified configuration, also serving the rule
+     * statistics of the collectors as JSON on {@value #RULES_PATH} if they are enabled.
+     *
+     * @param prometheusRegistry the Prometheus registry for metric collection, must not be
+     *     {@code null}
+     * @param inetAddress the network address to bind to, must not be {@code null}
+     * @param port the port number to listen on, must be a valid port (0-65535)
+     * @param exporterYamlFile the YAML configuration file, must not be {@code null}
+     * @param ruleStatisticsJson supplies the rule statistics to serve as JSON, or {@code null} to
+     *     not serve them
+     * @return the started HTTP server instance
+     * @throws IOException if the server fails to start or configuration cannot be read
+     * @throws ConfigurationException if the configuration is invalid
+     */
+    public static HTTPServer createAndStartHTTPServer(
+            PrometheusRegistry prometheusRegistry,
+            InetAddress inetAddress,
+            int port,
+            File exporterYamlFile,
+            Supplier<String> ruleStatisticsJson)
+            throws IOException {
         MapAccessor rootMapAccessor = MapAccessor.of(YamlSupport.loadYaml(exporterYamlFile));
         AuthenticationConfiguration authenticationConfiguration = getAuthenticationConfiguration(rootMapAccessor);
         boolean sslEnabled = rootMapAccessor.containsPath(HTTP_SERVER_SSL);
@@ -586,7 +619,8 @@ public class HTTPServerFactory {
                 authenticationConfiguration,
                 sslEnabled,
                 rejectedCounter,
-                maximumRequestSeconds);
+                maximumRequestSeconds,
+                ruleStatisticsJson);
         return httpServer;
     }
 
@@ -629,7 +663,8 @@ public class HTTPServerFactory {
                 authenticationConfiguration,
                 sslEnabled,
                 rejectedCounter,
-                maximumRequestSeconds);
+                maximumRequestSeconds,
+                null);
         return httpServer;
     }
 
@@ -972,6 +1007,8 @@ public class HTTPServerFactory {
      * @param sslEnabled whether SSL is enabled, used to determine if HSTS headers should be added
      * @param rejectedCounter the counter for rejected requests
      * @param maximumRequestSeconds the maximum request duration in seconds, or {@code null}
+     * @param ruleStatisticsJson supplies the rule statistics to serve as JSON, or {@code null} to
+     *     not serve them
      */
     private static void configureSecurityHeaders(
             HTTPServer httpServer,
@@ -979,7 +1016,8 @@ public class HTTPServerFactory {
             AuthenticationConfiguration authenticationConfiguration,
             boolean sslEnabled,
             Counter rejectedCounter,
-            Integer maximumRequestSeconds) {
+            Integer maximumRequestSeconds,
+            Supplier<String> ruleStatisticsJson) {
         com.sun.net.httpserver.HttpServer delegate = getDelegateHttpServer(httpServer);
         Authenticator securityHeadersAuthenticator =
                 wrapAuthenticator(authenticationConfiguration.getAuthenticator(), sslEnabled);
@@ -1011,6 +1049,18 @@ public class HTTPServerFactory {
                 wrapHandler(
                         new HealthyHandler(), sslEnabled, subjectAttributeName, rejectedCounter, maximumRequestSeconds),
                 securityHeadersAuthenticator);
+        if (ruleStatisticsJson != null) {
+            replaceContext(
+                    delegate,
+                    RULES_PATH,
+                    wrapHandler(
+                            new RuleStatisticsHandler(ruleStatisticsJson),
+                            sslEnabled,
+                            subjectAttributeName,
+                            rejectedCounter,
+                            maximumRequestSeconds),
+                    securityHeadersAuthenticator);
+        }
     }
 
     /**
@@ -1979,6 +2029,48 @@ public class HTTPServerFactory {
         }
     }
 
+    /**
+     * HTTP handler serving the rule statistics of the collectors as JSON.
+     */
+    private static final class RuleStatisticsHandler implements HttpHandler {
+
+        /**
+         * Supplies the rule statistics to serve as JSON.
+         */
+        private final Supplier<String> ruleStatisticsJson;
+
+        /**
+         * Constructs a rule statistics handler.
+         *
+         * @param ruleStatisticsJson supplies the rule statistics to serve as JSON, must not be
+         *     {@code null}
+         */
+        private RuleStatisticsHandler(Supplier<String> ruleStatisticsJson) {
+            this.ruleStatisticsJson = ruleStatisticsJson;
+        }
+
+        /**
+         * Responds with the rule statistics as JSON.
+         *
+         * @param exchange the HTTP exchange to handle
+         * @throws IOException if writing the response fails
+         */
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                drainInputAndClose(exchange);
+                byte[] body = ruleStatisticsJson.get().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
     /**
      * Immutable holder for keystore or truststore properties.
      *
@@ -35,6 +35,7 @@ import java.io.File;
 import java.lang.instrument.Instrumentation;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
+import java.util.function.Supplier;
 
 /**
  * Java agent for the Prometheus JMX exporter.
@@ -233,10 +234,15 @@ public class JavaAgent {
                 JvmMetrics.builder().register(DEFAULT_REGISTRY);
             }
 
-            new JmxCollector(file, JmxCollector.Mode.AGENT).register(DEFAULT_REGISTRY);
+            JmxCollector jmxCollector = new JmxCollector(file, JmxCollector.Mode.AGENT).register(DEFAULT_REGISTRY);
+
+            Supplier<String> ruleStatisticsJson = null;
+            if (jmxCollector.isRuleStatisticsEnabled()) {
+                ruleStatisticsJson = jmxCollector.getRuleStatistics()::toJson;
+            }
 
             if (httpEnabled) {
-                httpServer = startHttpServer(arguments, file);
+                httpServer = startHttpServer(arguments, file, ruleStatisticsJson);
             }
 
             LOGGER.info("HTTP enabled [%b]", httpEnabled);
@@ -261,18 +267,21 @@ public class JavaAgent {
      *
      * @param arguments the parsed agent arguments containing host and port, must not be {@code null}
      * @param file the configuration file, must not be {@code null}
+     * @param ruleStatisticsJson supplies the rule statistics to serve as JSON, or {@code null} if
+     *     {@code ruleStatistics} is not enabled
      * @return the started HTTP server instance
      * @throws Exception if the HTTP server fails to start
      */
-    private static HTTPServer startHttpServer(Arguments arguments, File file) throws Exception {
+    private static HTTPServer startHttpServer(Arguments arguments, File file, Supplier<String> ruleStatisticsJson)
+            throws Exception {
         String host = arguments.getHost();
         int port = arguments.getPort();
 
         LOGGER.info("HTTP host:port [%s:%d]", host, port);
         LOGGER.info("Starting HTTPServer ...");
 
-        HTTPServer httpServer =
-                HTTPServerFactory.createAndStartHTTPServer(DEFAULT_REGISTRY, InetAddress.getByName(host), port, file);
+        HTTPServer httpServer = HTTPServerFactory.createAndStartHTTPServer(
+                DEFAULT_REGISTRY, InetAddress.getByName(host), port, file, ruleStatisticsJson);
 
         LOGGER.info("HTTPServer started");
 
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) The Prometheus jmx_exporter Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prometheus.jmx;
+
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool to benchmark rules offline.
+ *
+ * <p>The {@code dump} command scrapes the target of a standalone configuration once and writes the
+ * values the rules are run on to a file. The {@code replay} command runs the rules of a
+ * configuration on such a file repeatedly, without a JMX target, and reports the time and memory
+ * allocated per replay, the number of series exported and the cost of each rule.
+ *
+ * <p>Usage:
+ *
+ * <ul>
+ *   <li>{@code java -cp jmx_prometheus_standalone.jar io.prometheus.jmx.RuleBenchmark dump
+ *       &lt;configFile&gt; &lt;dumpFile&gt;}
+ *   <li>{@code java -cp jmx_prometheus_standalone.jar io.prometheus.jmx.RuleBenchmark replay
+ *       &lt;configFile&gt; &lt;dumpFile&gt; [iterations]}
+ * </ul>
+ *
+ * <p>This class is not instantiable and all methods are static.
+ */
+public class RuleBenchmark {
+
+    private static final String USAGE = "Usage:\n\n"
+            + "  java -cp jmx_prometheus_standalone-<VERSION>.jar io.prometheus.jmx.RuleBenchmark"
+            + " dump <YAML configuration file> <dump file>\n"
+            + "  java -cp jmx_prometheus_standalone-<VERSION>.jar io.prometheus.jmx.RuleBenchmark"
+            + " replay <YAML configuration file> <dump file> [iterations]";
+
+    private static final int DEFAULT_ITERATIONS = 10;
+
+    private static final int TOP_RULES = 20;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private RuleBenchmark() {
+        // Intentionally empty
+    }
+
+    /**
+     * Main entry point for the rule benchmark.
+     *
+     * @param args the command, the configuration file, the dump file and, for replay, the optional
+     *     number of iterations
+     * @throws Exception if the command fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("dump")) {
+            dump(new File(args[1]), new File(args[2]), System.out);
+        } else if ((args.length == 3 || args.length == 4) && args[0].equals("replay")) {
+            int iterations = args.length == 4 ? parseIterations(args[3]) : DEFAULT_ITERATIONS;
+            replay(new File(args[1]), new File(args[2]), iterations, System.out);
+        } else {
+            System.err.println(USAGE);
+            System.err.println();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Scrapes the target of a standalone configuration once and writes the values to a dump file.
+     *
+     * @param configFile the configuration file
+     * @param dumpFile the dump file to write
+     * @param out the stream to report to
+     * @throws Exception if the scrape or writing the dump fails
+     */
+    static void dump(File configFile, File dumpFile, PrintStream out) throws Exception {
+        JmxCollector jmxCollector =
+                new JmxCollector(configFile, JmxCollector.Mode.STANDALONE).register(new PrometheusRegistry());
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(dumpFile))) {
+            jmxCollector.dump(outputStream);
+        } catch (Exception e) {
+            Files.deleteIfExists(dumpFile.toPath());
+            throw e;
+        }
+
+        MBeanDump mBeanDump = readDump(dumpFile);
+        out.printf(
+                "Dumped %d values of %d MBeans to %s (%d bytes)%n",
+                mBeanDump.getValueCount(), mBeanDump.getBeanCount(), dumpFile, dumpFile.length());
+    }
+
+    /**
+     * Runs the rules of a configuration on a dump file and reports the results.
+     *
+     * <p>The dump is replayed {@code iterations} times to warm up, then {@code iterations} times to
+     * measure, then once more to count the cost per rule, as counting adds to the time measured.
+     * The rules cache is kept between replays, as between scrapes.
+     *
+     * @param configFile the configuration file
+     * @param dumpFile the dump file
+     * @param iterations the number of replays to measure
+     * @param out the stream to report to
+     * @throws Exception if the configuration or the dump can't be read
+     */
+    static void replay(File configFile, File dumpFile, int iterations, PrintStream out) throws Exception {
+        JmxCollector jmxCollector = new JmxCollector(configFile);
+        MBeanDump mBeanDump = readDump(dumpFile);
+
+        for (int i = 0; i < iterations; i++) {
+            jmxCollector.replay(mBeanDump, false);
+        }
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long allocatedBytes = getAllocatedBytes(threadMXBean);
+        long start = System.nanoTime();
+        MetricSnapshots metricSnapshots = null;
+        for (int i = 0; i < iterations; i++) {
+            metricSnapshots = jmxCollector.replay(mBeanDump, false);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocatedBytesAfter = getAllocatedBytes(threadMXBean);
+
+        int seriesCount = 0;
+        for (MetricSnapshot metricSnapshot : metricSnapshots) {
+            seriesCount += metricSnapshot.getDataPoints().size();
+        }
+
+        double millisPerReplay = nanos / 1e6 / iterations;
+        out.printf("MBeans:               %d%n", mBeanDump.getBeanCount());
+        out.printf("Values:               %d%n", mBeanDump.getValueCount());
+        out.printf("Replays:              %d (after %d warm-up replays)%n", iterations, iterations);
+        out.printf("Time per replay:      %.3f ms%n", millisPerReplay);
+        out.printf("Throughput:           %.0f values/s%n", mBeanDump.getValueCount() / (millisPerReplay / 1000));
+        if (allocatedBytes >= 0 && allocatedBytesAfter >= 0) {
+            out.printf("Allocated per replay: %d bytes%n", (allocatedBytesAfter - allocatedBytes) / iterations);
+        } else {
+            out.printf("Allocated per replay: unknown%n");
+        }
+        out.printf("Series:               %d in %d metrics%n", seriesCount, metricSnapshots.size());
+
+        // The rule statistics also count the other replays if configured
+        List<RuleCost> countedBefore = getRuleCosts(jmxCollector.getRuleStatistics());
+        jmxCollector.replay(mBeanDump, true);
+        List<RuleCost> ruleCosts = getRuleCosts(jmxCollector.getRuleStatistics());
+        for (RuleCost ruleCost : ruleCosts) {
+            if (ruleCost.rule < countedBefore.size()) {
+                ruleCost.subtract(countedBefore.get(ruleCost.rule));
+            }
+        }
+        printRules(ruleCosts, out);
+    }
+
+    /**
+     * Returns the cost per rule counted so far, by rule index.
+     */
+    private static List<RuleCost> getRuleCosts(RuleStatistics ruleStatistics) {
+        List<RuleCost> ruleCosts = new ArrayList<>();
+        for (MetricSnapshot metricSnapshot : ruleStatistics.collect()) {
+            String name = metricSnapshot.getMetadata().getName();
+            for (CounterSnapshot.CounterDataPointSnapshot dataPoint :
+                    ((CounterSnapshot) metricSnapshot).getDataPoints()) {
+                int rule = Integer.parseInt(dataPoint.getLabels().get("rule"));
+                while (ruleCosts.size() <= rule) {
+                    ruleCosts.add(new RuleCost(ruleCosts.size()));
+                }
+                RuleCost ruleCost = ruleCosts.get(rule);
+                ruleCost.patternHash = dataPoint.getLabels().get("pattern_hash");
+                if (name.equals("jmx_rule_evaluations")) {
+                    ruleCost.evaluations = (long) dataPoint.getValue();
+                } else if (name.equals("jmx_rule_matches")) {
+                    ruleCost.matches = (long) dataPoint.getValue();
+                } else if (name.equals("jmx_rule_cache_hits")) {
+                    ruleCost.cacheHits = (long) dataPoint.getValue();
+                } else {
+                    ruleCost.seconds = dataPoint.getValue();
+                }
+            }
+        }
+        return ruleCosts;
+    }
+
+    /**
+     * Prints the rules that took the most time.
+     */
+    private static void printRules(List<RuleCost> ruleCosts, PrintStream out) {
+        ruleCosts = new ArrayList<>(ruleCosts);
+        ruleCosts.sort((a, b) -> Double.compare(b.seconds, a.seconds));
+
+        out.printf("%nRules by time spent in one replay (of %d rules):%n", ruleCosts.size());
+        out.printf(
+                "%6s  %-12s %12s %12s %12s %12s%n",
+                "rule", "pattern_hash", "time ms", "evaluations", "matches", "cache hits");
+        for (RuleCost ruleCost : ruleCosts.subList(0, Math.min(TOP_RULES, ruleCosts.size()))) {
+            out.printf(
+                    "%6d  %-12s %12.3f %12d %12d %12d%n",
+                    ruleCost.rule,
+                    ruleCost.patternHash,
+                    ruleCost.seconds * 1000,
+                    ruleCost.evaluations,
+                    ruleCost.matches,
+                    ruleCost.cacheHits);
+        }
+    }
+
+    private static MBeanDump readDump(File dumpFile) throws Exception {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(dumpFile))) {
+            return MBeanDump.read(inputStream);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM doesn't tell.
+     */
+    private static long getAllocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported()
+                    && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static int parseIterations(String value) {
+        try {
+            int iterations = Integer.parseInt(value);
+            if (iterations > 0) {
+                return iterations;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(String.format("Invalid iterations [%s], must be a positive number", value));
+    }
+
+    /**
+     * The cost of a rule in a replay.
+     */
+    private static class RuleCost {
+
+        final int rule;
+        String patternHash;
+        long evaluations;
+        long matches;
+        long cacheHits;
+        double seconds;
+
+        RuleCost(int rule) {
+            this.rule = rule;
+        }
+
+        void subtract(RuleCost ruleCost) {
+            evaluations -= ruleCost.evaluations;
+            matches -= ruleCost.matches;
+            cacheHits -= ruleCost.cacheHits;
+            seconds -= ruleCost.seconds;
+        }
+    }
+}
@@ -29,6 +29,8 @@ import io.prometheus.metrics.exporter.opentelemetry.OpenTelemetryExporter;
 import io.prometheus.metrics.model.registry.PrometheusRegistry;
 import java.io.File;
 import java.net.InetAddress;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Standalone JMX exporter application entry point.
@@ -129,17 +131,31 @@ public class Standalone {
     static void start(Arguments arguments) throws Exception {
         File file = new File(arguments.getFilename());
 
+        Map<Object, Object> yamlConfig = YamlSupport.loadYaml(file);
+
         new BuildInfoMetrics().register(DEFAULT_REGISTRY);
-        new JmxCollector(file, JmxCollector.Mode.STANDALONE).register(DEFAULT_REGISTRY);
+        Supplier<String> ruleStatisticsJson = null;
+        if (yamlConfig != null && yamlConfig.containsKey("targets")) {
+            LOGGER.info("Scraping multiple targets");
+            MultiTargetCollector multiTargetCollector = new MultiTargetCollector(file).register(DEFAULT_REGISTRY);
+            if (multiTargetCollector.isRuleStatisticsEnabled()) {
+                ruleStatisticsJson = multiTargetCollector::getRuleStatisticsJson;
+            }
+        } else {
+            JmxCollector jmxCollector = new JmxCollector(file, JmxCollector.Mode.STANDALONE).register(DEFAULT_REGISTRY);
+            if (jmxCollector.isRuleStatisticsEnabled()) {
+                ruleStatisticsJson = jmxCollector.getRuleStatistics()::toJson;
+            }
+        }
 
-        MapAccessor mapAccessor = MapAccessor.of(YamlSupport.loadYaml(file));
+        MapAccessor mapAccessor = MapAccessor.of(yamlConfig);
         boolean httpEnabled = arguments.isHttpEnabled();
         boolean openTelemetryEnabled = mapAccessor.containsPath("/openTelemetry");
 
         LOGGER.info("HTTP enabled [%b]", httpEnabled);
 
         if (httpEnabled) {
-            startHttpServer(arguments, file);
+            startHttpServer(arguments, file, ruleStatisticsJson);
         }
 
         LOGGER.info("OpenTelemetry enabled [%b]", openTelemetryEnabled);
@@ -161,14 +177,21 @@ public class Standalone {
      *
      * @param arguments the parsed arguments containing host and port, must not be {@code null}
      * @param file the configuration file, must not be {@code null}
+     * @param ruleStatisticsJson supplies the rule statistics to serve as JSON, or {@code null} if
+     *     {@code ruleStatistics} is not enabled
      * @throws Exception if the HTTP server fails to start
      */
-    private static void startHttpServer(Arguments arguments, File file) throws Exception {
+    private static void startHttpServer(Arguments arguments, File file, Supplier<String> ruleStatisticsJson)
+            throws Exception {
         LOGGER.info("HTTP host:port [%s:%d]", arguments.getHost(), arguments.getPort());
         LOGGER.info("Starting HTTPServer ...");
 
         HTTPServer httpServer = HTTPServerFactory.createAndStartHTTPServer(
-                DEFAULT_REGISTRY, InetAddress.getByName(arguments.getHost()), arguments.getPort(), file);
+                DEFAULT_REGISTRY,
+                InetAddress.getByName(arguments.getHost()),
+                arguments.getPort(),
+                file,
+                ruleStatisticsJson);
 
         LOGGER.info("HTTPServer started");
 